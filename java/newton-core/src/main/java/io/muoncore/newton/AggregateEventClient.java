@@ -13,10 +13,13 @@ import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
 
 @Slf4j
 public class AggregateEventClient {
@@ -40,12 +43,28 @@ public class AggregateEventClient {
    * @param events
    */
   public void publishDomainEvents(String id, Class type, List events, NewtonEventWithMeta cause) {
-    events.forEach(domainEvent -> {
+    publishDomainEvents(id, type, events, cause, null);
+  }
+
+  /**
+   * Append all of the events of a single save to the aggregate event stream as one batch.
+   *
+   * The expected version is the number of events the stream should contain before this batch is appended, null
+   * disables the check. Implementations that can enforce it will reject the whole batch if another writer has
+   * appended first.
+   *
+   * The Muon event protocol accepts a single event per request, and has no append precondition. This implementation
+   * therefore sends the batch in order and stops at the first failure, and does not check the expected version.
+   */
+  public void publishDomainEvents(String id, Class type, List events, NewtonEventWithMeta cause, Long expectedVersion) {
+    String stream = createAggregateStreamName(id, type);
+    for (int i = 0; i < events.size(); i++) {
+      Object domainEvent = events.get(i);
 
       EventBuilder payload = ClientEvent
         .ofType(domainEvent.getClass().getSimpleName())
         .id(id)
-        .stream(createAggregateStreamName(id, type))
+        .stream(stream)
         .payload(domainEvent);
 
       if (cause != null) {
@@ -57,19 +76,30 @@ public class AggregateEventClient {
       EventResult result = client.event(ev);
 
       if (result.getStatus() == EventResult.EventResultStatus.FAILED) {
-        throw new MuonException("Failed to persist domain event " + domainEvent + ":" + result.getCause());
+        throw new MuonException("Failed to persist domain event " + domainEvent + " (" + i + " of " + events.size()
+          + " events in the batch were persisted):" + result.getCause());
       }
-    });
+    }
   }
 
   public CompletableFuture<List<Event>> loadAggregateRoot(String id, Class type) throws InterruptedException {
+    return loadAggregateRoot(id, type, 0L);
+  }
+
+  /**
+   * Load the events of an aggregate root, starting at the given order id (inclusive).
+   *
+   * Used to replay only the tail of a stream on top of a previously captured aggregate state.
+   * A value of 0 will load the full stream.
+   */
+  public CompletableFuture<List<Event>> loadAggregateRoot(String id, Class type, long from) throws InterruptedException {
 
     List<Event> events = new ArrayList<>();
     CompletableFuture<List<Event>> ret = new CompletableFuture<>();
 
     String stream = createAggregateStreamName(id, type);
 
-    client.replay(stream, EventReplayMode.REPLAY_ONLY, new Subscriber<Event>() {
+    Subscriber<Event> subscriber = new Subscriber<Event>() {
       @Override
       public void onSubscribe(Subscription s) {
         s.request(Long.MAX_VALUE);
@@ -90,11 +120,81 @@ public class AggregateEventClient {
       public void onComplete() {
         ret.complete(events);
       }
-    });
+    };
+
+    replay(stream, from, subscriber);
 
     return ret;
   }
 
+  /**
+   * Stream the events of an aggregate root to the given consumer as they arrive, starting at the given order id
+   * (inclusive). Events are requested from the event store a window at a time, so that they are not buffered.
+   *
+   * If the consumer throws, the stream is cancelled and the returned future fails with that exception.
+   */
+  public CompletableFuture<Void> streamAggregateRoot(String id, Class type, long from, int window, Consumer<Event> onEvent) {
+
+    CompletableFuture<Void> ret = new CompletableFuture<>();
+
+    String stream = createAggregateStreamName(id, type);
+
+    Subscriber<Event> subscriber = new Subscriber<Event>() {
+      private Subscription subscription;
+      private long outstanding;
+
+      @Override
+      public void onSubscribe(Subscription s) {
+        subscription = s;
+        outstanding = window;
+        s.request(window);
+      }
+
+      @Override
+      public void onNext(Event o) {
+        if (ret.isDone()) {
+          return;
+        }
+        try {
+          onEvent.accept(o);
+        } catch (RuntimeException e) {
+          subscription.cancel();
+          ret.completeExceptionally(e);
+          return;
+        }
+        if (--outstanding <= window / 2) {
+          subscription.request(window - outstanding);
+          outstanding = window;
+        }
+      }
+
+      @Override
+      public void onError(Throwable t) {
+        log.warn("Failed to load event stream due to a communication failure: {}", t.getMessage());
+        ret.completeExceptionally(new EventStoreException(id, stream, t.getMessage()));
+      }
+
+      @Override
+      public void onComplete() {
+        ret.complete(null);
+      }
+    };
+
+    replay(stream, from, subscriber);
+
+    return ret;
+  }
+
+  private void replay(String stream, long from, Subscriber<Event> subscriber) {
+    if (from > 0) {
+      Map args = new HashMap();
+      args.put("from", from);
+      client.replay(stream, EventReplayMode.REPLAY_ONLY, args, subscriber);
+    } else {
+      client.replay(stream, EventReplayMode.REPLAY_ONLY, subscriber);
+    }
+  }
+
   public String createAggregateStreamName(String id, Class type) {
     return "/aggregate/" + type.getSimpleName() + "/" + id;
   }
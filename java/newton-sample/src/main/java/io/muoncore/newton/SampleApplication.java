@@ -51,6 +51,11 @@ public class SampleApplication {
         }
         exec.accept(event);
       }
+
+      @Override
+      public Object getEventContext(NewtonEvent event) {
+        return event instanceof TenantEvent ? ((TenantEvent) event).getTenantId() : null;
+      }
     };
   }
 }
@@ -1,12 +1,16 @@
 package io.muoncore.newton.todo;
 
-import io.muoncore.newton.EventHandler;
+import io.muoncore.newton.BatchEventHandler;
 import io.muoncore.newton.StreamSubscriptionManager;
+import io.muoncore.newton.SubscriptionOptions;
+import io.muoncore.newton.query.EventStreamIndex;
 import io.muoncore.newton.query.SharedDatastoreView;
+import io.muoncore.newton.query.mongo.BulkViewWriter;
 import io.muoncore.newton.support.DocumentId;
 import io.muoncore.newton.support.TenantContextHolder;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
@@ -21,11 +25,13 @@ import java.util.List;
 public class TaskViewStore extends SharedDatastoreView {
 
   private MongoTemplate mongoTemplate;
+  private BulkViewWriter bulkViewWriter;
 
   @Autowired
   public TaskViewStore(StreamSubscriptionManager streamSubscriptionManager, MongoTemplate mongoTemplate1) throws IOException {
     super(streamSubscriptionManager);
     this.mongoTemplate = mongoTemplate1;
+    this.bulkViewWriter = new BulkViewWriter(mongoTemplate1);
   }
 
 //  @Override
@@ -39,6 +45,11 @@ public class TaskViewStore extends SharedDatastoreView {
     return new String[]{"newton-sample/Task"};
   }
 
+  @Override
+  protected SubscriptionOptions subscriptionOptions() {
+    return SubscriptionOptions.builder().checkpointWithView().build();
+  }
+
   public TaskView findById(DocumentId id) {
     return mongoTemplate.findById(id, TaskView.class);
   }
@@ -47,19 +58,38 @@ public class TaskViewStore extends SharedDatastoreView {
     return mongoTemplate.findAll(TaskView.class);
   }
 
-  @EventHandler
-  public void handle(TaskCreatedEvent event) {
-    if (TenantContextHolder.getTenantId() == null){
-      throw new IllegalStateException("Tenant context unavailable!!!!");
+  @BatchEventHandler
+  public void handleCreated(List<TaskCreatedEvent> events) {
+    BulkOperations operations = bulkViewWriter.bulkOps(TaskView.class);
+    for (TaskCreatedEvent event : events) {
+      if (TenantContextHolder.getTenantId() == null){
+        throw new IllegalStateException("Tenant context unavailable!!!!");
+      }
+      Update update = new Update();
+      update.set("description", event.getDescription());
+      update.set("tenantId", TenantContextHolder.getTenantId());
+      operations.upsert(new Query(Criteria.where("_id").is(event.getId().getObjectId())), update);
+    }
+  }
+
+  @BatchEventHandler
+  public void handleDescriptionChanged(List<TaskDescriptionChangedEvent> events) {
+    log.info("Processing {} description updates into view", events.size());
+    BulkOperations operations = bulkViewWriter.bulkOps(Task.class);
+    for (TaskDescriptionChangedEvent event : events) {
+      Update update = new Update();
+      update.set("description", event.getDescription());
+      operations.updateOne(new Query(Criteria.where("_id").is(event.getId().getObjectId())), update);
     }
-    mongoTemplate.save(new TaskView(event.getId(), event.getDescription(), TenantContextHolder.getTenantId()));
   }
 
-  @EventHandler
-  public void handle(TaskDescriptionChangedEvent event) {
-    log.info("Processing description update into view " + event);
-    Update update = new Update();
-    update.set("description", event.getDescription());
-    mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(event.getId().getObjectId())), update, Task.class);
+  @Override
+  protected void onBatchComplete(EventStreamIndex checkpoint) {
+    bulkViewWriter.flush(checkpoint);
+  }
+
+  @Override
+  protected void onBatchFailed() {
+    bulkViewWriter.discard();
   }
 }
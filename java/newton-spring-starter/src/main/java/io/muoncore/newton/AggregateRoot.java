@@ -12,7 +12,7 @@ public abstract class AggregateRoot<T> {
   @Getter
   private boolean deleted;
 	private long version;
-	private transient DynamicInvokeEventAdaptor eventAdaptor = new DynamicInvokeEventAdaptor(this, EventHandler.class);
+	private transient EventDispatchTable eventHandlers = EventDispatchTable.forType(getClass(), EventHandler.class);
 
 	private transient List<NewtonEvent> newOperations = new ArrayList<>();
 
@@ -36,7 +36,7 @@ public abstract class AggregateRoot<T> {
 	  this.deleted = (event instanceof AggregateDeletedEvent);
 
 	  if (!this.deleted) {
-      boolean eventHandled = eventAdaptor.apply(event);
+      boolean eventHandled = eventHandlers.dispatch(this, event);
       if (!eventHandled) {
         throw new IllegalStateException("Undefined domain event handler method for event: ".concat(event.getClass().getName()));
       }
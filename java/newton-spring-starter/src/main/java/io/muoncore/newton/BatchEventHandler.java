@@ -0,0 +1,13 @@
+package io.muoncore.newton;
+
+import java.lang.annotation.*;
+
+/**
+ * Marks a view method that handles a batch of events, taking a {@code List} of the event type it handles.
+ */
+@Target({ElementType.METHOD, ElementType.ANNOTATION_TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface BatchEventHandler {
+
+}
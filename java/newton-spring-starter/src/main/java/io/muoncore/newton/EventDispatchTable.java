@@ -0,0 +1,122 @@
+package io.muoncore.newton;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The annotated event handler methods of a class, resolved once and shared by every instance of that class.
+ *
+ * For each event type, the handler with the most specific parameter type is selected and invoked via a
+ * {@link MethodHandle}. Lookups are memoized per event type, including event types that have no handler.
+ */
+@Slf4j
+public class EventDispatchTable {
+
+  private static final Map<Key, EventDispatchTable> TABLES = new ConcurrentHashMap<>();
+  private static final MethodType HANDLER_TYPE = MethodType.methodType(void.class, Object.class, NewtonEvent.class);
+  private static final Optional<Handler> NO_HANDLER = Optional.empty();
+
+  private final Class<?> type;
+  private final List<Handler> handlers;
+  private final Map<Class<?>, Optional<Handler>> dispatch = new ConcurrentHashMap<>();
+
+  private EventDispatchTable(Class<?> type, Class<? extends Annotation> annotation) {
+    this.type = type;
+    this.handlers = Collections.unmodifiableList(scan(type, annotation));
+  }
+
+  public static EventDispatchTable forType(Class<?> type, Class<? extends Annotation> annotation) {
+    return TABLES.computeIfAbsent(new Key(type, annotation), key -> new EventDispatchTable(type, annotation));
+  }
+
+  /**
+   * Invoke the handler for this event on the target.
+   *
+   * @return false if the target has no handler for the event
+   */
+  public boolean dispatch(Object target, NewtonEvent event) {
+    Optional<Handler> handler = dispatch.computeIfAbsent(event.getClass(), this::resolve);
+    if (!handler.isPresent()) {
+      return false;
+    }
+    try {
+      handler.get().handle.invokeExact(target, event);
+      return true;
+    } catch (Throwable e) {
+      throw new IllegalStateException("Unable to handle event: ".concat(event.getClass().getName()), e);
+    }
+  }
+
+  /**
+   * The declared parameter types of all handler methods in this table.
+   */
+  public List<Class<?>> getEventTypes() {
+    List<Class<?>> types = new ArrayList<>();
+    handlers.forEach(handler -> types.add(handler.eventType));
+    return types;
+  }
+
+  private Optional<Handler> resolve(Class<?> eventType) {
+    Handler selected = null;
+    for (Handler handler : handlers) {
+      if (handler.eventType.isAssignableFrom(eventType)
+        && (selected == null || selected.eventType.isAssignableFrom(handler.eventType))) {
+        selected = handler;
+      }
+    }
+    return selected == null ? NO_HANDLER : Optional.of(selected);
+  }
+
+  private static List<Handler> scan(Class<?> type, Class<? extends Annotation> annotation) {
+    List<Handler> handlers = new ArrayList<>();
+    for (Method method : type.getMethods()) {
+      if (method.getName().startsWith("lambda$") || !method.isAnnotationPresent(annotation)) {
+        continue;
+      }
+      if (method.getParameterCount() != 1) {
+        log.warn("Ignoring @{} method {}.{}, as it does not take a single event parameter", annotation.getSimpleName(),
+          type.getName(), method.getName());
+        continue;
+      }
+      try {
+        method.setAccessible(true);
+        MethodHandle handle = MethodHandles.lookup().unreflect(method).asType(HANDLER_TYPE);
+        handlers.add(new Handler(method.getParameterTypes()[0], handle));
+      } catch (IllegalAccessException e) {
+        throw new IllegalStateException("Unable to access event handler " + type.getName() + "." + method.getName(), e);
+      }
+    }
+    return handlers;
+  }
+
+  @Override
+  public String toString() {
+    return "EventDispatchTable{" + type.getName() + ", " + handlers.size() + " handlers}";
+  }
+
+  @AllArgsConstructor
+  private static class Handler {
+    private final Class<?> eventType;
+    private final MethodHandle handle;
+  }
+
+  @EqualsAndHashCode
+  @AllArgsConstructor
+  private static class Key {
+    private final Class<?> type;
+    private final Class<? extends Annotation> annotation;
+  }
+}
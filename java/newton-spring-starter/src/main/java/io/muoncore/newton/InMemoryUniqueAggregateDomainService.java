@@ -28,7 +28,8 @@ public abstract class InMemoryUniqueAggregateDomainService<V> implements UniqueA
 
   @org.springframework.context.event.EventListener
   public void onApplicationEvent(ApplicationReadyEvent onReadyEvent) {
-    Arrays.stream(eventStreams()).forEach(stream -> streamSubscriptionManager.localNonTrackingSubscription(stream, this::handleEvent));
+    Arrays.stream(eventStreams()).forEach(stream -> streamSubscriptionManager.localNonTrackingSubscription(
+      getClass().getSimpleName() + "-" + stream, stream, SubscriptionOptions.defaults(), this::handleEvent));
   }
 
   protected abstract String[] eventStreams();
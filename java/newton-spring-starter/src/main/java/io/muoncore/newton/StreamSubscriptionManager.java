@@ -1,5 +1,11 @@
 package io.muoncore.newton;
 
+import io.muoncore.newton.query.EventStreamIndex;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 /**
@@ -21,19 +27,63 @@ public interface StreamSubscriptionManager {
      * @param stream
      * @param onData
      */
-    void globallyUniqueSubscription(String subscriptionName, String stream, Consumer<NewtonEvent> onData);
+    default void globallyUniqueSubscription(String subscriptionName, String stream, Consumer<NewtonEvent> onData) {
+      globallyUniqueSubscription(subscriptionName, stream, SubscriptionOptions.defaults(), onData);
+    }
 
     /**
-     * As {@link #globallyUniqueSubscription(String, String, Consumer)}, with the difference that this version starts from the current HOT
-     * location in the stream, not the beginning. After it has started, it has the same behaviour as the ohter variant.
+     * As {@link #globallyUniqueSubscription(String, String, Consumer)}, delivering events as configured by the given options.
+     */
+    void globallyUniqueSubscription(String subscriptionName, String stream, SubscriptionOptions options, Consumer<NewtonEvent> onData);
+
+    /**
+     * As {@link #globallyUniqueSubscription(String, String, SubscriptionOptions, Consumer)}, delivering events in batches, in stream
+     * order. A batch is delivered once it holds the batch size of the options, or once its first event has waited for the
+     * linger time. The position of the subscription only moves past the events of a batch once the batch has been handled.
+     *
+     * A batch is split wherever {@link io.muoncore.newton.eventsource.muon.EventStreamProcessor#getEventContext} changes,
+     * and each part is run within the context of its events.
+     */
+    default void globallyUniqueBatchSubscription(String subscriptionName, String stream, SubscriptionOptions options, Consumer<List<NewtonEvent>> onBatch) {
+      globallyUniqueSubscription(subscriptionName, stream, options, event -> onBatch.accept(Collections.singletonList(event)));
+    }
+
+    /**
+     * As {@link #globallyUniqueBatchSubscription(String, String, SubscriptionOptions, Consumer)}, also passing each batch the
+     * position to save along with its writes when the options have {@link SubscriptionOptions#isCheckpointWithView()}. The
+     * subscription then does not save its position itself, and resumes from the position last saved. The position is null
+     * when the subscription saves it.
      */
-//    void globallyUniqueSubscriptionFromNow(String subscriptionName, String stream, Consumer<NewtonEvent> onData);
+    default void globallyUniqueBatchSubscription(String subscriptionName, String stream, SubscriptionOptions options, BiConsumer<List<NewtonEvent>, EventStreamIndex> onBatch) {
+      globallyUniqueBatchSubscription(subscriptionName, stream, options, events -> onBatch.accept(events, null));
+    }
 
     /**
      * As {@link #globallyUniqueSubscription(String, String, Consumer)}, with the difference that this version starts from the current HOT
      * location in the stream, not the beginning. After it has started, it has the same behaviour as the ohter variant.
      */
-    void localHotSubscription(String subscriptionName, String stream, Consumer<NewtonEvent> onData);
+    default void globallyUniqueSubscriptionFromNow(String subscriptionName, String stream, Consumer<NewtonEvent> onData) {
+      globallyUniqueSubscriptionFromNow(subscriptionName, stream, SubscriptionOptions.defaults(), onData);
+    }
+
+    /**
+     * As {@link #globallyUniqueSubscriptionFromNow(String, String, Consumer)}, delivering events as configured by the given options.
+     */
+    void globallyUniqueSubscriptionFromNow(String subscriptionName, String stream, SubscriptionOptions options, Consumer<NewtonEvent> onData);
+
+    /**
+     * As {@link #localTrackingSubscription(String, String, Consumer)}, with the difference that the first time it runs, it starts from the
+     * current HOT location in the stream, not the beginning. The first event seen is recorded, and from then on it resumes from its
+     * tracked position, including after restarts.
+     */
+    default void localHotSubscription(String subscriptionName, String stream, Consumer<NewtonEvent> onData) {
+      localHotSubscription(subscriptionName, stream, SubscriptionOptions.defaults(), onData);
+    }
+
+    /**
+     * As {@link #localHotSubscription(String, String, Consumer)}, delivering events as configured by the given options.
+     */
+    void localHotSubscription(String subscriptionName, String stream, SubscriptionOptions options, Consumer<NewtonEvent> onData);
 
     /**
      * Will replay to the given stream and persist the current location so that on restart/ failover
@@ -41,11 +91,41 @@ public interface StreamSubscriptionManager {
      *
      * This will run as many times as requested across the various instances of a service, no locking or cluster resource exclusion.
      */
-    void localTrackingSubscription(String subscriptionName, String streamName, Consumer<NewtonEvent> onData);
+    default void localTrackingSubscription(String subscriptionName, String streamName, Consumer<NewtonEvent> onData) {
+      localTrackingSubscription(subscriptionName, streamName, SubscriptionOptions.defaults(), onData);
+    }
+
+    /**
+     * As {@link #localTrackingSubscription(String, String, Consumer)}, delivering events as configured by the given options.
+     */
+    void localTrackingSubscription(String subscriptionName, String streamName, SubscriptionOptions options, Consumer<NewtonEvent> onData);
 
     /**
      * Locally managed subscription that will perform a full replay whenever the subscription is created
      */
-    void localNonTrackingSubscription(String streamName, Consumer<NewtonEvent> onData);
+    default void localNonTrackingSubscription(String streamName, Consumer<NewtonEvent> onData) {
+      localNonTrackingSubscription(streamName, SubscriptionOptions.defaults(), onData);
+    }
+
+    /**
+     * As {@link #localNonTrackingSubscription(String, Consumer)}, delivering events as configured by the given options.
+     */
+    void localNonTrackingSubscription(String streamName, SubscriptionOptions options, Consumer<NewtonEvent> onData);
+
+    /**
+     * As {@link #localNonTrackingSubscription(String, SubscriptionOptions, Consumer)}, naming the subscription for its
+     * metrics. The name is made unique on this node if another local subscription already has it.
+     */
+    default void localNonTrackingSubscription(String subscriptionName, String streamName, SubscriptionOptions options, Consumer<NewtonEvent> onData) {
+      localNonTrackingSubscription(streamName, options, onData);
+    }
+
+    /**
+     * The metrics of each subscription started on this node, by subscription name. Local non tracking subscriptions
+     * without a name are named after their stream, and each local subscription has a distinct name.
+     */
+    default Map<String, SubscriptionMetrics> getSubscriptionMetrics() {
+      return Collections.emptyMap();
+    }
 
 }
@@ -0,0 +1,76 @@
+package io.muoncore.newton;
+
+import javax.management.MXBean;
+
+/**
+ * The current state of a stream subscription on this node. Also published over JMX, as
+ * {@code io.muoncore.newton:type=Subscription,name="<subscription name>"}.
+ *
+ * Counts and latencies are totals since the subscription was first started on this node.
+ */
+@MXBean
+public interface SubscriptionMetrics {
+
+  String getSubscriptionName();
+
+  String getStreamName();
+
+  /**
+   * Events processed by the subscription in the last second
+   */
+  long getEventsPerSecond();
+
+  long getProcessedEvents();
+
+  /**
+   * The orderId of the last event received by the subscription
+   */
+  long getCurrentOrderId();
+
+  /**
+   * The orderId of the latest event this node has seen on the stream
+   */
+  long getStreamHeadOrderId();
+
+  /**
+   * How far the subscription is behind the head of the stream, in orderIds
+   */
+  long getLag();
+
+  /**
+   * Events received, and waiting for or running on a worker
+   */
+  long getQueueDepth();
+
+  /**
+   * Events requested from the event store, and not yet received
+   */
+  long getOutstandingDemand();
+
+  /**
+   * Events received that are not yet covered by a saved checkpoint. Zero for subscriptions that do not track their position.
+   */
+  long getCheckpointLag();
+
+  /**
+   * The number of times the subscription has been restarted on this node, after an error or regaining its lock
+   */
+  long getReconnects();
+
+  /**
+   * Whether this node holds the cluster lock of a globally unique subscription
+   */
+  boolean isLockHeld();
+
+  long getHandlerLatencyP50Micros();
+
+  long getHandlerLatencyP99Micros();
+
+  long getHandlerLatencyMaxMicros();
+
+  /**
+   * Counts of event handler latencies. The first bucket counts latencies under a microsecond, and each bucket i after it
+   * those from 2^(i-1) up to 2^i microseconds.
+   */
+  long[] getHandlerLatencyHistogram();
+}
@@ -0,0 +1,167 @@
+package io.muoncore.newton;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Tuning for how a {@link StreamSubscriptionManager} subscription delivers events.
+ */
+@Getter
+@AllArgsConstructor
+public class SubscriptionOptions {
+
+  public static final int DEFAULT_MIN_DEMAND = 20;
+  public static final int DEFAULT_MAX_DEMAND = 1000;
+  /**
+   * The most partitions a subscription can be split into, as every partition replays the whole stream
+   */
+  public static final int MAX_PARTITIONS = 64;
+
+  private static final SubscriptionOptions DEFAULTS = builder().build();
+
+  private EventOrdering ordering;
+  /**
+   * The smallest number of events the subscription will keep requested or queued, when handlers are falling behind
+   */
+  private int minDemand;
+  /**
+   * The largest number of events the subscription will keep requested or queued, when handlers are keeping up
+   */
+  private int maxDemand;
+  /**
+   * The number of partitions a globally unique subscription is split into, by a hash of the event aggregate id.
+   * Each partition has its own cluster lock and stream position, and the partitions are spread across the cluster.
+   * Each partition reads the whole stream and skips the events of other partitions, so a node replaying a backlog
+   * reads it once for every partition it holds.
+   */
+  private int partitions;
+  /**
+   * The event types delivered to the subscription, including their subtypes. Other events are skipped before they are
+   * decoded, though still advance the position of the subscription. Empty to deliver every event.
+   */
+  private Set<Class<?>> eventTypes;
+  /**
+   * The most events delivered together to a batch subscription. Zero uses {@code newton.subscriptions.batchSize}.
+   */
+  private int batchSize;
+  /**
+   * How long a batch subscription waits for a batch to fill before delivering it. Zero uses
+   * {@code newton.subscriptions.batchLingerMillis}.
+   */
+  private long batchLingerMillis;
+  /**
+   * Whether a batch subscription leaves saving its stream position to the subscriber, which saves it along with the
+   * writes of each batch. Events at or before the saved position are then never handled again.
+   */
+  private boolean checkpointWithView;
+
+  public static SubscriptionOptions defaults() {
+    return DEFAULTS;
+  }
+
+  public static SubscriptionOptionsBuilder builder() {
+    return new SubscriptionOptionsBuilder();
+  }
+
+  /**
+   * A copy of these options, delivering only the given event types
+   */
+  public SubscriptionOptions withEventTypes(Collection<Class<?>> eventTypes) {
+    return new SubscriptionOptions(ordering, minDemand, maxDemand, partitions, copyOf(eventTypes), batchSize, batchLingerMillis, checkpointWithView);
+  }
+
+  private static Set<Class<?>> copyOf(Collection<Class<?>> eventTypes) {
+    return Collections.unmodifiableSet(new LinkedHashSet<>(eventTypes));
+  }
+
+  /**
+   * The scope within which events are guaranteed to be handled one at a time, in stream order.
+   */
+  public enum EventOrdering {
+    /**
+     * All events on the subscription are handled in order. This is the default.
+     */
+    SUBSCRIPTION,
+    /**
+     * Events with the same aggregate id are handled in order. Events for different aggregates may be handled
+     * concurrently, and so may complete out of stream order.
+     */
+    AGGREGATE
+  }
+
+  public static class SubscriptionOptionsBuilder {
+
+    private EventOrdering ordering = EventOrdering.SUBSCRIPTION;
+    private int minDemand = DEFAULT_MIN_DEMAND;
+    private int maxDemand = DEFAULT_MAX_DEMAND;
+    private int partitions = 1;
+    private Set<Class<?>> eventTypes = Collections.emptySet();
+    private int batchSize;
+    private long batchLingerMillis;
+    private boolean checkpointWithView;
+
+    public SubscriptionOptionsBuilder ordering(EventOrdering ordering) {
+      this.ordering = Objects.requireNonNull(ordering, "Ordering is null!");
+      return this;
+    }
+
+    public SubscriptionOptionsBuilder demand(int minDemand, int maxDemand) {
+      if (minDemand < 1 || maxDemand < minDemand) {
+        throw new IllegalArgumentException("Invalid demand range " + minDemand + " to " + maxDemand);
+      }
+      this.minDemand = minDemand;
+      this.maxDemand = maxDemand;
+      return this;
+    }
+
+    /**
+     * Split a globally unique subscription into partitions, see {@link io.muoncore.newton.eventsource.EventProcessProtection#ID_HASH}
+     */
+    public SubscriptionOptionsBuilder partitions(int partitions) {
+      if (partitions < 1 || partitions > MAX_PARTITIONS) {
+        throw new IllegalArgumentException("Between 1 and " + MAX_PARTITIONS + " partitions are required, was " + partitions);
+      }
+      this.partitions = partitions;
+      return this;
+    }
+
+    public SubscriptionOptionsBuilder eventTypes(Collection<Class<?>> eventTypes) {
+      this.eventTypes = copyOf(Objects.requireNonNull(eventTypes, "Event types are null!"));
+      return this;
+    }
+
+    /**
+     * Deliver up to batchSize events together to a batch subscription, waiting at most lingerMillis for a batch to fill
+     */
+    public SubscriptionOptionsBuilder batch(int batchSize, long lingerMillis) {
+      if (batchSize < 1 || lingerMillis < 1) {
+        throw new IllegalArgumentException("Invalid batch of " + batchSize + " events within " + lingerMillis + "ms");
+      }
+      this.batchSize = batchSize;
+      this.batchLingerMillis = lingerMillis;
+      return this;
+    }
+
+    /**
+     * Have a batch subscription pass the position to save with each batch, rather than saving it itself. Batches then
+     * complete in stream order, so this requires {@link EventOrdering#SUBSCRIPTION}.
+     */
+    public SubscriptionOptionsBuilder checkpointWithView() {
+      this.checkpointWithView = true;
+      return this;
+    }
+
+    public SubscriptionOptions build() {
+      if (checkpointWithView && ordering != EventOrdering.SUBSCRIPTION) {
+        throw new IllegalArgumentException("Saving the checkpoint with the view requires " + EventOrdering.SUBSCRIPTION + " ordering");
+      }
+      return new SubscriptionOptions(ordering, minDemand, maxDemand, partitions, eventTypes, batchSize, batchLingerMillis, checkpointWithView);
+    }
+  }
+}
@@ -0,0 +1,138 @@
+package io.muoncore.newton.cluster;
+
+import io.muoncore.protocol.event.Event;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Collects the events of a subscription into batches, one per partition key, on the worker for that key.
+ *
+ * A batch is handled once it is full, or once its first event has waited for the linger time. Only then are its events
+ * completed, so the checkpoint of the subscription never passes an event whose batch has not been handled.
+ *
+ * Events the subscription skips can be added as well, so that the position passed with a batch moves past them. A
+ * batch of only skipped events is passed on empty.
+ *
+ * A batch that fails is not completed. The batcher then fails as a whole, dropping its pending batches and any events
+ * added later, so that the subscription can resume from its last saved position rather than move past the failed
+ * events.
+ */
+@Slf4j
+class EventBatcher {
+
+  private final PartitionedExecutor workers;
+  private final ScheduledExecutorService scheduler;
+  private final int batchSize;
+  private final long lingerMillis;
+  private final BiConsumer<List<Event>, Event> onBatch;
+  private final Consumer<RuntimeException> onFailure;
+  private final Map<Object, Batch> batches = new ConcurrentHashMap<>();
+  private volatile boolean failed;
+
+  /**
+   * @param onBatch passed the events of each batch to handle, and the last event added to the batch, handled or skipped
+   * @param onFailure passed the error of the first batch to fail
+   */
+  EventBatcher(PartitionedExecutor workers, ScheduledExecutorService scheduler, int batchSize, long lingerMillis,
+               BiConsumer<List<Event>, Event> onBatch, Consumer<RuntimeException> onFailure) {
+    this.workers = workers;
+    this.scheduler = scheduler;
+    this.batchSize = batchSize;
+    this.lingerMillis = lingerMillis;
+    this.onBatch = onBatch;
+    this.onFailure = onFailure;
+  }
+
+  /**
+   * Add an event to the batch for its key. Must be called on the worker for the key.
+   *
+   * @param completion run once the batch holding the event has been handled
+   */
+  void add(Object key, Event event, Runnable completion) {
+    add(key, event, false, completion);
+  }
+
+  /**
+   * Add an event that is not to be handled, only moving the position of the batch for its key past it. Must be called
+   * on the worker for the key.
+   *
+   * @param completion run once the batch holding the event has been handled
+   */
+  void skip(Object key, Event event, Runnable completion) {
+    add(key, event, true, completion);
+  }
+
+  private void add(Object key, Event event, boolean skipped, Runnable completion) {
+    if (failed) {
+      return;
+    }
+    Batch batch = batches.get(key);
+    if (batch == null) {
+      Batch created = new Batch();
+      created.linger = scheduler.schedule(() -> workers.execute(key, () -> flush(key, created)), lingerMillis, TimeUnit.MILLISECONDS);
+      batches.put(key, created);
+      batch = created;
+    }
+    if (!skipped) {
+      batch.events.add(event);
+    }
+    batch.last = event;
+    batch.completions.add(completion);
+    if (batch.completions.size() >= batchSize) {
+      flush(key, batch);
+    }
+  }
+
+  /**
+   * The number of keys with events waiting to be handled
+   */
+  int getPendingBatches() {
+    return batches.size();
+  }
+
+  /**
+   * Handle the batch, if it is still pending for the key. Must be called on the worker for the key.
+   *
+   * The batch is removed once it is handled, so keys that have no pending events hold nothing.
+   */
+  private void flush(Object key, Batch batch) {
+    if (!batches.remove(key, batch)) {
+      return;
+    }
+    batch.linger.cancel(false);
+    try {
+      onBatch.accept(batch.events, batch.last);
+    } catch (RuntimeException e) {
+      fail(batch, e);
+      return;
+    }
+    batch.completions.forEach(Runnable::run);
+  }
+
+  private void fail(Batch batch, RuntimeException e) {
+    log.error("Batch of {} events failed, the subscription will resume from its last saved position", batch.events.size(), e);
+    failed = true;
+    batches.values().forEach(pending -> pending.linger.cancel(false));
+    batches.clear();
+    onFailure.accept(e);
+  }
+
+  /**
+   * The pending events for a key, only accessed on the worker for that key. Its lists grow as events are added.
+   */
+  private static class Batch {
+    private final List<Event> events = new ArrayList<>();
+    private final List<Runnable> completions = new ArrayList<>();
+    private Event last;
+    private ScheduledFuture<?> linger;
+  }
+}
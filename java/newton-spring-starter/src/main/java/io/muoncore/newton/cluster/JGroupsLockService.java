@@ -2,59 +2,129 @@ package io.muoncore.newton.cluster;
 
 import lombok.extern.slf4j.Slf4j;
 import org.jgroups.JChannel;
+import org.jgroups.View;
 
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 
+/**
+ * Cluster wide locks, held through JGroups.
+ *
+ * JGroups locks are owned by the thread that took them, so every lock is taken and released on a single lock thread.
+ * Rather than parking a thread on each lock, the lock thread tries the locks it is waiting on in turn, every
+ * {@link #DEFAULT_RETRY_MILLIS}ms. A locked task runs on its own thread, and the lock is competed for again once the
+ * task has returned and released it.
+ */
 @Slf4j
 public class JGroupsLockService implements LockService {
 
+  static final long DEFAULT_RETRY_MILLIS = 1000;
+
 	private org.jgroups.blocks.locking.LockService lockService;
+	private JChannel channel;
 
-	private Executor pool = Executors.newFixedThreadPool(100);
+	private final ScheduledExecutorService lockThread = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "newton-lock");
+    thread.setDaemon(true);
+    return thread;
+  });
+	private final ExecutorService tasks = Executors.newCachedThreadPool(runnable -> {
+    Thread thread = new Thread(runnable, "newton-locked-task");
+    thread.setDaemon(true);
+    return thread;
+  });
+	private long retryMillis = DEFAULT_RETRY_MILLIS;
 
 	public JGroupsLockService() throws Exception {
 		JChannel ch = new JChannel(JGroupsLockService.class.getResourceAsStream("/jgroups.xml"));
 		lockService = new org.jgroups.blocks.locking.LockService(ch);
 		ch.connect("newton-cluster");
+		this.channel = ch;
 	}
 
   public JGroupsLockService(JChannel channel) throws Exception {
     lockService = new org.jgroups.blocks.locking.LockService(channel);
     channel.connect("newton-cluster");
+    this.channel = channel;
+  }
+
+  /**
+   * How often a lock that is held elsewhere is tried again
+   */
+  public void setRetryMillis(long retryMillis) {
+    this.retryMillis = retryMillis;
   }
 
 	@Override
-	public void executeAndRepeatWithLock(String name, LockedTask exec) {
+	public int getMemberCount() {
+		View view = channel.getView();
+		return view == null ? 1 : view.size();
+	}
 
+	@Override
+	public void executeAndRepeatWithLock(String name, LockedTask exec) {
     log.info("Starting to wait on the lock " + name);
-
-		pool.execute(() -> {
-      Thread.currentThread().setName("Lock-" + name);
-      log.info("In executor " + name);
-			Lock lock = lockService.getLock(name);
-
-			while(true) {
-				log.info("Waiting on the lock " + name);
-
-				lock.lock();
-				CountDownLatch latch = new CountDownLatch(1);
-				try {
-					log.info("Obtained global lock '{}', executing local task on this node", name);
-					exec.execute(() -> {
-						lock.unlock();
-						latch.countDown();
-					});
-					latch.await();
-				} catch (Exception ex) {
-					log.warn("Locked process has failed with an exception, and {} has been unlocked", name);
-					log.warn("Locking Process failed with exception", ex);
-				} finally {
-          lock.unlock();
-        }
-			}
-		});
+    Lock lock = lockService.getLock(name);
+    lockThread.execute(() -> tryLock(name, lock, exec));
 	}
+
+  /**
+   * Runs on the lock thread
+   */
+  private void tryLock(String name, Lock lock, LockedTask exec) {
+    boolean locked;
+    try {
+      locked = lock.tryLock();
+    } catch (Exception e) {
+      log.warn("Unable to obtain the lock {}: {}", name, e.getMessage());
+      locked = false;
+    }
+    if (!locked) {
+      lockThread.schedule(() -> tryLock(name, lock, exec), retryMillis, TimeUnit.MILLISECONDS);
+      return;
+    }
+
+    log.info("Obtained global lock '{}', executing local task on this node", name);
+    //the lock is competed for again once the task has both returned and released it
+    AtomicInteger outstanding = new AtomicInteger(2);
+    Runnable done = () -> {
+      if (outstanding.decrementAndGet() == 0) {
+        lockThread.execute(() -> tryLock(name, lock, exec));
+      }
+    };
+    AtomicBoolean released = new AtomicBoolean();
+    TaskLockControl control = () -> {
+      if (released.compareAndSet(false, true)) {
+        lockThread.execute(() -> {
+          unlock(name, lock);
+          done.run();
+        });
+      }
+    };
+
+    tasks.execute(() -> {
+      try {
+        exec.execute(control);
+      } catch (Exception ex) {
+        log.warn("Locked process has failed with an exception, and {} has been unlocked", name);
+        log.warn("Locking Process failed with exception", ex);
+        control.releaseLock();
+      } finally {
+        done.run();
+      }
+    });
+  }
+
+  private void unlock(String name, Lock lock) {
+    try {
+      lock.unlock();
+    } catch (Exception e) {
+      log.warn("Unable to release the lock {}: {}", name, e.getMessage());
+    }
+  }
 }
@@ -0,0 +1,241 @@
+package io.muoncore.newton.cluster;
+
+import io.muoncore.protocol.event.Event;
+import io.muoncore.protocol.event.client.EventReplayMode;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A full replay of a stream, read from its {@link LocalStreamLog} where possible.
+ *
+ * Any events older than the log holds are replayed from the event store first. The log is then read from disk, at the
+ * pace the subscriber requests, and once its tail is reached the replay continues from the event store, from the
+ * event after the tail and on into the live stream. Events from the event store after the tail are appended to the
+ * log before they are passed on, so the next replay reads them locally.
+ */
+@Slf4j
+class LocalLogReplay implements Subscription {
+
+  private enum Phase { BEFORE_LOG, LOG, EVENT_STORE }
+
+  private final String streamName;
+  private final LocalStreamLog streamLog;
+  private final EventStore eventStore;
+  private final Subscriber<Event> subscriber;
+  private final AtomicLong demand = new AtomicLong();
+  private final AtomicInteger draining = new AtomicInteger();
+  private volatile boolean cancelled;
+  private volatile Phase phase;
+
+  //guarded by this
+  private long lastSeen;
+  private LocalStreamLog.Reader reader;
+  private Subscription upstream;
+
+  LocalLogReplay(String streamName, LocalStreamLog streamLog, EventStore eventStore, Subscriber<Event> subscriber) {
+    this.streamName = streamName;
+    this.streamLog = streamLog;
+    this.eventStore = eventStore;
+    this.subscriber = subscriber;
+  }
+
+  void start() {
+    long start = streamLog.getStart();
+    synchronized (this) {
+      phase = start > 0 ? Phase.BEFORE_LOG : Phase.LOG;
+      reader = streamLog.reader(0);
+    }
+    subscriber.onSubscribe(this);
+    if (start > 0) {
+      log.debug("Local log of '{}' starts at {}, replaying the earlier events from the event store", streamName, start);
+      eventStore.replay(EventReplayMode.REPLAY_ONLY, from(1), new EventStoreReplay(Phase.BEFORE_LOG, start));
+    } else {
+      drain();
+    }
+  }
+
+  @Override
+  public void request(long n) {
+    Subscription forward;
+    synchronized (this) {
+      demand.addAndGet(n);
+      forward = phase == Phase.LOG ? null : upstream;
+    }
+    if (forward != null) {
+      forward.request(n);
+    } else {
+      drain();
+    }
+  }
+
+  @Override
+  public void cancel() {
+    cancelled = true;
+    Subscription forward;
+    synchronized (this) {
+      forward = upstream;
+      upstream = null;
+      reader.close();
+    }
+    if (forward != null) {
+      forward.cancel();
+    }
+  }
+
+  /**
+   * Emit events from the log while there is demand, running on one thread at a time. Switches to the event store once
+   * the tail of the log is reached.
+   */
+  private void drain() {
+    if (draining.getAndIncrement() != 0) {
+      return;
+    }
+    do {
+      boolean atTail = false;
+      while (!cancelled && demand.get() > 0) {
+        Event event;
+        synchronized (this) {
+          if (phase != Phase.LOG) {
+            break;
+          }
+          event = reader.next();
+          if (event == null) {
+            atTail = true;
+            phase = Phase.EVENT_STORE;
+            reader.close();
+            break;
+          }
+          lastSeen = orderId(event);
+        }
+        demand.decrementAndGet();
+        subscriber.onNext(event);
+      }
+      if (atTail && !cancelled) {
+        long from;
+        synchronized (this) {
+          from = lastSeen + 1;
+        }
+        log.debug("Read the local log of '{}' up to {}, continuing from the event store", streamName, from - 1);
+        eventStore.replay(EventReplayMode.REPLAY_THEN_LIVE, from(from), new EventStoreReplay(Phase.EVENT_STORE, Long.MAX_VALUE));
+      }
+    } while (draining.decrementAndGet() != 0);
+  }
+
+  /**
+   * Switch from the event store to the log, once the events before the log have been replayed.
+   */
+  private void readLog() {
+    Subscription previous;
+    synchronized (this) {
+      if (phase != Phase.BEFORE_LOG) {
+        return;
+      }
+      phase = Phase.LOG;
+      previous = upstream;
+      upstream = null;
+      reader.close();
+      reader = streamLog.reader(lastSeen);
+    }
+    if (previous != null) {
+      previous.cancel();
+    }
+    drain();
+  }
+
+  private static Map<String, Object> from(long orderId) {
+    Map<String, Object> args = new HashMap<>();
+    args.put("from", orderId);
+    return args;
+  }
+
+  private static long orderId(Event event) {
+    return event.getOrderId() == null ? 0 : event.getOrderId();
+  }
+
+  /**
+   * Replays from the event store, as {@link io.muoncore.protocol.event.client.EventClient#replay(String, EventReplayMode, Map, Subscriber)}
+   */
+  interface EventStore {
+    void replay(EventReplayMode mode, Map args, Subscriber<Event> subscriber);
+  }
+
+  /**
+   * Passes on the events of one replay from the event store, while this replay is in the given phase and the events
+   * are before the given orderId.
+   */
+  private class EventStoreReplay implements Subscriber<Event> {
+    private final Phase during;
+    private final long before;
+
+    private EventStoreReplay(Phase during, long before) {
+      this.during = during;
+      this.before = before;
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+      long initial;
+      boolean current;
+      synchronized (LocalLogReplay.this) {
+        current = phase == during;
+        if (current) {
+          upstream = subscription;
+        }
+        initial = demand.get();
+      }
+      if (cancelled || !current) {
+        subscription.cancel();
+      } else if (initial > 0) {
+        subscription.request(initial);
+      }
+    }
+
+    @Override
+    public void onNext(Event event) {
+      long orderId = orderId(event);
+      if (phase != during) {
+        return;
+      }
+      if (orderId >= before) {
+        readLog();
+        return;
+      }
+      if (during == Phase.EVENT_STORE) {
+        try {
+          streamLog.append(event);
+        } catch (RuntimeException e) {
+          cancel();
+          subscriber.onError(e);
+          return;
+        }
+      }
+      synchronized (LocalLogReplay.this) {
+        lastSeen = orderId;
+      }
+      demand.decrementAndGet();
+      subscriber.onNext(event);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      if (phase == during) {
+        subscriber.onError(throwable);
+      }
+    }
+
+    @Override
+    public void onComplete() {
+      if (during == Phase.BEFORE_LOG) {
+        readLog();
+      } else {
+        subscriber.onComplete();
+      }
+    }
+  }
+}
@@ -2,60 +2,65 @@ package io.muoncore.newton.cluster;
 
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Locks for a single node, which always holds them. A task runs again 500ms after it has returned and released its
+ * lock, without a thread waiting on the lock in between.
+ */
 @Slf4j
 public class LocalOnlyLockService implements LockService {
 
-  private Executor pool = Executors.newFixedThreadPool(100);
+  private static final long RELOCK_DELAY_MILLIS = 500;
+
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "newton-lock");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final ExecutorService tasks = Executors.newCachedThreadPool(runnable -> {
+    Thread thread = new Thread(runnable, "newton-locked-task");
+    thread.setDaemon(true);
+    return thread;
+  });
 
   @Override
   public void executeAndRepeatWithLock(String name, LockedTask exec) {
     log.info("Starting to wait on the lock " + name);
+    tasks.execute(() -> run(name, exec));
+  }
 
-    pool.execute(() -> {
-      Thread.currentThread().setName("Lock-" + name);
-      log.info("In executor " + name);
-      Lock lock = new ReentrantLock();
-
-      while(true) {
-        log.info("Waiting on the lock " + name);
-
-        lock.lock();
-        CountDownLatch latch = new CountDownLatch(1);
-        try {
-          log.info("Obtained global lock '{}', executing local task on this node", name);
-          exec.execute(() -> {
-            synchronized (lock) {
-              try {
-                lock.unlock();
-                latch.countDown();
-              } catch (IllegalMonitorStateException e) {
-                log.info("{} is already unlocked", name);
-                latch.countDown();
-              }
-            }
-          });
-          latch.await();
-        } catch (Exception ex) {
-          log.warn("Locked process has failed with an exception {}, and {} has been unlocked", ex.getMessage(), name);
-          log.debug("Locking Process failed with exception", ex);
-        } finally {
-          synchronized (lock) {
-            lock.unlock();
-          }
-          log.info("Global lock '{}' released! Will try again in 500ms", name);
-          try {
-            Thread.sleep(500);
-          } catch (InterruptedException e) {
-            log.error("Failure while waiting", e);
-          }
-        }
+  private void run(String name, LockedTask exec) {
+    log.info("Obtained global lock '{}', executing local task on this node", name);
+    AtomicInteger outstanding = new AtomicInteger(2);
+    Runnable done = () -> {
+      if (outstanding.decrementAndGet() == 0) {
+        log.info("Global lock '{}' released! Will try again in {}ms", name, RELOCK_DELAY_MILLIS);
+        scheduler.schedule(() -> tasks.execute(() -> run(name, exec)), RELOCK_DELAY_MILLIS, TimeUnit.MILLISECONDS);
       }
-    });
+    };
+    AtomicBoolean released = new AtomicBoolean();
+    TaskLockControl control = () -> {
+      if (released.compareAndSet(false, true)) {
+        done.run();
+      } else {
+        log.info("{} is already unlocked", name);
+      }
+    };
+
+    try {
+      exec.execute(control);
+    } catch (Exception ex) {
+      log.warn("Locked process has failed with an exception {}, and {} has been unlocked", ex.getMessage(), name);
+      log.debug("Locking Process failed with exception", ex);
+      control.releaseLock();
+    } finally {
+      done.run();
+    }
   }
 }
@@ -0,0 +1,475 @@
+package io.muoncore.newton.cluster;
+
+import com.google.gson.Gson;
+import io.muoncore.codec.Codecs;
+import io.muoncore.codec.json.JsonOnlyCodecs;
+import io.muoncore.protocol.event.Event;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * A local, append only copy of an event stream, held in memory mapped segment files.
+ *
+ * Each segment is named after the orderId of its first event, and holds records of
+ * {@code [int length][int crc32][json event]}, with a zero length marking the end of the written data. Segments are
+ * rolled once full. When more than the retained number of segments exist the oldest are deleted, and the log is marked
+ * as truncated, covering only the events from its first segment onwards.
+ *
+ * On opening, every record is checked against its CRC. The log is cut back to the last intact record, dropping any
+ * later segments, so a write torn by a crash is discarded and fetched again from the event store.
+ *
+ * Readers pin the segment they are reading. A segment removed by retention, or by closing the log, is unmapped once no
+ * reader holds it, and only then is its file deleted.
+ */
+@Slf4j
+class LocalStreamLog implements Closeable {
+
+  private static final String SUFFIX = ".segment";
+  private static final String TRUNCATED = "truncated";
+  private static final int HEADER = 8;
+  private static final int INDEX_INTERVAL = 1024;
+  private static final Consumer<MappedByteBuffer> UNMAPPER = unmapper();
+
+  private final Gson gson = new Gson();
+  private final Codecs codecs = new JsonOnlyCodecs();
+  private final Path directory;
+  private final int segmentBytes;
+  private final int maxSegments;
+  private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+  private volatile long tail;
+  private volatile boolean truncated;
+  private boolean closed;
+
+  LocalStreamLog(Path directory, int segmentBytes, int maxSegments) {
+    this.directory = directory;
+    this.segmentBytes = segmentBytes;
+    this.maxSegments = maxSegments;
+    try {
+      Files.createDirectories(directory);
+      truncated = Files.exists(directory.resolve(TRUNCATED));
+      recover();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to open local stream log " + directory, e);
+    }
+  }
+
+  /**
+   * The name of the directory holding the log of a stream, distinct for every stream name
+   */
+  static String directoryName(String streamName) {
+    try {
+      String encoded = URLEncoder.encode(streamName, StandardCharsets.UTF_8.name()).replace("*", "%2A");
+      return encoded.replace(".", "%2E");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * The orderId of the last event in the log, 0 if it is empty
+   */
+  long getTail() {
+    return tail;
+  }
+
+  /**
+   * The orderId of the first event held, if older events have been removed by retention. Otherwise 0, the log holds the
+   * stream from its beginning.
+   */
+  long getStart() {
+    return truncated && !segments.isEmpty() ? segments.firstKey() : 0;
+  }
+
+  /**
+   * Append an event after the current tail. Events at or before the tail are already held, and are ignored, as are
+   * events appended once the log is closed.
+   */
+  synchronized void append(Event event) {
+    long orderId = orderId(event);
+    if (orderId <= tail || closed) {
+      return;
+    }
+    byte[] body = gson.toJson(new StoredEvent(event)).getBytes(StandardCharsets.UTF_8);
+    if (body.length + HEADER * 2 > segmentBytes) {
+      throw new IllegalArgumentException("Event " + orderId + " is too large for a segment of " + segmentBytes + " bytes");
+    }
+    Segment segment = segments.isEmpty() ? null : segments.lastEntry().getValue();
+    if (segment == null || segment.remaining() < body.length + HEADER * 2) {
+      segment = roll(orderId);
+    }
+    segment.write(orderId, body);
+    tail = orderId;
+  }
+
+  /**
+   * Read the events after the given orderId, in order, starting from the segment and index entry that precede it.
+   */
+  Reader reader(long afterOrderId) {
+    return new Reader(afterOrderId);
+  }
+
+  @Override
+  public synchronized void close() {
+    closed = true;
+    segments.values().forEach(segment -> segment.retire(false));
+    segments.clear();
+  }
+
+  private void recover() throws IOException {
+    List<Path> files = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+      stream.forEach(files::add);
+    }
+    TreeMap<Long, Path> ordered = new TreeMap<>();
+    files.forEach(file -> ordered.put(Long.parseLong(file.getFileName().toString().replace(SUFFIX, "")), file));
+
+    boolean intact = true;
+    for (Map.Entry<Long, Path> file : ordered.entrySet()) {
+      if (!intact) {
+        log.warn("Removing segment {} after a damaged segment in {}", file.getValue(), directory);
+        Files.delete(file.getValue());
+        continue;
+      }
+      Segment segment = new Segment(file.getValue());
+      intact = segment.recover();
+      if (segment.records == 0) {
+        segment.retire(true);
+      } else {
+        segments.put(file.getKey(), segment);
+        tail = segment.lastOrderId;
+      }
+    }
+  }
+
+  private Segment roll(long firstOrderId) {
+    Segment last = segments.isEmpty() ? null : segments.lastEntry().getValue();
+    if (last != null) {
+      last.buffer.force();
+    }
+    try {
+      Segment segment = new Segment(directory.resolve(String.format("%020d", firstOrderId) + SUFFIX));
+      segments.put(firstOrderId, segment);
+      while (maxSegments > 0 && segments.size() > maxSegments) {
+        segments.pollFirstEntry().getValue().retire(true);
+        if (!truncated) {
+          Files.createFile(directory.resolve(TRUNCATED));
+          truncated = true;
+        }
+      }
+      return segment;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to create segment in " + directory, e);
+    }
+  }
+
+  private Event decode(byte[] body) {
+    return gson.fromJson(new String(body, StandardCharsets.UTF_8), StoredEvent.class).toEvent(codecs);
+  }
+
+  private static long orderId(Event event) {
+    return event.getOrderId() == null ? 0 : event.getOrderId();
+  }
+
+  /**
+   * Releases the mapping of a buffer straight away, rather than when it is garbage collected, so that its file can be
+   * deleted on every platform and its address space is returned.
+   */
+  private static Consumer<MappedByteBuffer> unmapper() {
+    try {
+      //java 9 onwards
+      Class<?> unsafeType = Class.forName("sun.misc.Unsafe");
+      Method invokeCleaner = unsafeType.getMethod("invokeCleaner", ByteBuffer.class);
+      Field theUnsafe = unsafeType.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      Object unsafe = theUnsafe.get(null);
+      return buffer -> invoke(() -> invokeCleaner.invoke(unsafe, buffer));
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      //java 8
+      return buffer -> invoke(() -> {
+        Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+        cleanerMethod.setAccessible(true);
+        Object cleaner = cleanerMethod.invoke(buffer);
+        if (cleaner != null) {
+          cleaner.getClass().getMethod("clean").invoke(cleaner);
+        }
+        return null;
+      });
+    }
+  }
+
+  private static void invoke(Callable<?> unmap) {
+    try {
+      unmap.call();
+    } catch (Exception e) {
+      log.debug("Unable to unmap a segment, it will be released when collected: {}", e.getMessage());
+    }
+  }
+
+  private static int crc(byte[] body) {
+    CRC32 crc = new CRC32();
+    crc.update(body);
+    return (int) crc.getValue();
+  }
+
+  private class Segment {
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    //a sparse index of record positions, by orderId
+    private final ConcurrentSkipListMap<Long, Integer> index = new ConcurrentSkipListMap<>();
+    //the end of the fully written records, visible to readers
+    private volatile int limit;
+    private long records;
+    private long lastOrderId;
+    //guarded by the log
+    private int pins;
+    private boolean retired;
+    private boolean deleteOnRelease;
+    private boolean released;
+
+    private Segment(Path file) throws IOException {
+      this.file = file;
+      this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(segmentBytes, channel.size()));
+    }
+
+    /**
+     * Scan the records, stopping at the end of the data or the first damaged record.
+     *
+     * @return false if a damaged record was found
+     */
+    private boolean recover() {
+      ByteBuffer view = buffer.duplicate();
+      int position = 0;
+      while (position + HEADER <= view.capacity()) {
+        int length = view.getInt(position);
+        if (length == 0) {
+          break;
+        }
+        if (length < 0 || position + HEADER + length > view.capacity()) {
+          return damaged(position);
+        }
+        byte[] body = new byte[length];
+        view.position(position + HEADER);
+        view.get(body);
+        if (crc(body) != view.getInt(position + 4)) {
+          return damaged(position);
+        }
+        indexRecord(decodeOrderId(body), position);
+        position += HEADER + length;
+      }
+      limit = position;
+      return true;
+    }
+
+    private boolean damaged(int position) {
+      log.warn("Damaged record at {} in {}, discarding the log from there", position, file);
+      for (int i = position; i < buffer.capacity(); i++) {
+        buffer.put(i, (byte) 0);
+      }
+      buffer.force();
+      limit = position;
+      return false;
+    }
+
+    private long decodeOrderId(byte[] body) {
+      return orderId(decode(body));
+    }
+
+    private void indexRecord(long orderId, int position) {
+      if (records % INDEX_INTERVAL == 0) {
+        index.put(orderId, position);
+      }
+      records++;
+      lastOrderId = orderId;
+    }
+
+    private int remaining() {
+      return buffer.capacity() - limit;
+    }
+
+    private void write(long orderId, byte[] body) {
+      int position = limit;
+      buffer.putInt(position + 4, crc(body));
+      for (int i = 0; i < body.length; i++) {
+        buffer.put(position + HEADER + i, body[i]);
+      }
+      //the length is written last, so a record is only visible once complete
+      buffer.putInt(position, body.length);
+      indexRecord(orderId, position);
+      limit = position + HEADER + body.length;
+    }
+
+    /**
+     * Stop using the segment, deleting its file if asked. It is released once no reader holds it.
+     */
+    private void retire(boolean delete) {
+      synchronized (LocalStreamLog.this) {
+        retired = true;
+        deleteOnRelease = deleteOnRelease || delete;
+        if (pins == 0) {
+          release();
+        }
+      }
+    }
+
+    private void pin() {
+      pins++;
+    }
+
+    private void unpin() {
+      synchronized (LocalStreamLog.this) {
+        if (--pins == 0 && retired) {
+          release();
+        }
+      }
+    }
+
+    private void release() {
+      if (released) {
+        return;
+      }
+      released = true;
+      if (!deleteOnRelease) {
+        buffer.force();
+      }
+      try {
+        channel.close();
+      } catch (IOException e) {
+        log.warn("Unable to close segment {}: {}", file, e.getMessage());
+      }
+      UNMAPPER.accept(buffer);
+      if (deleteOnRelease) {
+        try {
+          Files.deleteIfExists(file);
+        } catch (IOException e) {
+          log.warn("Unable to delete segment {}: {}", file, e.getMessage());
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads events in order across the segments, up to the data written when each record is reached. Holds the segment
+   * being read until it moves on to the next, or is closed.
+   */
+  class Reader implements Closeable {
+    private final long afterOrderId;
+    private Segment segment;
+    private long segmentKey;
+    private int position;
+
+    private Reader(long afterOrderId) {
+      this.afterOrderId = afterOrderId;
+      synchronized (LocalStreamLog.this) {
+        Map.Entry<Long, Segment> first = segments.floorEntry(afterOrderId);
+        if (first == null) {
+          first = segments.firstEntry();
+        }
+        if (first != null) {
+          segment = first.getValue();
+          segmentKey = first.getKey();
+          segment.pin();
+          Map.Entry<Long, Integer> indexed = segment.index.floorEntry(afterOrderId);
+          position = indexed == null ? 0 : indexed.getValue();
+        }
+      }
+    }
+
+    /**
+     * @return the next event, or null once the end of the log is reached
+     */
+    Event next() {
+      while (segment != null) {
+        if (position < segment.limit) {
+          ByteBuffer view = segment.buffer.duplicate();
+          int length = view.getInt(position);
+          byte[] body = new byte[length];
+          view.position(position + HEADER);
+          view.get(body);
+          position += HEADER + length;
+          Event event = decode(body);
+          if (orderId(event) > afterOrderId) {
+            return event;
+          }
+        } else if (!nextSegment()) {
+          return null;
+        }
+      }
+      return null;
+    }
+
+    private boolean nextSegment() {
+      Segment previous = segment;
+      synchronized (LocalStreamLog.this) {
+        Map.Entry<Long, Segment> next = segments.higherEntry(segmentKey);
+        if (next == null) {
+          return false;
+        }
+        segment = next.getValue();
+        segmentKey = next.getKey();
+        position = 0;
+        segment.pin();
+      }
+      previous.unpin();
+      return true;
+    }
+
+    @Override
+    public void close() {
+      if (segment != null) {
+        segment.unpin();
+        segment = null;
+      }
+    }
+  }
+
+  /**
+   * The fields of an event, as written to the log. Newton reads only these, the causation and schema of an event are
+   * not kept.
+   */
+  private static class StoredEvent {
+    private String id;
+    private String eventType;
+    private String streamName;
+    private Long orderId;
+    private Long eventTime;
+    private Map payload;
+
+    private StoredEvent(Event event) {
+      this.id = event.getId();
+      this.eventType = event.getEventType();
+      this.streamName = event.getStreamName();
+      this.orderId = event.getOrderId();
+      this.eventTime = event.getEventTime();
+      this.payload = event.getPayload(Map.class);
+    }
+
+    private Event toEvent(Codecs codecs) {
+      return new Event(id, eventType, streamName, null, null, null, null, orderId, eventTime, payload, codecs);
+    }
+  }
+}
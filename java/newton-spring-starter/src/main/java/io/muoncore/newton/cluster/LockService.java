@@ -3,6 +3,13 @@ package io.muoncore.newton.cluster;
 public interface LockService {
 	void executeAndRepeatWithLock(String name, LockedTask exec);
 
+	/**
+	 * The number of live members in the cluster competing for locks, used to spread partitioned work between them.
+	 */
+	default int getMemberCount() {
+		return 1;
+	}
+
 	interface LockedTask {
 		void execute(TaskLockControl control);
 	}
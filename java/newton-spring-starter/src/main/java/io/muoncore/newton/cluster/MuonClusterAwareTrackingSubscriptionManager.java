@@ -2,48 +2,285 @@ package io.muoncore.newton.cluster;
 
 import io.muoncore.newton.NewtonEvent;
 import io.muoncore.newton.StreamSubscriptionManager;
+import io.muoncore.newton.SubscriptionMetrics;
+import io.muoncore.newton.SubscriptionOptions;
 import io.muoncore.newton.eventsource.EventTypeNotFound;
 import io.muoncore.newton.eventsource.muon.EventStreamProcessor;
 import io.muoncore.newton.query.EventStreamIndex;
 import io.muoncore.newton.query.EventStreamIndexStore;
 import io.muoncore.newton.utils.muon.MuonLookupUtils;
+import io.muoncore.protocol.event.Event;
 import io.muoncore.protocol.event.client.EventClient;
 import io.muoncore.protocol.event.client.EventReplayMode;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
 
+import javax.management.JMException;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 @Slf4j
 public class MuonClusterAwareTrackingSubscriptionManager implements StreamSubscriptionManager {
 
+  static final int DEFAULT_WORKERS = 16;
+  static final int DEFAULT_SHARED_BUFFER = 10000;
+  static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+  static final String EVENT_TYPES_ARG = "event-types";
+
   private final int RECONNECTION_BACKOFF = 5000;
+  private final int REBALANCE_INTERVAL = 10000;
   private EventClient eventClient;
   private EventStreamIndexStore eventStreamIndexStore;
   private LockService lockService;
   private EventStreamProcessor eventStreamProcessor;
   //avoid potential deadlock by doing all work on a different thread, not the event dispatch thread.
-  private final Executor worker = Executors.newCachedThreadPool();
+  private final PartitionedExecutor workers;
   private final Executor pool = Executors.newCachedThreadPool();
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "newton-subscription-checkpoint");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final Map<String, SubscriptionCheckpoint> checkpoints = new ConcurrentHashMap<>();
+  private final Map<String, EventSubscriber> subscribers = new ConcurrentHashMap<>();
+  private final Map<String, PartitionAssignment> assignments = new ConcurrentHashMap<>();
+  private final Map<String, SubscriptionStats> stats = new ConcurrentHashMap<>();
+  private final Map<String, AtomicLong> streamHeads = new ConcurrentHashMap<>();
+  private final Set<String> localSubscriptionNames = ConcurrentHashMap.newKeySet();
+  private boolean jmxEnabled = true;
+  private boolean filterAtEventStore;
+  private int batchSize = 500;
+  private long batchLingerMillis = 50;
+  private long claimUnownedPartitionMillis = PartitionAssignment.DEFAULT_CLAIM_UNOWNED_MILLIS;
+  private final AtomicLong checkpointWrites = new AtomicLong();
+  private volatile long checkpointWritesPerSecond;
+  private long sampledCheckpointWrites;
+  private int checkpointEvents = 100;
+  private long checkpointMillis = 1000;
+  private volatile SharedStreamReplay sharedReplay;
+  private final Map<String, LocalStreamLog> localLogs = new ConcurrentHashMap<>();
+  private String localLogDirectory = "";
+  private int localLogSegmentBytes = DEFAULT_SEGMENT_BYTES;
+  private int localLogMaxSegments;
 
   public MuonClusterAwareTrackingSubscriptionManager(EventClient eventClient, EventStreamIndexStore eventStreamIndexStore, LockService lockService, EventStreamProcessor eventStreamProcessor) {
+    this(eventClient, eventStreamIndexStore, lockService, eventStreamProcessor, DEFAULT_WORKERS);
+  }
+
+  public MuonClusterAwareTrackingSubscriptionManager(EventClient eventClient, EventStreamIndexStore eventStreamIndexStore, LockService lockService, EventStreamProcessor eventStreamProcessor, int workerCount) {
     this.eventClient = eventClient;
     this.eventStreamIndexStore = eventStreamIndexStore;
     this.lockService = lockService;
     this.eventStreamProcessor = eventStreamProcessor;
+    this.workers = new PartitionedExecutor("newton-subscription-worker", workerCount);
+    this.sharedReplay = new SharedStreamReplay(eventClient, DEFAULT_SHARED_BUFFER, RECONNECTION_BACKOFF, scheduler);
+    this.scheduler.scheduleAtFixedRate(this::sampleCheckpointWrites, 1, 1, TimeUnit.SECONDS);
+    this.scheduler.scheduleWithFixedDelay(this::rebalancePartitions, REBALANCE_INTERVAL, REBALANCE_INTERVAL, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Tracking subscriptions save their position after this many events have been processed
+   */
+  @Value("${newton.subscriptions.checkpointEvents:100}")
+  public void setCheckpointEvents(int checkpointEvents) {
+    this.checkpointEvents = checkpointEvents;
+  }
+
+  /**
+   * Tracking subscriptions save their position at least this often, while events are being processed
+   */
+  @Value("${newton.subscriptions.checkpointMillis:1000}")
+  public void setCheckpointMillis(long checkpointMillis) {
+    this.checkpointMillis = checkpointMillis;
+  }
+
+  /**
+   * Local subscriptions to the same stream share a single live subscription, buffering this many recent events for
+   * subscriptions to read from. Zero gives every subscription its own replay from the event store.
+   */
+  @Value("${newton.subscriptions.sharedBufferSize:" + DEFAULT_SHARED_BUFFER + "}")
+  public void setSharedBufferSize(int sharedBufferSize) {
+    this.sharedReplay = sharedBufferSize > 0 ? new SharedStreamReplay(eventClient, sharedBufferSize, RECONNECTION_BACKOFF, scheduler) : null;
+  }
+
+  /**
+   * Local, non tracking, subscriptions keep a copy of each stream they replay in this directory, and on the next replay
+   * read it from disk, requesting only newer events from the event store. Empty to always replay from the event store.
+   */
+  @Value("${newton.subscriptions.localLog.directory:}")
+  public void setLocalLogDirectory(String localLogDirectory) {
+    this.localLogDirectory = localLogDirectory;
+  }
+
+  /**
+   * The size of each segment file of the local stream logs
+   */
+  @Value("${newton.subscriptions.localLog.segmentBytes:" + DEFAULT_SEGMENT_BYTES + "}")
+  public void setLocalLogSegmentBytes(int localLogSegmentBytes) {
+    this.localLogSegmentBytes = localLogSegmentBytes;
+  }
+
+  /**
+   * The number of segments kept for each local stream log, older segments are deleted. Zero keeps every segment.
+   */
+  @Value("${newton.subscriptions.localLog.maxSegments:0}")
+  public void setLocalLogMaxSegments(int localLogMaxSegments) {
+    this.localLogMaxSegments = localLogMaxSegments;
+  }
+
+  /**
+   * Batch subscriptions deliver up to this many events together, unless set by their options
+   */
+  @Value("${newton.subscriptions.batchSize:500}")
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Batch subscriptions deliver a batch once its first event has waited this long, unless set by their options
+   */
+  @Value("${newton.subscriptions.batchLingerMillis:50}")
+  public void setBatchLingerMillis(long batchLingerMillis) {
+    this.batchLingerMillis = batchLingerMillis;
+  }
+
+  /**
+   * Publish the metrics of each subscription as an MXBean
+   */
+  @Value("${newton.subscriptions.jmx:true}")
+  public void setJmxEnabled(boolean jmxEnabled) {
+    this.jmxEnabled = jmxEnabled;
+  }
+
+  /**
+   * Pass the event types of tracking subscriptions to the event store, as the "event-types" replay argument, for event
+   * stores that can filter a replay. Only used when local subscriptions do not share a live subscription, as the shared
+   * stream must carry every event.
+   */
+  @Value("${newton.subscriptions.filterAtEventStore:false}")
+  public void setFilterAtEventStore(boolean filterAtEventStore) {
+    this.filterAtEventStore = filterAtEventStore;
+  }
+
+  /**
+   * How long a partition of a partitioned subscription has no other owner, while this node declines it as beyond its
+   * fair share, before this node runs it anyway. Cluster members that do not run the subscription still count towards
+   * the fair share.
+   */
+  @Value("${newton.subscriptions.claimUnownedPartitionMillis:" + PartitionAssignment.DEFAULT_CLAIM_UNOWNED_MILLIS + "}")
+  public void setClaimUnownedPartitionMillis(long claimUnownedPartitionMillis) {
+    this.claimUnownedPartitionMillis = claimUnownedPartitionMillis;
+  }
+
+  @Override
+  public Map<String, SubscriptionMetrics> getSubscriptionMetrics() {
+    return Collections.unmodifiableMap(stats);
+  }
+
+  /**
+   * The number of checkpoints saved in the last second, across all tracking subscriptions
+   */
+  public long getCheckpointWritesPerSecond() {
+    return checkpointWritesPerSecond;
+  }
+
+  /**
+   * The number of events received by the subscription that are not yet covered by a saved checkpoint
+   */
+  public long getCheckpointLag(String subscriptionName) {
+    SubscriptionCheckpoint checkpoint = checkpoints.get(subscriptionName);
+    return checkpoint == null ? 0 : checkpoint.getLag();
+  }
+
+  /**
+   * The number of events the subscription has requested from the event store, and not yet received
+   */
+  public long getOutstandingDemand(String subscriptionName) {
+    EventSubscriber subscriber = subscribers.get(subscriptionName);
+    return subscriber == null ? 0 : subscriber.getOutstandingDemand();
+  }
+
+  /**
+   * The number of events the subscription has processed since it last connected
+   */
+  public long getProcessedEvents(String subscriptionName) {
+    EventSubscriber subscriber = subscribers.get(subscriptionName);
+    return subscriber == null ? 0 : subscriber.getProcessed();
+  }
+
+  /**
+   * Saves the position of all running tracking subscriptions, and stops processing.
+   */
+  public void shutdown() {
+    checkpoints.values().forEach(SubscriptionCheckpoint::close);
+    scheduler.shutdown();
+    workers.shutdown();
+    localLogs.values().forEach(LocalStreamLog::close);
+    if (jmxEnabled) {
+      stats.keySet().forEach(this::unregister);
+    }
+  }
+
+  private void unregister(String subscriptionName) {
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName(subscriptionName));
+    } catch (JMException e) {
+      log.debug("Unable to remove the JMX metrics of subscription {}: {}", subscriptionName, e.getMessage());
+    }
+  }
+
+  private synchronized void sampleCheckpointWrites() {
+    long total = checkpointWrites.get();
+    checkpointWritesPerSecond = total - sampledCheckpointWrites;
+    sampledCheckpointWrites = total;
+    stats.values().forEach(SubscriptionStats::sample);
+  }
+
+  @Override
+  public void localNonTrackingSubscription(String streamName, SubscriptionOptions options, Consumer<NewtonEvent> onData) {
+    localNonTrackingSubscription(streamName, streamName, options, onData);
   }
 
   @Override
-  public void localNonTrackingSubscription(String streamName, Consumer<NewtonEvent> onData) {
-    repeatUntilCleanlyRuns(streamName, () -> {
-      subscription(streamName, onData);
+  public void localNonTrackingSubscription(String subscriptionName, String streamName, SubscriptionOptions options, Consumer<NewtonEvent> onData) {
+    localSubscription(uniqueLocalName(subscriptionName), streamName, options, onData);
+  }
+
+  private void localSubscription(String subscriptionName, String streamName, SubscriptionOptions options, Consumer<NewtonEvent> onData) {
+    repeatUntilCleanlyRuns(subscriptionName, () -> {
+      subscription(subscriptionName, streamName, options, onData);
     });
   }
 
+  /**
+   * Local subscriptions keep the name given here across reconnections, so each has its own metrics
+   */
+  private String uniqueLocalName(String subscriptionName) {
+    String unique = subscriptionName;
+    for (int i = 2; !localSubscriptionNames.add(unique); i++) {
+      unique = subscriptionName + "-" + i;
+    }
+    return unique;
+  }
+
   private void repeatUntilCleanlyRuns(String name, Runnable exec) {
     pool.execute(() -> {
       while(true) {
@@ -60,151 +297,587 @@ public class MuonClusterAwareTrackingSubscriptionManager implements StreamSubscr
     });
   }
 
-  private void subscription(String streamName, Consumer<NewtonEvent> onData) {
-    log.debug("Subscribing to event stream '{}' for full local replay", streamName);
+  private void subscription(String subscriptionName, String streamName, SubscriptionOptions options, Consumer<NewtonEvent> onData) {
+    log.debug("Subscribing to event stream '{}' for full local replay as {}", streamName, subscriptionName);
 
-    eventClient.replay(
-      streamName,
-      EventReplayMode.REPLAY_THEN_LIVE,
-      new EventSubscriber(event -> {
-        log.debug("NewtonEvent received " + event);
-        final NewtonEvent newtonEvent = MuonLookupUtils.decorateMeta(event.getPayload(MuonLookupUtils.getDomainClass(event)), event);
-        worker.execute(() -> {
-          eventStreamProcessor.executeWithinEventContext(newtonEvent, onData);
-        });
-      }, throwable -> {
-        log.warn("NewtonEvent subscription has ended, will attempt to reconnect in {}ms", RECONNECTION_BACKOFF);
-        try {
-          Thread.sleep(RECONNECTION_BACKOFF);
-        } catch (InterruptedException e) {
-          e.printStackTrace();
-        }
-        localNonTrackingSubscription(streamName, onData);
-      }));
+    EventSubscriber subscriber = subscriber(subscriptionName, new EventSubscriber(workers, partitionKey(subscriptionName, options), eventTypeFilter(options), options, null, stats(subscriptionName, streamName), event -> {
+      log.debug("NewtonEvent received " + event);
+      eventStreamProcessor.executeWithinEventContext(decode(event), onData);
+    }, throwable -> {
+      log.warn("NewtonEvent subscription has ended, will attempt to reconnect in {}ms", RECONNECTION_BACKOFF);
+      try {
+        Thread.sleep(RECONNECTION_BACKOFF);
+      } catch (InterruptedException e) {
+        log.warn("Interrupted while waiting to reconnect subscription {}, not reconnecting", subscriptionName);
+        Thread.currentThread().interrupt();
+        return;
+      }
+      localSubscription(subscriptionName, streamName, options, onData);
+    }));
+
+    LocalStreamLog streamLog = localLog(streamName);
+    if (streamLog == null) {
+      replay(streamName, EventReplayMode.REPLAY_THEN_LIVE, null, subscriber);
+    } else {
+      new LocalLogReplay(streamName, streamLog, (mode, args, eventStore) -> replay(streamName, mode, args, eventStore), subscriber).start();
+    }
+  }
+
+  private LocalStreamLog localLog(String streamName) {
+    if (localLogDirectory == null || localLogDirectory.isEmpty()) {
+      return null;
+    }
+    return localLogs.computeIfAbsent(streamName, name -> new LocalStreamLog(
+      Paths.get(localLogDirectory, LocalStreamLog.directoryName(name)), localLogSegmentBytes, localLogMaxSegments));
+  }
+
+  @Override
+  public void globallyUniqueSubscription(String subscriptionName, String stream, SubscriptionOptions options, Consumer<NewtonEvent> onData) {
+    globallyUniqueSubscription(subscriptionName, stream, options, false, onData, null);
   }
 
   @Override
-  public void globallyUniqueSubscription(String subscriptionName, String stream, Consumer<NewtonEvent> onData) {
+  public void globallyUniqueBatchSubscription(String subscriptionName, String stream, SubscriptionOptions options, Consumer<List<NewtonEvent>> onBatch) {
+    globallyUniqueBatchSubscription(subscriptionName, stream, options, (events, checkpoint) -> onBatch.accept(events));
+  }
+
+  @Override
+  public void globallyUniqueBatchSubscription(String subscriptionName, String stream, SubscriptionOptions options, BiConsumer<List<NewtonEvent>, EventStreamIndex> onBatch) {
+    globallyUniqueSubscription(subscriptionName, stream, options, false, null, onBatch);
+  }
+
+  @Override
+  public void globallyUniqueSubscriptionFromNow(String subscriptionName, String stream, SubscriptionOptions options, Consumer<NewtonEvent> onData) {
+    globallyUniqueSubscription(subscriptionName, stream, options, true, onData, null);
+  }
+
+  /**
+   * Runs the subscription with either onData, handling events one at a time, or onBatch, handling them in batches.
+   */
+  private void globallyUniqueSubscription(String subscriptionName, String stream, SubscriptionOptions options, boolean fromNow,
+                                          Consumer<NewtonEvent> onData, BiConsumer<List<NewtonEvent>, EventStreamIndex> onBatch) {
+    if (options.getPartitions() > 1) {
+      partitionedSubscription(subscriptionName, stream, options, fromNow, onData, onBatch);
+      return;
+    }
     lockService.executeAndRepeatWithLock(subscriptionName, control -> {
-      localTrackingSubscription(subscriptionName, stream, onData, error -> {
+      SubscriptionStats subscriptionStats = stats(subscriptionName, stream);
+      subscriptionStats.setLockHeld(true);
+      localTrackingSubscription(subscriptionName, stream, options, fromNow, event -> true, onData, onBatch, error -> {
+        subscriptionStats.setLockHeld(false);
         control.releaseLock();
       });
     });
   }
 
-//  @Override
-//  public void globallyUniqueSubscriptionFromNow(String subscriptionName, String stream, Consumer<NewtonEvent> onData) {
-//    //TODO
-//  }
+  /**
+   * Each partition competes for its own lock, and tracks its own position in the full stream, only passing on
+   * events whose aggregate id hashes to it. A node declines a partition lock when it already runs its fair share,
+   * unless no other node has taken that partition for a while.
+   *
+   * Every partition held by a node therefore reads the whole stream, so catching up costs one replay per partition held.
+   * Live events are read once when local subscriptions share a live subscription. The number of partitions is bounded
+   * by {@link SubscriptionOptions#MAX_PARTITIONS}.
+   */
+  private void partitionedSubscription(String subscriptionName, String stream, SubscriptionOptions options, boolean fromNow,
+                                       Consumer<NewtonEvent> onData, BiConsumer<List<NewtonEvent>, EventStreamIndex> onBatch) {
+    PartitionAssignment assignment = new PartitionAssignment(subscriptionName, options.getPartitions(), claimUnownedPartitionMillis);
+    assignments.put(subscriptionName, assignment);
 
-  @Override
-  public void localHotSubscription(String subscriptionName, String stream, Consumer<NewtonEvent> onData) {
+    for (int i = 0; i < assignment.getPartitions(); i++) {
+      int partition = i;
+      String partitionName = assignment.partitionName(partition);
 
-    //TODO, implement this properly.
-    throw new IllegalStateException("BORKED");
-//    repeatUntilCleanlyRuns(subscriptionName, () -> {
-//      subscription(stream, onData);
-//    });
+      lockService.executeAndRepeatWithLock(partitionName, control -> {
+        if (!assignment.acquire(partition, lockService.getMemberCount())) {
+          //give the lock up, then wait before competing for it again, so that a node waiting on it obtains it
+          control.releaseLock();
+          try {
+            Thread.sleep(RECONNECTION_BACKOFF);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          return;
+        }
+        SubscriptionStats subscriptionStats = stats(partitionName, stream);
+        subscriptionStats.setLockHeld(true);
+        try {
+          EventSubscriber subscriber = localTrackingSubscription(partitionName, stream, options, fromNow,
+            event -> PartitionAssignment.partitionOf(event.getId(), assignment.getPartitions()) == partition, onData, onBatch, error -> {
+              subscriptionStats.setLockHeld(false);
+              assignment.released(partition);
+              control.releaseLock();
+            });
+          assignment.started(partition, subscriber::stop);
+        } catch (RuntimeException e) {
+          subscriptionStats.setLockHeld(false);
+          assignment.released(partition);
+          throw e;
+        }
+      });
+    }
+  }
+
+  private void rebalancePartitions() {
+    try {
+      int members = lockService.getMemberCount();
+      assignments.values().forEach(assignment -> assignment.rebalance(members));
+    } catch (Exception e) {
+      log.warn("Unable to rebalance subscription partitions: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * The number of partitions of a partitioned subscription that are running on this node
+   */
+  public int getHeldPartitions(String subscriptionName) {
+    PartitionAssignment assignment = assignments.get(subscriptionName);
+    return assignment == null ? 0 : assignment.getHeld();
   }
 
   @Override
-  public void localTrackingSubscription(String subscriptionName, String streamName, Consumer<NewtonEvent> onData) {
+  public void localHotSubscription(String subscriptionName, String stream, SubscriptionOptions options, Consumer<NewtonEvent> onData) {
+    localTrackingSubscription(subscriptionName, stream, options, true, onData);
+  }
+
+  @Override
+  public void localTrackingSubscription(String subscriptionName, String streamName, SubscriptionOptions options, Consumer<NewtonEvent> onData) {
+    localTrackingSubscription(subscriptionName, streamName, options, false, onData);
+  }
+
+  private void localTrackingSubscription(String subscriptionName, String streamName, SubscriptionOptions options, boolean fromNow, Consumer<NewtonEvent> onData) {
     repeatUntilCleanlyRuns(subscriptionName, () -> {
-      localTrackingSubscription(subscriptionName, streamName, onData, throwable -> {
+      localTrackingSubscription(subscriptionName, streamName, options, fromNow, event -> true, onData, null, throwable -> {
         log.warn("NewtonEvent subscription has ended, will attempt to reconnect in {}ms", RECONNECTION_BACKOFF);
         try {
           Thread.sleep(RECONNECTION_BACKOFF);
         } catch (InterruptedException e) {
           e.printStackTrace();
         }
-        localTrackingSubscription(subscriptionName, streamName, onData);
+        localTrackingSubscription(subscriptionName, streamName, options, fromNow, onData);
       });
     });
   }
 
-  private void localTrackingSubscription(String subscriptionName, String streamName, Consumer<NewtonEvent> onData, Consumer<Throwable> onError) {
-    EventStreamIndex eventStreamIndex = getEventStreamIndex(subscriptionName, streamName);
+  /**
+   * Replays the stream from the tracked position of the subscription.
+   *
+   * If the subscription has no tracked position and is to start from now, it subscribes to live events only. The first
+   * event received is then recorded as its position, so that any reconnection resumes from there.
+   *
+   * When the options save the checkpoint with the view, each batch is passed the position it takes the subscription to,
+   * for the view to save with its writes. Redelivered events at or before the saved position are skipped.
+   */
+  private EventSubscriber localTrackingSubscription(String subscriptionName, String streamName, SubscriptionOptions options, boolean fromNow,
+                                                    Predicate<Event> filter, Consumer<NewtonEvent> onData, BiConsumer<List<NewtonEvent>, EventStreamIndex> onBatch,
+                                                    Consumer<Throwable> onError) {
+    Optional<EventStreamIndex> eventStreamIndex = eventStreamIndexStore.findOneById(subscriptionName);
+    boolean live = fromNow && !eventStreamIndex.isPresent();
 
-    Long lastSeen = eventStreamIndex.getLastSeen() + 1;
+    long lastSeen = eventStreamIndex.map(EventStreamIndex::getLastSeen).orElse(0L);
+    boolean savedByView = onBatch != null && options.isCheckpointWithView();
 
-    log.info("Subscribing from index {} to event stream {} '{}'", lastSeen, subscriptionName, streamName);
+    SubscriptionCheckpoint checkpoint = new SubscriptionCheckpoint(subscriptionName, lastSeen, savedByView ? null : eventStreamIndexStore,
+      checkpointEvents, checkpointMillis, scheduler, checkpointWrites);
+    checkpoints.put(subscriptionName, checkpoint);
 
     Map args = new HashMap();
-    args.put("from", lastSeen);
     args.put("sub-name", subscriptionName);
 
-    eventClient.replay(
-      streamName,
-      EventReplayMode.REPLAY_THEN_LIVE,
-      args,
-      new EventSubscriber(event -> {
+    if (live) {
+      log.info("Subscribing to live events on event stream {} '{}'", subscriptionName, streamName);
+      checkpoint.startFromFirstEvent();
+    } else {
+      log.info("Subscribing from index {} to event stream {} '{}'", lastSeen + 1, subscriptionName, streamName);
+      args.put("from", lastSeen + 1);
+    }
+
+    Predicate<Event> accepted = filter.and(eventTypeFilter(options));
+    if (savedByView) {
+      accepted = accepted.and(event -> event.getOrderId() == null || event.getOrderId() > lastSeen);
+    }
+    if (filterAtEventStore && sharedReplay == null && !options.getEventTypes().isEmpty()) {
+      List<String> eventTypes = eventTypeNames(options);
+      if (eventTypes != null) {
+        args.put(EVENT_TYPES_ARG, eventTypes);
+      }
+    }
+
+    //events outside of this subscription's partition, of types it does not handle, or already saved by the view, are skipped
+    //but still advance its checkpoint, or the position passed to a view that saves it with its next batch
+    EventSubscriber subscriber = subscriber(subscriptionName, new EventSubscriber(workers, partitionKey(subscriptionName, options), accepted, options, checkpoint, stats(subscriptionName, streamName), event -> {
+      if (log.isTraceEnabled()) {
         log.trace("Store is {}, event is {}, time is {}", eventStreamIndexStore, event, event.getOrderId());
-        Class<? extends NewtonEvent> eventType = MuonLookupUtils.getDomainClass(event);
-        if (log.isTraceEnabled()) {
-          log.trace("Store is {}, event is {}, time is {}", eventStreamIndexStore, event, event.getOrderId());
-        }
+      }
+      eventStreamProcessor.executeWithinEventContext(decode(event), onData);
+    }, error -> {
+      //save what has been processed before another node, or a reconnection, resumes from the checkpoint
+      checkpoint.close();
+      checkpoints.remove(subscriptionName, checkpoint);
+      onError.accept(error);
+    }));
 
-        eventStreamIndexStore.save(new EventStreamIndex(subscriptionName, event.getOrderId()==null?0l:event.getOrderId()));
-        NewtonEvent newtonEvent;
-        if (eventType == null) {
-          newtonEvent = new EventTypeNotFound(event.getOrderId(), event);
-        } else {
-          newtonEvent = MuonLookupUtils.decorateMeta(event.getPayload(eventType), event);
+    if (onBatch != null) {
+      int batchSize = options.getBatchSize() > 0 ? options.getBatchSize() : this.batchSize;
+      long lingerMillis = options.getBatchLingerMillis() > 0 ? options.getBatchLingerMillis() : batchLingerMillis;
+      subscriber.batching(new EventBatcher(workers, scheduler, batchSize, lingerMillis, (events, last) -> {
+        if (events.isEmpty()) {
+          //only skipped events, which still move the position saved by the view
+          onBatch.accept(Collections.emptyList(), checkpointOf(subscriptionName, last, savedByView));
+          return;
         }
-        worker.execute(() -> {
-          eventStreamProcessor.executeWithinEventContext(newtonEvent, onData);
-        });
-      }, onError));
+        //the batch is handled in parts that share an event context, each run within that context
+        List<NewtonEvent> part = new ArrayList<>();
+        Object context = null;
+        for (int i = 0; i < events.size(); i++) {
+          NewtonEvent event = decode(events.get(i));
+          Object eventContext = eventStreamProcessor.getEventContext(event);
+          if (!part.isEmpty() && !Objects.equals(context, eventContext)) {
+            handleBatch(part, checkpointOf(subscriptionName, events.get(i - 1), savedByView), onBatch);
+            part = new ArrayList<>();
+          }
+          context = eventContext;
+          part.add(event);
+        }
+        handleBatch(part, checkpointOf(subscriptionName, last, savedByView), onBatch);
+      }, subscriber::fail), savedByView);
+    }
+
+    replay(streamName, live ? EventReplayMode.LIVE_ONLY : EventReplayMode.REPLAY_THEN_LIVE, args, subscriber);
+    return subscriber;
+  }
+
+  private void handleBatch(List<NewtonEvent> batch, EventStreamIndex checkpoint, BiConsumer<List<NewtonEvent>, EventStreamIndex> onBatch) {
+    eventStreamProcessor.executeWithinEventContext(batch.get(0), first -> onBatch.accept(batch, checkpoint));
+  }
+
+  /**
+   * The position after the event, for a view that saves its own position, otherwise null
+   */
+  private static EventStreamIndex checkpointOf(String subscriptionName, Event event, boolean savedByView) {
+    if (!savedByView) {
+      return null;
+    }
+    return new EventStreamIndex(subscriptionName, event.getOrderId() == null ? 0 : event.getOrderId());
+  }
+
+  private void replay(String streamName, EventReplayMode mode, Map args, Subscriber<Event> subscriber) {
+    SharedStreamReplay shared = sharedReplay;
+    if (shared != null) {
+      shared.replay(streamName, mode, args, subscriber);
+    } else if (args == null) {
+      eventClient.replay(streamName, mode, subscriber);
+    } else {
+      eventClient.replay(streamName, mode, args, subscriber);
+    }
+  }
+
+  private NewtonEvent decode(Event event) {
+    SharedStreamReplay shared = sharedReplay;
+    return shared == null ? decodeEvent(event) : shared.decode(event, this::decodeEvent);
   }
 
-  private EventStreamIndex getEventStreamIndex(String subscriptionName, String streamName) {
-    return eventStreamIndexStore.findOneById(subscriptionName).orElse(new EventStreamIndex(streamName, 0L));
+  private NewtonEvent decodeEvent(Event event) {
+    Class<? extends NewtonEvent> eventType = MuonLookupUtils.getDomainClass(event);
+    if (eventType == null) {
+      return new EventTypeNotFound(event.getOrderId(), event);
+    }
+    return MuonLookupUtils.decorateMeta(event.getPayload(eventType), event);
   }
 
+  private EventSubscriber subscriber(String subscriptionName, EventSubscriber subscriber) {
+    subscribers.put(subscriptionName, subscriber);
+    subscriber.stats.connected(subscriber);
+    return subscriber;
+  }
 
-  static class EventSubscriber implements Subscriber<io.muoncore.protocol.event.Event> {
+  private SubscriptionStats stats(String subscriptionName, String streamName) {
+    return stats.computeIfAbsent(subscriptionName, name -> {
+      SubscriptionStats created = new SubscriptionStats(name, streamName, streamHeads.computeIfAbsent(streamName, stream -> new AtomicLong()), () -> {
+        SharedStreamReplay shared = sharedReplay;
+        return shared == null ? 0 : shared.getHead(streamName);
+      });
+      if (jmxEnabled) {
+        register(created);
+      }
+      return created;
+    });
+  }
 
-    private final static int REQUEST_SIZE = 20;
+  private void register(SubscriptionStats subscriptionStats) {
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(subscriptionStats, objectName(subscriptionStats.getSubscriptionName()));
+    } catch (JMException e) {
+      log.warn("Unable to publish the metrics of subscription {} over JMX: {}", subscriptionStats.getSubscriptionName(), e.getMessage());
+    }
+  }
 
-    private Consumer<io.muoncore.protocol.event.Event> onData;
-    private Consumer<Throwable> onError;
-    private int remaining = 0;
-    private Subscription subscription;
+  private ObjectName objectName(String subscriptionName) throws MalformedObjectNameException {
+    return new ObjectName("io.muoncore.newton:type=Subscription,name=" + ObjectName.quote(subscriptionName));
+  }
+
+  /**
+   * Accepts events of the types delivered to the subscription, by the raw event type, without decoding them. Each event
+   * type is looked up once.
+   */
+  private Predicate<Event> eventTypeFilter(SubscriptionOptions options) {
+    Set<Class<?>> eventTypes = options.getEventTypes();
+    if (eventTypes.isEmpty()) {
+      return event -> true;
+    }
+    Map<String, Boolean> accepted = new ConcurrentHashMap<>();
+    return event -> accepted.computeIfAbsent(event.getEventType() == null ? "" : event.getEventType(), name -> {
+      Class<?> eventType = MuonLookupUtils.getDomainClass(event);
+      return isAccepted(eventTypes, eventType == null ? EventTypeNotFound.class : eventType);
+    });
+  }
+
+  /**
+   * The names of all known event types delivered to the subscription, or null if it also accepts unknown event types,
+   * which cannot be named.
+   */
+  private List<String> eventTypeNames(SubscriptionOptions options) {
+    if (isAccepted(options.getEventTypes(), EventTypeNotFound.class)) {
+      return null;
+    }
+    List<String> names = new ArrayList<>();
+    MuonLookupUtils.listAllEventTypes().forEach(name -> {
+      Class<?> eventType = MuonLookupUtils.getDomainClass(name);
+      if (eventType != null && isAccepted(options.getEventTypes(), eventType)) {
+        names.add(name);
+      }
+    });
+    return names;
+  }
+
+  private static boolean isAccepted(Set<Class<?>> eventTypes, Class<?> eventType) {
+    return eventTypes.stream().anyMatch(accepted -> accepted.isAssignableFrom(eventType));
+  }
 
-    public EventSubscriber(Consumer<io.muoncore.protocol.event.Event> onData, Consumer<Throwable> onError) {
+  /**
+   * Events with the same key are handled in order, on the same worker.
+   */
+  private Function<Event, Object> partitionKey(String subscriptionName, SubscriptionOptions options) {
+    if (options.getOrdering() == SubscriptionOptions.EventOrdering.AGGREGATE) {
+      return event -> event.getId() == null ? subscriptionName : subscriptionName + "/" + event.getId();
+    }
+    return event -> subscriptionName;
+  }
+
+  /**
+   * Hands events to the partitioned workers, requesting more from the event store only as they are processed.
+   * When given a checkpoint, each event is recorded against it as it is received and once it has been processed.
+   *
+   * The number of events requested or queued is bounded by a window, which adapts between the min and max demand of
+   * the subscription. It starts at the max, for fast catch-up replays. Once half the window has been processed, the
+   * freed space is requested again. At that point, if events are still queued for the workers the handlers are falling
+   * behind and the window halves, if the workers have drained the window doubles.
+   */
+  static class EventSubscriber implements Subscriber<Event> {
+
+    private final PartitionedExecutor workers;
+    private final Function<Event, Object> partitionKey;
+    private final Predicate<Event> filter;
+    private final SubscriptionCheckpoint checkpoint;
+    private final SubscriptionStats stats;
+    private final Consumer<Event> onData;
+    private final Consumer<Throwable> onError;
+    private final int minDemand;
+    private final int maxDemand;
+    private volatile Subscription subscription;
+    private volatile int window;
+    //requested from the event store, not yet received
+    private final AtomicLong outstanding = new AtomicLong();
+    //received, not yet processed
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    //requests are accumulated and sent by one thread at a time, as the subscription requires
+    private final AtomicLong pendingRequests = new AtomicLong();
+    private final AtomicInteger requesting = new AtomicInteger();
+    private final AtomicBoolean ended = new AtomicBoolean();
+    private volatile EventBatcher batcher;
+    private volatile boolean batchSkipped;
+
+    public EventSubscriber(PartitionedExecutor workers, Function<Event, Object> partitionKey, Predicate<Event> filter, SubscriptionOptions options,
+                           SubscriptionCheckpoint checkpoint, SubscriptionStats stats, Consumer<Event> onData, Consumer<Throwable> onError) {
+      this.workers = workers;
+      this.partitionKey = partitionKey;
+      this.filter = filter;
+      this.checkpoint = checkpoint;
+      this.stats = stats;
       this.onData = onData;
       this.onError = onError;
+      this.minDemand = options.getMinDemand();
+      this.maxDemand = options.getMaxDemand();
+      this.window = maxDemand;
+    }
+
+    /**
+     * Hand events to the batcher rather than handling them one at a time. Must be called before subscribing.
+     *
+     * @param batchSkipped whether skipped events are also handed to the batcher, so that batches move past them
+     */
+    EventSubscriber batching(EventBatcher batcher, boolean batchSkipped) {
+      this.batcher = batcher;
+      this.batchSkipped = batchSkipped;
+      return this;
     }
 
     @Override
     public void onSubscribe(Subscription subscription) {
       this.subscription = subscription;
-      this.remaining = REQUEST_SIZE;
-      this.subscription.request(REQUEST_SIZE);
+      outstanding.addAndGet(window);
+      request(window);
     }
 
     @Override
-    public void onNext(io.muoncore.protocol.event.Event event) {
-      synchronized (this) {
-        remaining--;
-        if (remaining <= 0) {
-          this.remaining = REQUEST_SIZE;
-          this.subscription.request(REQUEST_SIZE);
+    public void onNext(Event event) {
+      outstanding.decrementAndGet();
+      inFlight.incrementAndGet();
+      SubscriptionCheckpoint.Position position = checkpoint == null ? null : checkpoint.received(event.getOrderId());
+      if (stats != null) {
+        stats.received(event.getOrderId() == null ? 0 : event.getOrderId());
+      }
+      Object key = partitionKey.apply(event);
+      EventBatcher batch = batcher;
+      if (!filter.test(event)) {
+        if (batch != null && batchSkipped) {
+          workers.execute(key, () -> batch.skip(key, event, () -> completed(position)));
+        } else {
+          completed(position);
+        }
+        return;
+      }
+      if (batch != null) {
+        workers.execute(key, () -> {
+          long start = System.nanoTime();
+          batch.add(key, event, () -> {
+            if (stats != null) {
+              stats.processed(System.nanoTime() - start);
+            }
+            completed(position);
+          });
+        });
+        return;
+      }
+      workers.execute(key, () -> {
+        long start = System.nanoTime();
+        try {
+          onData.accept(event);
+        } finally {
+          if (stats != null) {
+            stats.processed(System.nanoTime() - start);
+          }
+          completed(position);
+        }
+      });
+    }
+
+    private void completed(SubscriptionCheckpoint.Position position) {
+      if (position != null) {
+        checkpoint.processed(position);
+      }
+      processed();
+    }
+
+    private void processed() {
+      inFlight.decrementAndGet();
+      processed.incrementAndGet();
+
+      while (true) {
+        int current = window;
+        long requested = outstanding.get();
+        long queued = inFlight.get();
+        if (requested + queued > current / 2) {
+          return;
+        }
+        int next = queued > current / 4 ? Math.max(minDemand, current / 2)
+          : queued == 0 ? Math.min(maxDemand, current * 2)
+          : current;
+        long more = next - requested - queued;
+        if (outstanding.compareAndSet(requested, requested + Math.max(more, 0))) {
+          window = next;
+          if (more > 0) {
+            request(more);
+          }
+          return;
         }
       }
-      onData.accept(event);
+    }
+
+    private void request(long n) {
+      pendingRequests.addAndGet(n);
+      if (requesting.getAndIncrement() != 0) {
+        return;
+      }
+      do {
+        long requests = pendingRequests.getAndSet(0);
+        if (requests > 0) {
+          subscription.request(requests);
+        }
+      } while (requesting.decrementAndGet() != 0);
+    }
+
+    /**
+     * Events requested from the event store, and not yet received
+     */
+    long getOutstandingDemand() {
+      return outstanding.get();
+    }
+
+    /**
+     * Events received, and waiting for or running on a worker
+     */
+    long getQueued() {
+      return inFlight.get();
+    }
+
+    long getProcessed() {
+      return processed.get();
+    }
+
+    long getCheckpointLag() {
+      return checkpoint == null ? 0 : checkpoint.getLag();
+    }
+
+    int getWindow() {
+      return window;
+    }
+
+    /**
+     * Cancel the subscription, and end it as if it had failed, so that its checkpoint is saved and its lock released.
+     */
+    void stop() {
+      fail(new CancellationException("The subscription has been stopped"));
+    }
+
+    /**
+     * Cancel the subscription, and end it with the error, so that it resumes from its last saved position
+     */
+    void fail(Throwable throwable) {
+      Subscription current = subscription;
+      if (current != null) {
+        current.cancel();
+      }
+      end(throwable);
+    }
+
+    private void end(Throwable throwable) {
+      if (ended.compareAndSet(false, true)) {
+        onError.accept(throwable);
+      }
     }
 
     @Override
     public void onError(Throwable throwable) {
       log.warn("Error in subscription {}", throwable.getMessage());
-      onError.accept(throwable);
+      end(throwable);
     }
 
     @Override
     public void onComplete() {
       log.error("Subscription has completed cleanly, this is unexpected with REPLAY_THEN_LIVE");
-      onError.accept(new IllegalStateException("The event store has terminated a stream subscription cleanly. This is not expected with REPLAY_THEN_LIVE"));
+      end(new IllegalStateException("The event store has terminated a stream subscription cleanly. This is not expected with REPLAY_THEN_LIVE"));
     }
   }
 }
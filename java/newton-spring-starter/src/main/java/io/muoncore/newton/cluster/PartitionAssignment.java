@@ -0,0 +1,165 @@
+package io.muoncore.newton.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The partitions of a hash partitioned subscription that are running on this node.
+ *
+ * A node takes at most its fair share of the partitions, the partition count divided by the number of live cluster
+ * members, rounded up. When members join, the surplus is stopped so that other nodes can take it. When a member
+ * leaves, its partition locks are released and taken by the nodes still waiting on them.
+ *
+ * Not every cluster member need run the subscription, so the fair share can leave partitions with no owner. A node
+ * that keeps obtaining the lock of a partition it has declined, with no other node taking it in between, runs it
+ * anyway once it has been unowned for long enough. It keeps such partitions until the membership grows.
+ */
+@Slf4j
+class PartitionAssignment {
+
+  static final long DEFAULT_CLAIM_UNOWNED_MILLIS = 30000;
+  private static final Runnable STARTING = () -> {};
+
+  private final String subscriptionName;
+  private final int partitions;
+  private final long claimUnownedMillis;
+  private final Map<Integer, Runnable> held = new TreeMap<>();
+  private final Map<Integer, Declined> declined = new HashMap<>();
+  private final Set<Integer> unowned = new HashSet<>();
+  private int unownedMembers;
+
+  PartitionAssignment(String subscriptionName, int partitions) {
+    this(subscriptionName, partitions, DEFAULT_CLAIM_UNOWNED_MILLIS);
+  }
+
+  /**
+   * @param claimUnownedMillis how long a partition is declined with no other node taking it, before this node runs it
+   *                           beyond its fair share
+   */
+  PartitionAssignment(String subscriptionName, int partitions, long claimUnownedMillis) {
+    this.subscriptionName = subscriptionName;
+    this.partitions = partitions;
+    this.claimUnownedMillis = claimUnownedMillis;
+  }
+
+  static int partitionOf(Object id, int partitions) {
+    if (id == null) {
+      return 0;
+    }
+    int hash = id.hashCode();
+    return Math.floorMod(hash ^ (hash >>> 16), partitions);
+  }
+
+  String partitionName(int partition) {
+    return subscriptionName + "-partition-" + partition;
+  }
+
+  int getPartitions() {
+    return partitions;
+  }
+
+  int fairShare(int members) {
+    int live = Math.max(members, 1);
+    return (partitions + live - 1) / live;
+  }
+
+  /**
+   * Claim a partition whose lock this node has obtained.
+   *
+   * @return false if this node already holds its fair share, and should give the lock up
+   */
+  boolean acquire(int partition, int members) {
+    return acquire(partition, members, System.currentTimeMillis());
+  }
+
+  synchronized boolean acquire(int partition, int members, long now) {
+    if (held.size() >= fairShare(members)) {
+      if (!isUnowned(partition, now)) {
+        return false;
+      }
+      log.info("Partition {} of {} has had no other owner for {}ms, running it beyond this node's fair share", partition, subscriptionName, claimUnownedMillis);
+      unowned.add(partition);
+      unownedMembers = members;
+    }
+    declined.remove(partition);
+    held.put(partition, STARTING);
+    log.info("Running partition {} of {} on this node, holding {}", partition, subscriptionName, held.keySet());
+    return true;
+  }
+
+  /**
+   * Record how to stop a running partition, so that it can be handed to another node
+   */
+  synchronized void started(int partition, Runnable stop) {
+    if (held.containsKey(partition)) {
+      held.put(partition, stop);
+    }
+  }
+
+  synchronized void released(int partition) {
+    held.remove(partition);
+    unowned.remove(partition);
+  }
+
+  /**
+   * Record that the partition is declined, reporting whether it has been declined again and again, without a gap long
+   * enough for another node to have held it, for the claim period
+   */
+  private boolean isUnowned(int partition, long now) {
+    Declined previous = declined.get(partition);
+    if (previous == null || now - previous.last > claimUnownedMillis) {
+      declined.put(partition, new Declined(now));
+      return false;
+    }
+    previous.last = now;
+    return now - previous.first >= claimUnownedMillis;
+  }
+
+  synchronized int getHeld() {
+    return held.size();
+  }
+
+  /**
+   * Stop any partitions held beyond this node's fair share
+   */
+  void rebalance(int members) {
+    List<Runnable> surplus = new ArrayList<>();
+    synchronized (this) {
+      //partitions run because no other node took them are handed over when members join
+      if (members > unownedMembers) {
+        unowned.clear();
+      }
+      int excess = held.size() - fairShare(members) - unowned.size();
+      for (Map.Entry<Integer, Runnable> partition : new ArrayList<>(held.entrySet())) {
+        if (excess <= 0) {
+          break;
+        }
+        if (partition.getValue() != STARTING) {
+          log.info("Handing partition {} of {} to another node, {} cluster members", partition.getKey(), subscriptionName, members);
+          held.remove(partition.getKey());
+          unowned.remove(partition.getKey());
+          surplus.add(partition.getValue());
+          excess--;
+        }
+      }
+    }
+    surplus.forEach(Runnable::run);
+  }
+
+  private static class Declined {
+    private final long first;
+    private long last;
+
+    private Declined(long now) {
+      this.first = now;
+      this.last = now;
+    }
+  }
+}
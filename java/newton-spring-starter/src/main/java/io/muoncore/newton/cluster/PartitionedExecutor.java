@@ -0,0 +1,80 @@
+package io.muoncore.newton.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A fixed set of single threaded workers, each with its own queue.
+ *
+ * Tasks submitted with the same key always run on the same worker, so they run one at a time and in the order
+ * submitted. Tasks with different keys may run in parallel. A task that throws is logged, and does not stop the worker.
+ *
+ * Queues are not bounded here, callers are expected to limit how much work they have outstanding.
+ */
+@Slf4j
+public class PartitionedExecutor {
+
+  private final List<Worker> workers = new ArrayList<>();
+
+  public PartitionedExecutor(String name, int workerCount) {
+    if (workerCount < 1) {
+      throw new IllegalArgumentException("At least one worker is required, was " + workerCount);
+    }
+    for (int i = 0; i < workerCount; i++) {
+      Worker worker = new Worker(name + "-" + i);
+      workers.add(worker);
+      worker.thread.start();
+    }
+  }
+
+  public void execute(Object key, Runnable task) {
+    int hash = key.hashCode();
+    workers.get(Math.floorMod(hash ^ (hash >>> 16), workers.size())).queue.add(task);
+  }
+
+  /**
+   * The number of tasks waiting across all workers
+   */
+  public int getQueueDepth() {
+    return workers.stream().mapToInt(worker -> worker.queue.size()).sum();
+  }
+
+  public int getWorkerCount() {
+    return workers.size();
+  }
+
+  public void shutdown() {
+    workers.forEach(worker -> worker.thread.interrupt());
+  }
+
+  private static class Worker implements Runnable {
+    private final BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+
+    private Worker(String name) {
+      this.thread = new Thread(this, name);
+      this.thread.setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      while (!Thread.currentThread().isInterrupted()) {
+        Runnable task;
+        try {
+          task = queue.take();
+        } catch (InterruptedException e) {
+          return;
+        }
+        try {
+          task.run();
+        } catch (Exception e) {
+          log.error("Error processing event on " + thread.getName(), e);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,490 @@
+package io.muoncore.newton.cluster;
+
+import io.muoncore.newton.NewtonEvent;
+import io.muoncore.protocol.event.Event;
+import io.muoncore.protocol.event.client.EventClient;
+import io.muoncore.protocol.event.client.EventReplayMode;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Shares one live subscription per stream between all the local subscriptions to that stream.
+ *
+ * The most recent events from the live subscription are held in a bounded buffer, and are read by each local
+ * subscription with its own cursor, at the pace it requests them. Each buffered event is decoded once, by the first
+ * subscription to need it.
+ *
+ * A subscription starting from a position before the buffer catches up with its own replay from that position, and
+ * then joins the buffer. A subscription that falls so far behind that events it has not read are evicted goes back to
+ * its own replay from the last event it saw, until it catches up again.
+ */
+@Slf4j
+class SharedStreamReplay {
+
+  private static final Entry EVICTED = new Entry(null, 0);
+
+  private final EventClient eventClient;
+  private final int bufferSize;
+  private final long reconnectMillis;
+  private final ScheduledExecutorService scheduler;
+  private final Map<String, SharedStream> streams = new ConcurrentHashMap<>();
+
+  SharedStreamReplay(EventClient eventClient, int bufferSize, long reconnectMillis, ScheduledExecutorService scheduler) {
+    this.eventClient = eventClient;
+    this.bufferSize = bufferSize;
+    this.reconnectMillis = reconnectMillis;
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * As {@link EventClient#replay(String, EventReplayMode, Map, Subscriber)}, served from the shared stream.
+   * A replay starts from the "from" argument, or the beginning of the stream if there is none.
+   */
+  void replay(String streamName, EventReplayMode mode, Map args, Subscriber<Event> subscriber) {
+    SharedStream stream = streams.computeIfAbsent(streamName, SharedStream::new);
+    stream.connect();
+
+    SharedConsumer consumer = new SharedConsumer(stream, args, subscriber);
+    subscriber.onSubscribe(consumer);
+
+    if (mode == EventReplayMode.LIVE_ONLY) {
+      consumer.attachAtHead();
+    } else {
+      Object from = args == null ? null : args.get("from");
+      consumer.startFrom(from == null ? 0 : ((Number) from).longValue() - 1);
+    }
+  }
+
+  /**
+   * Decode an event, reusing the result for events held in a shared buffer.
+   */
+  NewtonEvent decode(Event event, Function<Event, NewtonEvent> decoder) {
+    SharedStream stream = event.getStreamName() == null ? null : streams.get(event.getStreamName());
+    Entry entry = stream == null || event.getOrderId() == null ? null : stream.entries.get(event.getOrderId());
+    if (entry == null || entry.event != event) {
+      return decoder.apply(event);
+    }
+    return entry.decode(decoder);
+  }
+
+  /**
+   * The orderId of the latest live event on the stream, or 0 if there is no live subscription to it
+   */
+  long getHead(String streamName) {
+    SharedStream stream = streams.get(streamName);
+    return stream == null || !stream.isLive() ? 0 : stream.lastBufferedOrderId();
+  }
+
+  int getBufferedEvents(String streamName) {
+    SharedStream stream = streams.get(streamName);
+    return stream == null ? 0 : stream.entries.size();
+  }
+
+  private static long orderId(Event event) {
+    return event.getOrderId() == null ? 0 : event.getOrderId();
+  }
+
+  private static class Entry {
+    private final Event event;
+    private final long orderId;
+    private volatile NewtonEvent decoded;
+
+    private Entry(Event event, long orderId) {
+      this.event = event;
+      this.orderId = orderId;
+    }
+
+    private NewtonEvent decode(Function<Event, NewtonEvent> decoder) {
+      NewtonEvent result = decoded;
+      if (result == null) {
+        synchronized (this) {
+          if (decoded == null) {
+            decoded = decoder.apply(event);
+          }
+          result = decoded;
+        }
+      }
+      return result;
+    }
+  }
+
+  /**
+   * The live subscription to a stream, and the buffer of its recent events.
+   *
+   * Each time the live subscription connects, a new epoch starts with an empty buffer. Only replays started during the
+   * current epoch can join it, as only they are certain to cover every event up to the start of the buffer.
+   */
+  private class SharedStream implements Subscriber<Event> {
+
+    private final String name;
+    private final Entry[] buffer = new Entry[bufferSize];
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final List<SharedConsumer> attached = new CopyOnWriteArrayList<>();
+    //sequence of the next event to be buffered
+    private long head;
+    //sequence of the first event of this epoch
+    private long floor;
+    //orderId of the most recent event of this epoch that is no longer buffered
+    private long evictedUpTo;
+    private long epoch;
+    private boolean live;
+    private boolean connecting;
+
+    private SharedStream(String name) {
+      this.name = name;
+    }
+
+    private synchronized void connect() {
+      if (live || connecting) {
+        return;
+      }
+      connecting = true;
+      log.debug("Opening shared live subscription to event stream '{}'", name);
+      Map<String, Object> args = new HashMap<>();
+      args.put("sub-name", "shared-" + name);
+      eventClient.replay(name, EventReplayMode.LIVE_ONLY, args, this);
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+      synchronized (this) {
+        connecting = false;
+        live = true;
+        epoch++;
+        floor = head;
+        evictedUpTo = 0;
+      }
+      subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(Event event) {
+      synchronized (this) {
+        int slot = (int) (head % buffer.length);
+        Entry evicted = buffer[slot];
+        if (evicted != null) {
+          entries.remove(evicted.orderId, evicted);
+          if (head - buffer.length >= floor) {
+            evictedUpTo = evicted.orderId;
+          }
+        }
+        Entry entry = new Entry(event, orderId(event));
+        buffer[slot] = entry;
+        entries.put(entry.orderId, entry);
+        head++;
+      }
+      attached.forEach(SharedConsumer::drain);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      disconnected(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+      disconnected(new IllegalStateException("The event store has terminated the live subscription"));
+    }
+
+    private void disconnected(Throwable throwable) {
+      log.warn("Shared live subscription to '{}' has ended, will attempt to reconnect in {}ms: {}", name, reconnectMillis, throwable.getMessage());
+      List<SharedConsumer> detached;
+      synchronized (this) {
+        live = false;
+        connecting = false;
+        detached = new ArrayList<>(attached);
+        attached.clear();
+      }
+      detached.forEach(SharedConsumer::fallBehind);
+      scheduler.schedule(this::connect, reconnectMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized long currentEpoch() {
+      return live ? epoch : -1;
+    }
+
+    private synchronized boolean isLive() {
+      return live;
+    }
+
+    private long oldest() {
+      return Math.max(floor, head - buffer.length);
+    }
+
+    /**
+     * The buffered event at the sequence, null if it has not arrived yet, or {@link #EVICTED} if it is no longer held
+     */
+    private synchronized Entry read(long sequence) {
+      if (sequence < oldest()) {
+        return EVICTED;
+      }
+      if (sequence >= head) {
+        return null;
+      }
+      return buffer[(int) (sequence % buffer.length)];
+    }
+
+    /**
+     * Attach a consumer that has replayed up to lastSeen, during the given epoch.
+     *
+     * @return the sequence of the first buffered event after lastSeen, or -1 if the consumer cannot join
+     */
+    private synchronized long join(SharedConsumer consumer, long lastSeen, long replayEpoch) {
+      if (!live || replayEpoch != epoch || lastSeen < evictedUpTo) {
+        return -1;
+      }
+      long low = oldest();
+      long high = head;
+      while (low < high) {
+        long mid = (low + high) >>> 1;
+        if (buffer[(int) (mid % buffer.length)].orderId <= lastSeen) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      attached.add(consumer);
+      return low;
+    }
+
+    /**
+     * Attach a consumer at the current head of the stream.
+     *
+     * @return the sequence of the next event, or -1 if the live subscription is not connected
+     */
+    private synchronized long attachAtHead(SharedConsumer consumer) {
+      if (!live) {
+        return -1;
+      }
+      attached.add(consumer);
+      return head;
+    }
+
+    private synchronized long lastBufferedOrderId() {
+      return head > oldest() ? buffer[(int) ((head - 1) % buffer.length)].orderId : evictedUpTo;
+    }
+
+    private void detach(SharedConsumer consumer) {
+      attached.remove(consumer);
+    }
+  }
+
+  /**
+   * A local subscription to a shared stream, reading either from its own catch-up replay or from the shared buffer.
+   */
+  private class SharedConsumer implements Subscription {
+
+    private final SharedStream stream;
+    private final Map args;
+    private final Subscriber<Event> subscriber;
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger draining = new AtomicInteger();
+    private volatile boolean cancelled;
+
+    //guarded by this
+    private long lastSeen;
+    private long cursor;
+    private boolean attached;
+    private boolean pendingCatchUp;
+    private Subscription replay;
+
+    private SharedConsumer(SharedStream stream, Map args, Subscriber<Event> subscriber) {
+      this.stream = stream;
+      this.args = args == null ? new HashMap() : args;
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(long n) {
+      Subscription upstream;
+      synchronized (this) {
+        demand.addAndGet(n);
+        upstream = attached ? null : replay;
+      }
+      if (upstream != null) {
+        upstream.request(n);
+      } else {
+        drain();
+      }
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      Subscription upstream;
+      synchronized (this) {
+        attached = false;
+        upstream = replay;
+        replay = null;
+      }
+      stream.detach(this);
+      if (upstream != null) {
+        upstream.cancel();
+      }
+    }
+
+    private void startFrom(long lastSeen) {
+      synchronized (this) {
+        this.lastSeen = lastSeen;
+      }
+      catchUp();
+    }
+
+    private void attachAtHead() {
+      if (cancelled) {
+        return;
+      }
+      synchronized (this) {
+        long sequence = stream.attachAtHead(this);
+        if (sequence >= 0) {
+          cursor = sequence;
+          lastSeen = stream.lastBufferedOrderId();
+          attached = true;
+        }
+      }
+      if (attached) {
+        drain();
+      } else {
+        scheduler.schedule(this::attachAtHead, reconnectMillis, TimeUnit.MILLISECONDS);
+      }
+    }
+
+    /**
+     * Called when the shared stream can no longer serve this consumer, to switch to its own replay
+     */
+    private void fallBehind() {
+      synchronized (this) {
+        if (attached) {
+          attached = false;
+          pendingCatchUp = true;
+        }
+      }
+      drain();
+    }
+
+    /**
+     * Emit buffered events while there is demand. Runs on one thread at a time, and is the only place that switches an
+     * attached consumer back to its own replay, so that events are never emitted concurrently.
+     */
+    private void drain() {
+      if (draining.getAndIncrement() != 0) {
+        return;
+      }
+      do {
+        while (!cancelled && demand.get() > 0) {
+          Entry entry;
+          synchronized (this) {
+            if (!attached) {
+              break;
+            }
+            entry = stream.read(cursor);
+            if (entry == EVICTED) {
+              log.debug("Subscription to '{}' has fallen behind the shared stream, replaying from {}", stream.name, lastSeen);
+              attached = false;
+              pendingCatchUp = true;
+              break;
+            }
+            if (entry == null) {
+              break;
+            }
+            cursor++;
+            lastSeen = entry.orderId;
+          }
+          demand.decrementAndGet();
+          subscriber.onNext(entry.event);
+        }
+        boolean startCatchUp;
+        synchronized (this) {
+          startCatchUp = pendingCatchUp;
+          pendingCatchUp = false;
+        }
+        if (startCatchUp) {
+          stream.detach(this);
+          catchUp();
+        }
+      } while (draining.decrementAndGet() != 0);
+    }
+
+    private void catchUp() {
+      if (cancelled) {
+        return;
+      }
+      long from;
+      synchronized (this) {
+        from = lastSeen;
+      }
+      long epoch = stream.currentEpoch();
+
+      Map replayArgs = new HashMap(args);
+      replayArgs.put("from", from + 1);
+
+      eventClient.replay(stream.name, EventReplayMode.REPLAY_ONLY, replayArgs, new Subscriber<Event>() {
+        @Override
+        public void onSubscribe(Subscription subscription) {
+          long initial;
+          synchronized (SharedConsumer.this) {
+            replay = subscription;
+            initial = demand.get();
+          }
+          if (cancelled) {
+            subscription.cancel();
+          } else if (initial > 0) {
+            subscription.request(initial);
+          }
+        }
+
+        @Override
+        public void onNext(Event event) {
+          synchronized (SharedConsumer.this) {
+            lastSeen = orderId(event);
+          }
+          demand.decrementAndGet();
+          subscriber.onNext(event);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+          subscriber.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+          caughtUp(epoch);
+        }
+      });
+    }
+
+    private void caughtUp(long epoch) {
+      boolean joined;
+      synchronized (this) {
+        replay = null;
+        long sequence = stream.join(this, lastSeen, epoch);
+        joined = sequence >= 0;
+        if (joined) {
+          cursor = sequence;
+          attached = true;
+        }
+      }
+      if (joined) {
+        drain();
+      } else if (stream.isLive()) {
+        catchUp();
+      } else {
+        scheduler.schedule(this::catchUp, reconnectMillis, TimeUnit.MILLISECONDS);
+      }
+    }
+  }
+}
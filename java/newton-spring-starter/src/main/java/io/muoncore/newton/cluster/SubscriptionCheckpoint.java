@@ -0,0 +1,162 @@
+package io.muoncore.newton.cluster;
+
+import io.muoncore.newton.query.EventStreamIndex;
+import io.muoncore.newton.query.EventStreamIndexStore;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks which events of a tracking subscription have been processed, and saves the stream position in batches.
+ *
+ * Events may complete out of order when they run on different workers, so the saved position is the highest orderId
+ * for which every earlier event has been processed. It is written once a number of events have been processed, or
+ * after an interval, whichever comes first. After a failure, the subscription resumes from the saved position, and
+ * events after it may be delivered again.
+ *
+ * Without a store, the position is saved by the subscriber along with its own writes, and is only tracked here.
+ */
+@Slf4j
+class SubscriptionCheckpoint {
+
+  private final String subscriptionName;
+  private final EventStreamIndexStore eventStreamIndexStore;
+  private final int batchSize;
+  private final AtomicLong writes;
+  private final ScheduledFuture<?> timer;
+  private final Object writeLock = new Object();
+  private final Deque<Position> positions = new ArrayDeque<>();
+
+  private long received;
+  private long completed;
+  private long watermark;
+  private volatile long committed;
+  private long written;
+  private boolean closed;
+  private boolean awaitingFirstEvent;
+
+  SubscriptionCheckpoint(String subscriptionName, long lastSeen, EventStreamIndexStore eventStreamIndexStore, int batchSize,
+                         long intervalMillis, ScheduledExecutorService scheduler, AtomicLong writes) {
+    this.subscriptionName = subscriptionName;
+    this.eventStreamIndexStore = eventStreamIndexStore;
+    this.batchSize = batchSize;
+    this.writes = writes;
+    this.watermark = lastSeen;
+    this.written = lastSeen;
+    this.timer = scheduler.scheduleWithFixedDelay(this::flush, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * For subscriptions that start from the live stream, save the position just before the first event received, so that
+   * a reconnection resumes from there rather than from the live stream again.
+   */
+  void startFromFirstEvent() {
+    synchronized (writeLock) {
+      written = -1;
+    }
+    synchronized (this) {
+      awaitingFirstEvent = true;
+    }
+  }
+
+  /**
+   * Record that an event has been received from the stream. Must be called in stream order.
+   */
+  Position received(Long orderId) {
+    Position position = new Position(orderId == null ? 0 : orderId);
+    boolean first;
+    synchronized (this) {
+      positions.add(position);
+      received++;
+      first = awaitingFirstEvent;
+      if (first) {
+        awaitingFirstEvent = false;
+        watermark = Math.max(position.orderId - 1, 0);
+      }
+    }
+    if (first) {
+      flush();
+    }
+    return position;
+  }
+
+  /**
+   * Record that an event has been processed, in any order.
+   */
+  void processed(Position position) {
+    boolean flush;
+    synchronized (this) {
+      position.done = true;
+      while (!positions.isEmpty() && positions.peek().done) {
+        watermark = Math.max(watermark, positions.poll().orderId);
+        completed++;
+      }
+      flush = completed - committed >= batchSize;
+    }
+    if (flush) {
+      flush();
+    }
+  }
+
+  void flush() {
+    synchronized (writeLock) {
+      if (closed) {
+        return;
+      }
+      long position;
+      long count;
+      synchronized (this) {
+        if (awaitingFirstEvent) {
+          return;
+        }
+        position = watermark;
+        count = completed;
+      }
+      if (position > written && eventStreamIndexStore == null) {
+        written = position;
+      } else if (position > written) {
+        try {
+          eventStreamIndexStore.save(new EventStreamIndex(subscriptionName, position));
+        } catch (RuntimeException e) {
+          log.warn("Unable to save checkpoint {} for subscription {}: {}", position, subscriptionName, e.getMessage());
+          return;
+        }
+        written = position;
+        writes.incrementAndGet();
+      }
+      committed = count;
+    }
+  }
+
+  /**
+   * Save the current position and stop writing. Called when the subscription ends, or gives up its lock.
+   */
+  void close() {
+    timer.cancel(false);
+    synchronized (writeLock) {
+      flush();
+      closed = true;
+    }
+  }
+
+  /**
+   * The number of received events not yet covered by a saved checkpoint
+   */
+  synchronized long getLag() {
+    return received - committed;
+  }
+
+  static class Position {
+    private final long orderId;
+    private boolean done;
+
+    private Position(long orderId) {
+      this.orderId = orderId;
+    }
+  }
+}
@@ -0,0 +1,195 @@
+package io.muoncore.newton.cluster;
+
+import io.muoncore.newton.SubscriptionMetrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Records the metrics of one subscription, across its reconnections.
+ *
+ * Events are recorded into counters and a fixed histogram, without allocating. Rates and the stream head are worked
+ * out when sampled or read.
+ */
+class SubscriptionStats implements SubscriptionMetrics {
+
+  static final int LATENCY_BUCKETS = 32;
+
+  private final String subscriptionName;
+  private final String streamName;
+  private final AtomicLong streamHead;
+  private final LongSupplier liveHead;
+  private final AtomicLong processed = new AtomicLong();
+  private final AtomicLong reconnects = new AtomicLong();
+  private final AtomicLong maxLatency = new AtomicLong();
+  private final AtomicLongArray latencies = new AtomicLongArray(LATENCY_BUCKETS);
+  private volatile long currentOrderId;
+  private volatile boolean lockHeld;
+  private volatile long eventsPerSecond;
+  private volatile MuonClusterAwareTrackingSubscriptionManager.EventSubscriber subscriber;
+  private long sampledProcessed;
+
+  /**
+   * @param streamHead the highest orderId received on the stream by any subscription on this node
+   * @param liveHead the orderId of the latest live event on the stream, if known, otherwise 0
+   */
+  SubscriptionStats(String subscriptionName, String streamName, AtomicLong streamHead, LongSupplier liveHead) {
+    this.subscriptionName = subscriptionName;
+    this.streamName = streamName;
+    this.streamHead = streamHead;
+    this.liveHead = liveHead;
+  }
+
+  void connected(MuonClusterAwareTrackingSubscriptionManager.EventSubscriber subscriber) {
+    if (this.subscriber != null) {
+      reconnects.incrementAndGet();
+    }
+    this.subscriber = subscriber;
+  }
+
+  void received(long orderId) {
+    currentOrderId = orderId;
+    long head = streamHead.get();
+    while (orderId > head && !streamHead.compareAndSet(head, orderId)) {
+      head = streamHead.get();
+    }
+  }
+
+  void processed(long nanos) {
+    processed.incrementAndGet();
+    long micros = nanos / 1000;
+    latencies.incrementAndGet(bucket(micros));
+    long max = maxLatency.get();
+    while (micros > max && !maxLatency.compareAndSet(max, micros)) {
+      max = maxLatency.get();
+    }
+  }
+
+  void setLockHeld(boolean lockHeld) {
+    this.lockHeld = lockHeld;
+  }
+
+  /**
+   * Called once a second, to work out the event rate
+   */
+  synchronized void sample() {
+    long total = processed.get();
+    eventsPerSecond = total - sampledProcessed;
+    sampledProcessed = total;
+  }
+
+  static int bucket(long micros) {
+    return Math.min(64 - Long.numberOfLeadingZeros(micros), LATENCY_BUCKETS - 1);
+  }
+
+  @Override
+  public String getSubscriptionName() {
+    return subscriptionName;
+  }
+
+  @Override
+  public String getStreamName() {
+    return streamName;
+  }
+
+  @Override
+  public long getEventsPerSecond() {
+    return eventsPerSecond;
+  }
+
+  @Override
+  public long getProcessedEvents() {
+    return processed.get();
+  }
+
+  @Override
+  public long getCurrentOrderId() {
+    return currentOrderId;
+  }
+
+  @Override
+  public long getStreamHeadOrderId() {
+    return Math.max(streamHead.get(), liveHead.getAsLong());
+  }
+
+  @Override
+  public long getLag() {
+    return Math.max(getStreamHeadOrderId() - currentOrderId, 0);
+  }
+
+  @Override
+  public long getQueueDepth() {
+    MuonClusterAwareTrackingSubscriptionManager.EventSubscriber current = subscriber;
+    return current == null ? 0 : current.getQueued();
+  }
+
+  @Override
+  public long getOutstandingDemand() {
+    MuonClusterAwareTrackingSubscriptionManager.EventSubscriber current = subscriber;
+    return current == null ? 0 : current.getOutstandingDemand();
+  }
+
+  @Override
+  public long getCheckpointLag() {
+    MuonClusterAwareTrackingSubscriptionManager.EventSubscriber current = subscriber;
+    return current == null ? 0 : current.getCheckpointLag();
+  }
+
+  @Override
+  public long getReconnects() {
+    return reconnects.get();
+  }
+
+  @Override
+  public boolean isLockHeld() {
+    return lockHeld;
+  }
+
+  @Override
+  public long getHandlerLatencyP50Micros() {
+    return percentile(0.5);
+  }
+
+  @Override
+  public long getHandlerLatencyP99Micros() {
+    return percentile(0.99);
+  }
+
+  @Override
+  public long getHandlerLatencyMaxMicros() {
+    return maxLatency.get();
+  }
+
+  @Override
+  public long[] getHandlerLatencyHistogram() {
+    long[] counts = new long[LATENCY_BUCKETS];
+    for (int i = 0; i < LATENCY_BUCKETS; i++) {
+      counts[i] = latencies.get(i);
+    }
+    return counts;
+  }
+
+  /**
+   * The upper bound of the histogram bucket holding the given percentile, capped at the largest latency seen
+   */
+  private long percentile(double percentile) {
+    long[] counts = getHandlerLatencyHistogram();
+    long total = 0;
+    for (long count : counts) {
+      total += count;
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(total * percentile);
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(1L << i, maxLatency.get());
+      }
+    }
+    return maxLatency.get();
+  }
+}
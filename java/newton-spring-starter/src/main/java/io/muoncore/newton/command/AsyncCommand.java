@@ -0,0 +1,36 @@
+package io.muoncore.newton.command;
+
+import io.muoncore.newton.NewtonEvent;
+import io.muoncore.newton.eventsource.muon.MuonEventSourceRepository;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A command that executes without blocking, for example by composing EventSourceRepository.loadAsync and saveAsync.
+ *
+ * CommandBus.dispatchAsync will use executeAsync directly, the synchronous methods wait for it to complete.
+ */
+public interface AsyncCommand extends Command {
+
+  CompletableFuture<List<NewtonEvent>> executeAsync();
+
+  /**
+   * Execute, caused by the given event, which may be null. The cause only covers events saved while this method runs,
+   * a command that saves in a later stage should override this and pass the event to
+   * EventSourceRepository.saveAsync(aggregate, causedBy).
+   */
+  default CompletableFuture<List<NewtonEvent>> executeAsync(NewtonEvent causedBy) {
+    return MuonEventSourceRepository.executeCausedBy(causedBy, this::executeAsync);
+  }
+
+  @Override
+  default void execute() {
+    executeAsync().join();
+  }
+
+  @Override
+  default List<NewtonEvent> executeAndReturnEvents() {
+    return executeAsync().join();
+  }
+}
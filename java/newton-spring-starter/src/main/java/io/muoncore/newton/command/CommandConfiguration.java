@@ -1,14 +1,35 @@
 package io.muoncore.newton.command;
 
+import io.muoncore.newton.eventsource.muon.MuonEventSourceConfiguration;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.concurrent.Executor;
+
 @Configuration
 public class CommandConfiguration {
 
+    /**
+     * Setting newton.command.lanes runs commands on that many lanes, serialising commands for the same aggregate.
+     * See {@link StripedCommandBus}
+     */
     @Bean
-    public CommandBus commandBus(CommandFactory commandFactory) {
-        return new SimpleCommandBus(commandFactory);
+    public CommandBus commandBus(CommandFactory commandFactory,
+                                 @Qualifier(MuonEventSourceConfiguration.EVENT_SOURCE_EXECUTOR) ObjectProvider<Executor> executor,
+                                 @Value("${newton.command.lanes:0}") int lanes,
+                                 @Value("${newton.command.laneQueueSize:1000}") int laneQueueSize) {
+        SimpleCommandBus commandBus = new SimpleCommandBus(commandFactory);
+        Executor eventSourceExecutor = executor.getIfAvailable();
+        if (eventSourceExecutor != null) {
+            commandBus.setExecutor(eventSourceExecutor);
+        }
+        if (lanes > 0) {
+            return new StripedCommandBus(commandBus, lanes, laneQueueSize);
+        }
+        return commandBus;
     }
 
     @Bean
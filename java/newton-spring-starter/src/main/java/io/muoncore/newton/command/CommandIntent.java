@@ -17,6 +17,14 @@ public class CommandIntent {
 	private Object id;
 	private Map<String, Object> additionalProperties = new HashMap<>();
 	private NewtonEvent causingEvent;
+	/**
+	 * Only dispatched by a saga once the outcome of its other commands is known
+	 */
+	private boolean dependent;
+
+	public CommandIntent(String type, Object payload, Object id, Map<String, Object> additionalProperties, NewtonEvent causingEvent) {
+		this(type, payload, id, additionalProperties, causingEvent, false);
+	}
 
 	public static CommandIntentBuilder builder(String type) {
 		return new CommandIntentBuilder(type);
@@ -29,6 +37,7 @@ public class CommandIntent {
 		private Object id;
 		private Map<String, Object> additionalProperties = new HashMap<>();
 		private NewtonEvent causingEvent;
+		private boolean dependent;
 
 		public CommandIntentBuilder(String type) {
 			this.type = Objects.requireNonNull(type, "Type is null!");
@@ -54,8 +63,17 @@ public class CommandIntent {
 			return this;
 		}
 
+		/**
+		 * When raised by a saga, hold the command back until the outcome of the other commands the saga has raised is known,
+		 * including those raised in response to their failures
+		 */
+		public CommandIntentBuilder dependent() {
+			this.dependent = true;
+			return this;
+		}
+
 		public CommandIntent build() {
-			return new CommandIntent(type, request, id, additionalProperties, causingEvent);
+			return new CommandIntent(type, request, id, additionalProperties, causingEvent, dependent);
 		}
 
 	}
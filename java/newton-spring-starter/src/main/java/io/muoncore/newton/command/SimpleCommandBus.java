@@ -2,23 +2,38 @@ package io.muoncore.newton.command;
 
 import io.muoncore.api.ImmediateReturnFuture;
 import io.muoncore.api.MuonFuture;
+import io.muoncore.newton.eventsource.muon.MuonEventSourceConfiguration;
 import io.muoncore.newton.eventsource.muon.MuonEventSourceRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 
 import java.util.Collections;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
 
 @Slf4j
 public class SimpleCommandBus implements CommandBus {
 
 	private CommandFactory commandFactory;
+	private Executor executor = ForkJoinPool.commonPool();
 
 	@Autowired
 	public SimpleCommandBus(CommandFactory commandFactory) {
 		this.commandFactory = commandFactory;
 	}
 
+  /**
+   * Executor that commands dispatched asynchronously run on, unless they implement {@link AsyncCommand}.
+   * Defaults to the common fork join pool.
+   */
+  @Autowired(required = false)
+  public void setExecutor(@Qualifier(MuonEventSourceConfiguration.EVENT_SOURCE_EXECUTOR) Executor executor) {
+    this.executor = executor;
+  }
+
 	@Override
 	public MuonFuture<CommandResult> dispatch(CommandIntent commandIntent) {
 		try {
@@ -48,17 +63,42 @@ public class SimpleCommandBus implements CommandBus {
 
   @Override
   public CompletableFuture<CommandResult> dispatchAsync(CommandIntent commandIntent) {
-    return CompletableFuture.supplyAsync(() -> {
-      try {
-        Command command = commandFactory.create((Class<Command>) Class.forName(commandIntent.getType()),
-          commandIntent.getPayload(),
-          commandIntent.getId(),
-          commandIntent.getAdditionalProperties(), null);
+    Command command;
+    try {
+      command = commandFactory.create((Class<Command>) Class.forName(commandIntent.getType()),
+        commandIntent.getPayload(),
+        commandIntent.getId(),
+        commandIntent.getAdditionalProperties(), null);
+    } catch (ClassNotFoundException e) {
+      return CompletableFuture.completedFuture(
+        new CommandResult(Collections.emptyList(), new CommandFailedEvent(commandIntent.getType(), e.getMessage(), e)));
+    } catch (RuntimeException e) {
+      return failed(e);
+    }
 
-        return new CommandResult(command.executeAndReturnEvents(), null);
-      } catch (ClassNotFoundException e) {
-        return new CommandResult(Collections.emptyList(), new CommandFailedEvent(commandIntent.getType(), e.getMessage(), e));
+    if (command instanceof AsyncCommand) {
+      try {
+        return ((AsyncCommand) command).executeAsync(commandIntent.getCausingEvent())
+          .thenApply(events -> new CommandResult(events, null));
+      } catch (RuntimeException e) {
+        return failed(e);
       }
-    });
+    }
+
+    return CompletableFuture.supplyAsync(() ->
+      executeCausedBy(commandIntent, () -> new CommandResult(command.executeAndReturnEvents(), null)), executor);
+  }
+
+  private static <T> T executeCausedBy(CommandIntent commandIntent, Supplier<T> run) {
+    if (commandIntent.getCausingEvent() != null) {
+      return MuonEventSourceRepository.executeCausedBy(commandIntent.getCausingEvent(), run);
+    }
+    return run.get();
+  }
+
+  private static CompletableFuture<CommandResult> failed(Throwable error) {
+    CompletableFuture<CommandResult> failed = new CompletableFuture<>();
+    failed.completeExceptionally(error);
+    return failed;
   }
 }
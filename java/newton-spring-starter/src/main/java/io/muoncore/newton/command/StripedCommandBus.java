@@ -0,0 +1,244 @@
+package io.muoncore.newton.command;
+
+import io.muoncore.api.ImmediateReturnFuture;
+import io.muoncore.api.MuonFuture;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs commands on a fixed set of single threaded lanes, chosen by the hash of the command id.
+ *
+ * Commands for the same aggregate always run on the same lane, one at a time and in the order dispatched, so they no
+ * longer race each other through load/modify/save. Commands for different aggregates run in parallel across the lanes.
+ * Commands without an id are not serialised, and are passed straight to the delegate.
+ *
+ * Each lane queue is bounded, a dispatch to a full lane blocks until there is space.
+ *
+ * A command running on a lane that dispatches to its own lane runs the new command inline, as it would otherwise wait on
+ * itself. A dispatch to any other lane is queued there in order. While a lane waits on another, for space in its queue
+ * or for the result of a synchronous dispatch, it runs the commands queued on itself, so that two lanes dispatching to
+ * each other do not deadlock. Those commands may then run before the waiting command completes.
+ */
+public class StripedCommandBus implements CommandBus {
+
+  private static final long WAIT_POLL_MILLIS = 1;
+
+  private final CommandBus delegate;
+  private final List<Lane> lanes = new ArrayList<>();
+  private final AtomicLong dispatched = new AtomicLong();
+  private final AtomicLong totalWaitNanos = new AtomicLong();
+  private final AtomicLong maxWaitNanos = new AtomicLong();
+  private volatile boolean shutdown;
+
+  public StripedCommandBus(CommandBus delegate, int laneCount, int queueSize) {
+    this.delegate = delegate;
+    for (int i = 0; i < laneCount; i++) {
+      Lane lane = new Lane(i, queueSize);
+      lanes.add(lane);
+      lane.thread.start();
+    }
+  }
+
+  @Override
+  public MuonFuture<CommandResult> dispatch(CommandIntent commandIntent) {
+    CompletableFuture<CommandResult> result = dispatchAsync(commandIntent);
+    Lane current = currentLane();
+    if (current != null) {
+      current.runQueuedUntil(result);
+    }
+    try {
+      return new ImmediateReturnFuture<>(result.join());
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  @Override
+  public CompletableFuture<CommandResult> dispatchAsync(CommandIntent commandIntent) {
+    if (commandIntent.getId() == null) {
+      return delegate.dispatchAsync(commandIntent);
+    }
+    Lane lane = laneFor(commandIntent.getId());
+
+    //a command dispatching to its own lane would otherwise wait on itself
+    if (Thread.currentThread() == lane.thread) {
+      return CompletableFuture.completedFuture(lane.execute(commandIntent));
+    }
+    return lane.submit(commandIntent, currentLane());
+  }
+
+  /**
+   * The number of commands waiting across all lanes
+   */
+  public int getQueueDepth() {
+    return lanes.stream().mapToInt(lane -> lane.queue.size()).sum();
+  }
+
+  public int getQueueDepth(int lane) {
+    return lanes.get(lane).queue.size();
+  }
+
+  public int getLaneCount() {
+    return lanes.size();
+  }
+
+  /**
+   * Mean time commands have waited in a lane queue before starting to execute
+   */
+  public double getAverageWaitMillis() {
+    long count = dispatched.get();
+    return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalWaitNanos.get()) / 1000.0 / count;
+  }
+
+  public long getMaxWaitMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+  }
+
+  /**
+   * Stop the lanes. Commands still queued, and any dispatched from now on, fail with a RejectedExecutionException.
+   */
+  public void shutdown() {
+    shutdown = true;
+    lanes.forEach(lane -> lane.thread.interrupt());
+    lanes.forEach(Lane::rejectQueued);
+  }
+
+  private Lane currentLane() {
+    Thread current = Thread.currentThread();
+    return lanes.stream().filter(lane -> lane.thread == current).findFirst().orElse(null);
+  }
+
+  private Lane laneFor(Object id) {
+    int hash = id.hashCode();
+    return lanes.get(Math.floorMod(hash ^ (hash >>> 16), lanes.size()));
+  }
+
+  private class Lane implements Runnable {
+    private final BlockingQueue<QueuedCommand> queue;
+    private final Thread thread;
+
+    private Lane(int index, int queueSize) {
+      this.queue = new LinkedBlockingQueue<>(queueSize);
+      this.thread = new Thread(this, "newton-command-lane-" + index);
+      this.thread.setDaemon(true);
+    }
+
+    /**
+     * Queue the command, waiting for space if this lane is full. A calling lane runs its own queued commands while it
+     * waits.
+     */
+    private CompletableFuture<CommandResult> submit(CommandIntent intent, Lane caller) {
+      QueuedCommand command = new QueuedCommand(intent);
+      try {
+        if (caller == null) {
+          queue.put(command);
+        } else {
+          while (!queue.offer(command)) {
+            caller.runQueued();
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        command.result.completeExceptionally(e);
+        return command.result;
+      }
+      rejectIfShutdown(command);
+      return command.result;
+    }
+
+    /**
+     * Run the commands queued on this lane, from its own thread, until the result of a command on another lane is done
+     */
+    private void runQueuedUntil(CompletableFuture<CommandResult> result) {
+      try {
+        while (!result.isDone()) {
+          runQueued();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private void runQueued() throws InterruptedException {
+      if (Thread.currentThread().isInterrupted()) {
+        throw new InterruptedException();
+      }
+      QueuedCommand command = queue.poll(WAIT_POLL_MILLIS, TimeUnit.MILLISECONDS);
+      if (command != null) {
+        run(command);
+      }
+    }
+
+    private void rejectIfShutdown(QueuedCommand command) {
+      if (shutdown && queue.remove(command)) {
+        command.result.completeExceptionally(new RejectedExecutionException("The command bus has been shut down"));
+      }
+    }
+
+    private void rejectQueued() {
+      List<QueuedCommand> queued = new ArrayList<>();
+      queue.drainTo(queued);
+      queued.forEach(command ->
+        command.result.completeExceptionally(new RejectedExecutionException("The command bus has been shut down")));
+    }
+
+    @Override
+    public void run() {
+      while (!Thread.currentThread().isInterrupted()) {
+        QueuedCommand command;
+        try {
+          command = queue.take();
+        } catch (InterruptedException e) {
+          return;
+        }
+        run(command);
+      }
+    }
+
+    private void run(QueuedCommand command) {
+      recordWait(System.nanoTime() - command.enqueuedAt);
+      try {
+        command.result.complete(execute(command.intent));
+      } catch (Exception e) {
+        command.result.completeExceptionally(e);
+      }
+    }
+
+    private CommandResult execute(CommandIntent intent) {
+      try {
+        return delegate.dispatch(intent).get();
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new IllegalStateException("Unable to execute command: " + intent.getType(), e);
+      }
+    }
+  }
+
+  private void recordWait(long waitNanos) {
+    dispatched.incrementAndGet();
+    totalWaitNanos.addAndGet(waitNanos);
+    maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+  }
+
+  private static class QueuedCommand {
+    private final CommandIntent intent;
+    private final long enqueuedAt = System.nanoTime();
+    private final CompletableFuture<CommandResult> result = new CompletableFuture<>();
+
+    private QueuedCommand(CommandIntent intent) {
+      this.intent = intent;
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package io.muoncore.newton.eventsource;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, least recently used cache of aggregate state for a single aggregate type.
+ */
+public class AggregateCache {
+
+  @Getter
+  private final int maxSize;
+  private final Map<String, Entry> entries;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  public AggregateCache(int maxSize) {
+    this.maxSize = maxSize;
+    this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, AggregateCache.Entry> eldest) {
+        if (size() > AggregateCache.this.maxSize) {
+          evictions.incrementAndGet();
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  public synchronized Optional<Entry> get(String id) {
+    Entry entry = entries.get(id);
+    if (entry == null) {
+      misses.incrementAndGet();
+    } else {
+      hits.incrementAndGet();
+    }
+    return Optional.ofNullable(entry);
+  }
+
+  public synchronized void put(String id, Entry entry) {
+    entries.put(id, entry);
+  }
+
+  public synchronized void invalidate(String id) {
+    entries.remove(id);
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  /**
+   * The state of an aggregate as replayed from its stream, and the order id of the last event included in it. Saves
+   * are not written through, the events they append are replayed on top of this state on the next load, in stream
+   * order along with any appended by other writers.
+   */
+  @Getter
+  @AllArgsConstructor
+  public static class Entry {
+    private AggregateSnapshot state;
+  }
+}
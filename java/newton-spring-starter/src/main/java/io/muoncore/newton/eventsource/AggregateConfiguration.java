@@ -7,4 +7,34 @@ import java.lang.annotation.*;
 @Documented
 public @interface AggregateConfiguration {
   String context();
+
+  /**
+   * Take a snapshot of the aggregate state once this many events have been applied since the last snapshot.
+   * 0 disables event count based snapshots.
+   */
+  int snapshotEvery() default 0;
+
+  /**
+   * Take a snapshot of the aggregate state when it is loaded and the last snapshot is older than this many milliseconds.
+   * 0 disables time based snapshots.
+   */
+  long snapshotIntervalMs() default 0;
+
+  /**
+   * Manually invalidate existing snapshots. Structural changes to the aggregate fields are detected automatically,
+   * increment this when the meaning of the state changes without its shape changing.
+   */
+  int snapshotVersion() default 0;
+
+  /**
+   * Keep up to this many recently used aggregates of this type in a local cache. A load that hits the cache only fetches
+   * the events raised since the aggregate was cached. 0 disables the cache.
+   */
+  int cacheSize() default 0;
+
+  /**
+   * Stream events into the aggregate as they arrive during a load, requesting this many at a time from the event store,
+   * instead of fetching the whole stream before applying it. 0 fetches the whole stream.
+   */
+  int loadWindow() default 0;
 }
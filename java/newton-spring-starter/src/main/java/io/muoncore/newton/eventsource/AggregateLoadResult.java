@@ -0,0 +1,44 @@
+package io.muoncore.newton.eventsource;
+
+import io.muoncore.newton.AggregateRoot;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Optional;
+
+/**
+ * The outcome of loading a single aggregate root as part of a bulk load.
+ */
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class AggregateLoadResult<A extends AggregateRoot> {
+
+  @Getter
+  private Object id;
+  private A aggregate;
+  private RuntimeException failure;
+
+  public static <A extends AggregateRoot> AggregateLoadResult<A> loaded(Object id, A aggregate) {
+    return new AggregateLoadResult<>(id, aggregate, null);
+  }
+
+  public static <A extends AggregateRoot> AggregateLoadResult<A> failed(Object id, RuntimeException failure) {
+    return new AggregateLoadResult<>(id, null, failure);
+  }
+
+  public boolean isLoaded() {
+    return failure == null;
+  }
+
+  public Optional<A> getAggregate() {
+    return Optional.ofNullable(aggregate);
+  }
+
+  /**
+   * Why the aggregate could not be loaded, typically an {@link AggregateNotFoundException} or
+   * {@link io.muoncore.newton.EventStoreException}
+   */
+  public Optional<RuntimeException> getFailure() {
+    return Optional.ofNullable(failure);
+  }
+}
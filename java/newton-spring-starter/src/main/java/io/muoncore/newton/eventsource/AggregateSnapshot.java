@@ -0,0 +1,52 @@
+package io.muoncore.newton.eventsource;
+
+import com.google.gson.Gson;
+import io.muoncore.newton.AggregateRoot;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+
+/**
+ * Captured state of an aggregate root at a given point in its event stream.
+ *
+ * The state is held in serialised form so that the snapshot can't be mutated by the aggregate it was taken from.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AggregateSnapshot {
+
+  private static final Gson GSON = new Gson();
+
+  @Id
+  private String id;
+  private String aggregateType;
+  private String aggregateId;
+  private String schemaVersion;
+  private long version;
+  private long orderId;
+  private long timestamp;
+  private String state;
+
+  public static AggregateSnapshot of(AggregateRoot aggregate, String aggregateId, long orderId, String schemaVersion) {
+    Class<? extends AggregateRoot> type = aggregate.getClass();
+    return new AggregateSnapshot(
+      key(type, aggregateId),
+      type.getName(),
+      aggregateId,
+      schemaVersion,
+      aggregate.getVersion(),
+      orderId,
+      System.currentTimeMillis(),
+      GSON.toJson(aggregate));
+  }
+
+  public static String key(Class<? extends AggregateRoot> type, String aggregateId) {
+    return type.getName() + "/" + aggregateId;
+  }
+
+  public <A extends AggregateRoot> A restore(Class<A> type) {
+    return GSON.fromJson(state, type);
+  }
+}
@@ -0,0 +1,78 @@
+package io.muoncore.newton.eventsource;
+
+import io.muoncore.newton.AggregateRoot;
+import lombok.Getter;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * When to take snapshots of an aggregate type, as configured by {@link AggregateConfiguration}.
+ *
+ * The schema version is derived from the persistent fields of the aggregate class hierarchy, so a change to the
+ * aggregate class will invalidate any snapshots taken before it.
+ */
+@Getter
+public class AggregateSnapshotPolicy {
+
+  private int every;
+  private long intervalMs;
+  private String schemaVersion;
+
+  public AggregateSnapshotPolicy(int every, long intervalMs, String schemaVersion) {
+    this.every = every;
+    this.intervalMs = intervalMs;
+    this.schemaVersion = schemaVersion;
+  }
+
+  public static AggregateSnapshotPolicy forType(Class<? extends AggregateRoot> type) {
+    AggregateConfiguration config = type.getAnnotation(AggregateConfiguration.class);
+    if (config == null) {
+      return new AggregateSnapshotPolicy(0, 0, schemaVersion(type, 0));
+    }
+    return new AggregateSnapshotPolicy(config.snapshotEvery(), config.snapshotIntervalMs(), schemaVersion(type, config.snapshotVersion()));
+  }
+
+  public boolean isEnabled() {
+    return every > 0 || intervalMs > 0;
+  }
+
+  public boolean isValid(AggregateSnapshot snapshot) {
+    return schemaVersion.equals(snapshot.getSchemaVersion());
+  }
+
+  /**
+   * @param last the snapshot the aggregate was restored from, or null if it was fully replayed
+   */
+  public boolean isDue(AggregateSnapshot last, long version, long now) {
+    long lastVersion = last == null ? 0 : last.getVersion();
+    if (version <= lastVersion) {
+      return false;
+    }
+    if (every > 0 && version - lastVersion >= every) {
+      return true;
+    }
+    return intervalMs > 0 && (last == null || now - last.getTimestamp() >= intervalMs);
+  }
+
+  static String schemaVersion(Class<?> type, int manualVersion) {
+    List<String> fields = new ArrayList<>();
+    for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+      for (Field field : current.getDeclaredFields()) {
+        if (Modifier.isStatic(field.getModifiers()) || Modifier.isTransient(field.getModifiers())) {
+          continue;
+        }
+        fields.add(current.getName() + "." + field.getName() + ":" + field.getGenericType().getTypeName());
+      }
+    }
+    Collections.sort(fields);
+
+    CRC32 crc = new CRC32();
+    crc.update(String.join(";", fields).getBytes());
+    return manualVersion + "-" + Long.toHexString(crc.getValue());
+  }
+}
@@ -0,0 +1,16 @@
+package io.muoncore.newton.eventsource;
+
+import io.muoncore.newton.AggregateRoot;
+
+import java.util.Optional;
+
+/**
+ * Storage for aggregate snapshots, allowing a load to restore the latest snapshot and replay only the tail of the
+ * aggregate event stream.
+ */
+public interface AggregateSnapshotStore {
+
+  Optional<AggregateSnapshot> load(Class<? extends AggregateRoot> type, String aggregateId);
+
+  void save(AggregateSnapshot snapshot);
+}
@@ -11,6 +11,13 @@ public enum EventProcessProtection {
 	 * A global lock will be created around this component. Only one instance will be active at a particular time.
 	 * This should be used when you have a shared resource and non idempotent writes.
 	 */
-	GLOBAL_LOCK
-	//, ID_HASH - use an has of the id to allocate the event to different buckets allocated to services.
+	GLOBAL_LOCK,
+	/**
+	 * Events are allocated to a fixed number of partitions by a hash of their aggregate id. Each partition has its own
+	 * global lock and stream position, and the partitions are spread across the live instances, so processing scales
+	 * with the number of instances. Events for the same aggregate are always processed by the same partition.
+	 *
+	 * Enabled by setting {@link io.muoncore.newton.SubscriptionOptions.SubscriptionOptionsBuilder#partitions(int)}.
+	 */
+	ID_HASH
 }
@@ -4,6 +4,7 @@ import io.muoncore.newton.AggregateRoot;
 import io.muoncore.newton.NewtonEvent;
 import org.reactivestreams.Publisher;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
@@ -27,6 +28,18 @@ public interface EventSourceRepository<A extends AggregateRoot> {
 	A load(Object aggregateIdentifier, Long expectedVersion) throws AggregateNotFoundException, OptimisticLockException;
 	CompletableFuture<A> loadAsync(Object aggregateIdentifier, Long expectedVersion) throws AggregateNotFoundException, OptimisticLockException;
 
+  /**
+   * Load many aggregate roots, replaying several concurrently. Results are returned in the order of the given ids.
+   * A failure to load one aggregate is reported in its result, and does not fail the others.
+   */
+	List<AggregateLoadResult<A>> loadAll(Collection<?> aggregateIdentifiers);
+
+  /**
+   * As loadAll, emitting each result in order as soon as it, and those before it, are loaded.
+   * Only as many aggregates as have been requested by the subscriber are loaded ahead.
+   */
+	Publisher<AggregateLoadResult<A>> streamAll(Collection<?> aggregateIdentifiers);
+
   /**
    * Create a new instance of an aggregate via the given factory function.
    * Will persist and store
@@ -35,9 +48,24 @@ public interface EventSourceRepository<A extends AggregateRoot> {
 
   /**
    * Persist an existing aggregate root.
+   *
+   * Returns once the events are stored on the aggregate stream and emitted on the bounded context stream. If they
+   * could not be emitted, the error is thrown, though the events remain stored on the aggregate stream.
    */
 	List<NewtonEvent> save(A aggregate);
 
+  /**
+   * Persist an existing aggregate root, completing once its events have been emitted on the bounded context stream.
+   */
+	CompletableFuture<List<NewtonEvent>> saveAsync(A aggregate);
+
+  /**
+   * As saveAsync, recording the given event as the cause of the saved events. Use this from a later stage of a
+   * future, such as an {@link io.muoncore.newton.command.AsyncCommand} passed its causing event, where the cause set
+   * around the command is no longer in scope.
+   */
+	CompletableFuture<List<NewtonEvent>> saveAsync(A aggregate, NewtonEvent causedBy);
+
   /**
    * Delete this aggregate root. Its events may still be retrievable via replay, however a call to `load` will throw
    * AggregateNotFoundException
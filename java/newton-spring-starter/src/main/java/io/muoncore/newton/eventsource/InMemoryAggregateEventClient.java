@@ -0,0 +1,81 @@
+package io.muoncore.newton.eventsource;
+
+import com.google.gson.Gson;
+import io.muoncore.codec.Codecs;
+import io.muoncore.codec.json.JsonOnlyCodecs;
+import io.muoncore.newton.AggregateEventClient;
+import io.muoncore.newton.NewtonEventWithMeta;
+import io.muoncore.protocol.event.Event;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Aggregate event storage held in local memory, for running aggregates without an event store.
+ *
+ * Batches are appended atomically, and the expected version is enforced, failing with an {@link OptimisticLockException}
+ */
+public class InMemoryAggregateEventClient extends AggregateEventClient {
+
+  private final Gson gson = new Gson();
+  private final Codecs codecs = new JsonOnlyCodecs();
+  private final Map<String, List<Event>> streams = new HashMap<>();
+  private long orderId;
+
+  public InMemoryAggregateEventClient() {
+    super(null);
+  }
+
+  @Override
+  public synchronized void publishDomainEvents(String id, Class type, List events, NewtonEventWithMeta cause, Long expectedVersion) {
+    String stream = createAggregateStreamName(id, type);
+    List<Event> existing = streams.computeIfAbsent(stream, key -> new ArrayList<>());
+
+    if (expectedVersion != null && expectedVersion != existing.size()) {
+      throw new OptimisticLockException(id, expectedVersion, (long) existing.size());
+    }
+
+    String causedBy = cause == null ? null : String.valueOf(cause.getMeta().getOrderId());
+    for (Object domainEvent : events) {
+      orderId++;
+      existing.add(new Event(
+        id,
+        domainEvent.getClass().getSimpleName(),
+        stream,
+        null,
+        causedBy,
+        causedBy == null ? null : "CAUSED",
+        null,
+        orderId,
+        System.currentTimeMillis(),
+        gson.fromJson(gson.toJson(domainEvent), Map.class),
+        codecs));
+    }
+  }
+
+  @Override
+  public synchronized CompletableFuture<List<Event>> loadAggregateRoot(String id, Class type, long from) {
+    List<Event> events = streams.getOrDefault(createAggregateStreamName(id, type), new ArrayList<>())
+      .stream()
+      .filter(event -> event.getOrderId() >= from)
+      .collect(Collectors.toList());
+    return CompletableFuture.completedFuture(events);
+  }
+
+  @Override
+  public CompletableFuture<Void> streamAggregateRoot(String id, Class type, long from, int window, Consumer<Event> onEvent) {
+    CompletableFuture<Void> ret = new CompletableFuture<>();
+    try {
+      loadAggregateRoot(id, type, from).join().forEach(onEvent);
+      ret.complete(null);
+    } catch (RuntimeException e) {
+      ret.completeExceptionally(e);
+    }
+    return ret;
+  }
+}
@@ -0,0 +1,22 @@
+package io.muoncore.newton.eventsource;
+
+import io.muoncore.newton.AggregateRoot;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class InMemoryAggregateSnapshotStore implements AggregateSnapshotStore {
+
+  private Map<String, AggregateSnapshot> snapshots = new ConcurrentHashMap<>();
+
+  @Override
+  public Optional<AggregateSnapshot> load(Class<? extends AggregateRoot> type, String aggregateId) {
+    return Optional.ofNullable(snapshots.get(AggregateSnapshot.key(type, aggregateId)));
+  }
+
+  @Override
+  public void save(AggregateSnapshot snapshot) {
+    snapshots.put(snapshot.getId(), snapshot);
+  }
+}
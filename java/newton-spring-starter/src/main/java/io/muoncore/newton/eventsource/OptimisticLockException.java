@@ -10,6 +10,9 @@ public class OptimisticLockException extends RuntimeException {
 
 	public OptimisticLockException(Object id, Long version, Long actual) {
 		super("Modification detected on aggregate id " + id + ", expected version [" + version + "] actual version [" + actual + "]");
+		this.id = id;
+		this.version = version;
+		this.actualVersion = actual;
 	}
 
 }
@@ -0,0 +1,29 @@
+package io.muoncore.newton.eventsource.mongo;
+
+import io.muoncore.newton.AggregateRoot;
+import io.muoncore.newton.eventsource.AggregateSnapshot;
+import io.muoncore.newton.eventsource.AggregateSnapshotStore;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.Optional;
+
+public class MongoAggregateSnapshotStore implements AggregateSnapshotStore {
+
+  public final static String COLLECTION = "aggregate_snapshots";
+
+  private MongoTemplate mongoTemplate;
+
+  public MongoAggregateSnapshotStore(MongoTemplate mongoTemplate) {
+    this.mongoTemplate = mongoTemplate;
+  }
+
+  @Override
+  public Optional<AggregateSnapshot> load(Class<? extends AggregateRoot> type, String aggregateId) {
+    return Optional.ofNullable(mongoTemplate.findById(AggregateSnapshot.key(type, aggregateId), AggregateSnapshot.class, COLLECTION));
+  }
+
+  @Override
+  public void save(AggregateSnapshot snapshot) {
+    mongoTemplate.save(snapshot, COLLECTION);
+  }
+}
@@ -0,0 +1,122 @@
+package io.muoncore.newton.eventsource.muon;
+
+import io.muoncore.exception.MuonException;
+import io.muoncore.newton.NewtonEvent;
+import io.muoncore.newton.NewtonEventWithMeta;
+import io.muoncore.protocol.event.ClientEvent;
+import io.muoncore.protocol.event.EventBuilder;
+import io.muoncore.protocol.event.client.EventClient;
+import io.muoncore.protocol.event.client.EventResult;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Emits saved aggregate events onto the bounded context stream in the background.
+ *
+ * Emissions for the same aggregate are sent in the order they were saved. Emissions for different aggregates run
+ * concurrently, up to a maximum number in flight, after which callers block until one completes.
+ *
+ * A failed emission is retried from the first event not yet sent, a few times, before the returned future fails with
+ * the error.
+ */
+@Slf4j
+class ContextStreamEmitter {
+
+  static final int DEFAULT_MAX_IN_FLIGHT = 256;
+  static final int MAX_ATTEMPTS = 3;
+  static final long RETRY_BACKOFF_MILLIS = 100;
+
+  private final EventClient eventClient;
+  private final String streamName;
+  private Executor worker = ForkJoinPool.commonPool();
+  private final Map<String, CompletableFuture<Void>> pending = new ConcurrentHashMap<>();
+  private volatile Semaphore inFlight = new Semaphore(DEFAULT_MAX_IN_FLIGHT);
+
+  ContextStreamEmitter(EventClient eventClient, String streamName) {
+    this.eventClient = eventClient;
+    this.streamName = streamName;
+  }
+
+  void setMaxInFlight(int maxInFlight) {
+    this.inFlight = new Semaphore(maxInFlight);
+  }
+
+  /**
+   * Executor that emissions are sent on. It must not be one that callers of emit run on, as they block on the
+   * emissions in flight, which then could not complete.
+   */
+  void setExecutor(Executor worker) {
+    this.worker = worker;
+  }
+
+  CompletableFuture<Void> emit(String aggregateId, List<? extends NewtonEvent> events, NewtonEventWithMeta cause) {
+    Semaphore permits = inFlight;
+    permits.acquireUninterruptibly();
+
+    CompletableFuture<Void> emitted = pending.compute(aggregateId, (id, previous) ->
+      (previous == null ? CompletableFuture.<Void>completedFuture(null) : previous.handle((ok, error) -> (Void) null))
+        .thenRunAsync(() -> send(aggregateId, events, cause), worker));
+
+    emitted.whenComplete((ok, error) -> {
+      permits.release();
+      pending.remove(aggregateId, emitted);
+      if (error != null) {
+        log.error("Failed to emit events for aggregate {} on {}, the stream is missing them: {}", aggregateId, streamName, error.getMessage());
+      }
+    });
+    return emitted;
+  }
+
+  private void send(String aggregateId, List<? extends NewtonEvent> events, NewtonEventWithMeta cause) {
+    int sent = 0;
+    for (int attempt = 1; sent < events.size(); attempt++) {
+      try {
+        for (; sent < events.size(); sent++) {
+          send(aggregateId, events.get(sent), cause);
+        }
+      } catch (RuntimeException e) {
+        if (attempt >= MAX_ATTEMPTS) {
+          throw e;
+        }
+        log.warn("Failed to emit events for aggregate {} on {}, retrying: {}", aggregateId, streamName, e.getMessage());
+        backoff(attempt, e);
+      }
+    }
+  }
+
+  private void backoff(int attempt, RuntimeException failure) {
+    try {
+      Thread.sleep(RETRY_BACKOFF_MILLIS * attempt);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw failure;
+    }
+  }
+
+  private void send(String aggregateId, NewtonEvent event, NewtonEventWithMeta cause) {
+    log.debug("Emitting {} event on {}", event, streamName);
+
+    EventBuilder payload = ClientEvent
+      .ofType(event.getClass().getSimpleName())
+      .id(aggregateId)
+      .stream(streamName)
+      .payload(event);
+
+    if (cause != null) {
+      payload.causedBy(String.valueOf(cause.getMeta().getOrderId()), "CAUSED");
+    }
+
+    EventResult result = eventClient.event(payload.build());
+
+    if (result != null && result.getStatus() == EventResult.EventResultStatus.FAILED) {
+      throw new MuonException("Failed to emit event " + event + " on " + streamName + ":" + result.getCause());
+    }
+  }
+}
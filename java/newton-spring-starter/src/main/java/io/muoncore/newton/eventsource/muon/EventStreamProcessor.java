@@ -3,6 +3,7 @@ package io.muoncore.newton.eventsource.muon;
 
 import io.muoncore.newton.NewtonEvent;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.function.Consumer;
 
@@ -21,11 +22,29 @@ public interface EventStreamProcessor {
      */
     List<? extends NewtonEvent> processForLoad(List<? extends NewtonEvent> events);
 
+    /**
+     * Process a single event as it is loaded from Photon, used when events are applied as they arrive.
+     *
+     * @return the processed event, or null if the event should be dropped
+     */
+    default NewtonEvent processForLoad(NewtonEvent event) {
+        List<? extends NewtonEvent> processed = processForLoad(Collections.singletonList(event));
+        return processed.isEmpty() ? null : processed.get(0);
+    }
+
     /**
      * Setup any necessary environment for a component to process this event.
      * Used to introduce multi tenancy information into a ThreadLocal when it is present
      */
     void executeWithinEventContext(NewtonEvent event, Consumer<NewtonEvent> exec);
 
+    /**
+     * The context {@link #executeWithinEventContext(NewtonEvent, Consumer)} sets up for this event, such as its tenant.
+     * Batches of events are split wherever the context changes, so that each part can be run within the context of its
+     * first event. By default every event shares the same context.
+     */
+    default Object getEventContext(NewtonEvent event) {
+        return null;
+    }
 
 }
@@ -9,6 +9,8 @@ import io.muoncore.config.MuonConfigBuilder;
 import io.muoncore.newton.AggregateEventClient;
 import io.muoncore.newton.StreamSubscriptionManager;
 import io.muoncore.newton.cluster.*;
+import io.muoncore.newton.eventsource.AggregateSnapshotStore;
+import io.muoncore.newton.eventsource.mongo.MongoAggregateSnapshotStore;
 import io.muoncore.newton.query.EventStreamIndexStore;
 import io.muoncore.newton.saga.SagaLoader;
 import io.muoncore.protocol.event.client.DefaultEventClient;
@@ -19,11 +21,28 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Configuration
 @ConditionalOnClass(Muon.class)
 public class MuonEventSourceConfiguration {
 
+  /**
+   * Name of the bounded executor that asynchronous aggregate loads and command dispatch run on.
+   */
+  public static final String EVENT_SOURCE_EXECUTOR = "newtonEventSourceExecutor";
+
+  /**
+   * Name of the executor that events are emitted onto the bounded context stream on.
+   */
+  public static final String STREAM_EMIT_EXECUTOR = "newtonStreamEmitExecutor";
+
   @Value("${spring.application.name}")
   private String applicationName;
 
@@ -61,10 +80,45 @@ public class MuonEventSourceConfiguration {
     return new AggregateEventClient(eventClient);
   }
 
+  @Bean(name = EVENT_SOURCE_EXECUTOR, destroyMethod = "shutdown")
+  @ConditionalOnMissingBean(name = EVENT_SOURCE_EXECUTOR)
+  public ExecutorService newtonEventSourceExecutor(@Value("${newton.eventsource.threads:16}") int threads,
+                                                  @Value("${newton.eventsource.queueSize:10000}") int queueSize) {
+    AtomicInteger count = new AtomicInteger();
+    return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(queueSize), runnable -> {
+      Thread thread = new Thread(runnable, EVENT_SOURCE_EXECUTOR + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }, new ThreadPoolExecutor.CallerRunsPolicy());
+  }
+
+  /**
+   * Kept apart from the event source executor, as saves running there block on the in-flight emissions, which must
+   * be able to complete. Its queue is bounded by newton.eventsource.maxInFlightEmits.
+   */
+  @Bean(name = STREAM_EMIT_EXECUTOR, destroyMethod = "shutdown")
+  @ConditionalOnMissingBean(name = STREAM_EMIT_EXECUTOR)
+  public ExecutorService newtonStreamEmitExecutor(@Value("${newton.eventsource.emitThreads:16}") int threads) {
+    AtomicInteger count = new AtomicInteger();
+    return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+      Thread thread = new Thread(runnable, STREAM_EMIT_EXECUTOR + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @Bean
+  @ConditionalOnClass(MongoTemplate.class)
+  @ConditionalOnMissingBean(AggregateSnapshotStore.class)
+  public AggregateSnapshotStore aggregateSnapshotStore(MongoTemplate mongoTemplate) {
+    return new MongoAggregateSnapshotStore(mongoTemplate);
+  }
+
   @ConditionalOnMissingBean(StreamSubscriptionManager.class)
   @Bean
-  public StreamSubscriptionManager subscriptionManager(EventClient eventClient, EventStreamIndexStore eventStreamIndexStore, LockService lockService, EventStreamProcessor eventStreamProcessor) {
-    return new MuonClusterAwareTrackingSubscriptionManager(eventClient, eventStreamIndexStore, lockService, eventStreamProcessor);
+  public StreamSubscriptionManager subscriptionManager(EventClient eventClient, EventStreamIndexStore eventStreamIndexStore, LockService lockService, EventStreamProcessor eventStreamProcessor,
+                                                       @Value("${newton.subscriptions.workers:16}") int workers) {
+    return new MuonClusterAwareTrackingSubscriptionManager(eventClient, eventStreamIndexStore, lockService, eventStreamProcessor, workers);
   }
 
   @ConditionalOnMissingBean(LockService.class)
@@ -3,18 +3,21 @@ package io.muoncore.newton.eventsource.muon;
 import io.muoncore.newton.*;
 import io.muoncore.newton.eventsource.*;
 import io.muoncore.newton.utils.muon.MuonLookupUtils;
-import io.muoncore.protocol.event.ClientEvent;
 import io.muoncore.protocol.event.Event;
-import io.muoncore.protocol.event.EventBuilder;
 import io.muoncore.protocol.event.client.EventClient;
 import io.muoncore.protocol.event.client.EventReplayMode;
 import lombok.extern.slf4j.Slf4j;
 import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.*;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -27,6 +30,13 @@ public class MuonEventSourceRepository<A extends AggregateRoot> implements Event
 	private EventClient eventClient;
 	private EventStreamProcessor processor;
 	private String streamName;
+	private AggregateSnapshotPolicy snapshotPolicy;
+	private AggregateSnapshotStore snapshotStore;
+	private AggregateCache aggregateCache;
+	private ContextStreamEmitter streamEmitter;
+	private int loadWindow;
+	private Executor executor = ForkJoinPool.commonPool();
+	private int loadParallelism = 8;
 
 	public MuonEventSourceRepository(Class<A> type,
                                    AggregateEventClient aggregateEventClient,
@@ -37,23 +47,128 @@ public class MuonEventSourceRepository<A extends AggregateRoot> implements Event
 		this.aggregateEventClient = aggregateEventClient;
 		this.eventClient = eventClient;
 		this.streamName = AggregateRootUtil.getAggregateRootStream(type, appName);
+		this.snapshotPolicy = AggregateSnapshotPolicy.forType(type);
+		this.streamEmitter = new ContextStreamEmitter(eventClient, streamName);
+
+		AggregateConfiguration config = type.getAnnotation(AggregateConfiguration.class);
+		if (config != null && config.cacheSize() > 0) {
+		  this.aggregateCache = new AggregateCache(config.cacheSize());
+    }
+		if (config != null) {
+		  this.loadWindow = config.loadWindow();
+    }
 	}
 
+  /**
+   * Optional, snapshots are only used when the aggregate type enables them via {@link AggregateConfiguration}
+   */
+  @Autowired(required = false)
+  public void setSnapshotStore(AggregateSnapshotStore snapshotStore) {
+    this.snapshotStore = snapshotStore;
+  }
+
+  /**
+   * The maximum number of saves whose events may be in flight to the bounded context stream at once.
+   */
+  @Value("${newton.eventsource.maxInFlightEmits:" + ContextStreamEmitter.DEFAULT_MAX_IN_FLIGHT + "}")
+  public void setMaxInFlightEmits(int maxInFlightEmits) {
+    streamEmitter.setMaxInFlight(maxInFlightEmits);
+  }
+
+  /**
+   * The local cache for this aggregate type, or null if caching is not enabled via {@link AggregateConfiguration}
+   */
+  public AggregateCache getAggregateCache() {
+    return aggregateCache;
+  }
+
+  /**
+   * Executor that asynchronous loads are processed on. Defaults to the common fork join pool.
+   */
+  @Autowired(required = false)
+  public void setExecutor(@Qualifier(MuonEventSourceConfiguration.EVENT_SOURCE_EXECUTOR) Executor executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Executor that events are emitted onto the bounded context stream on. Defaults to the common fork join pool.
+   */
+  @Autowired(required = false)
+  public void setEmitExecutor(@Qualifier(MuonEventSourceConfiguration.STREAM_EMIT_EXECUTOR) Executor emitExecutor) {
+    streamEmitter.setExecutor(emitExecutor);
+  }
+
   @Override
   public CompletableFuture<A> loadAsync(Object aggregateIdentifier) {
-    return CompletableFuture.supplyAsync(() -> load(aggregateIdentifier));
+    return loadAsync(aggregateIdentifier, executor);
+  }
+
+  private CompletableFuture<A> loadAsync(Object aggregateIdentifier, Executor executor) {
+    return replayAggregate(aggregateIdentifier, executor).thenApply(aggregate -> {
+      if (aggregate.isDeleted()) throw new AggregateNotFoundException(aggregateIdentifier);
+      return aggregate;
+    });
   }
 
   @Override
   public CompletableFuture<A> loadAsync(Object aggregateIdentifier, Long expectedVersion) throws AggregateNotFoundException, OptimisticLockException {
-    return CompletableFuture.supplyAsync(() -> load(aggregateIdentifier, expectedVersion));
+    return replayAggregate(aggregateIdentifier, executor).thenApply(aggregate -> {
+      if (aggregate.getVersion() != expectedVersion) throw new OptimisticLockException(aggregateIdentifier, expectedVersion, aggregate.getVersion());
+      return aggregate;
+    });
+  }
+
+  /**
+   * The maximum number of aggregates that loadAll and streamAll will replay concurrently.
+   */
+  @Value("${newton.eventsource.loadParallelism:8}")
+  public void setLoadParallelism(int loadParallelism) {
+    this.loadParallelism = loadParallelism;
+  }
+
+  /**
+   * The replay stages run on the thread completing each replay rather than on the executor, so that a caller blocked
+   * here, which may itself be running on the executor, never waits on a thread of the same pool.
+   */
+  @Override
+  public List<AggregateLoadResult<A>> loadAll(Collection<?> aggregateIdentifiers) {
+    List<CompletableFuture<AggregateLoadResult<A>>> results = new ArrayList<>(aggregateIdentifiers.size());
+    Semaphore permits = new Semaphore(Math.max(1, loadParallelism));
+
+    for (Object id : aggregateIdentifiers) {
+      permits.acquireUninterruptibly();
+      CompletableFuture<AggregateLoadResult<A>> result = loadResult(id, Runnable::run);
+      result.whenComplete((loaded, error) -> permits.release());
+      results.add(result);
+    }
+    return results.stream().map(CompletableFuture::join).collect(Collectors.toList());
+  }
+
+  @Override
+  public Publisher<AggregateLoadResult<A>> streamAll(Collection<?> aggregateIdentifiers) {
+    return new OrderedLoadPublisher<>(aggregateIdentifiers, loadParallelism, id -> loadResult(id, executor));
+  }
+
+  private CompletableFuture<AggregateLoadResult<A>> loadResult(Object id, Executor executor) {
+    CompletableFuture<A> loading;
+    try {
+      loading = loadAsync(id, executor);
+    } catch (RuntimeException e) {
+      return CompletableFuture.completedFuture(AggregateLoadResult.failed(id, e));
+    }
+    return loading.handle((aggregate, error) -> {
+      if (error == null) {
+        return AggregateLoadResult.loaded(id, aggregate);
+      }
+      Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+      return AggregateLoadResult.failed(id, cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause));
+    });
   }
 
   @Override
 	public A load(Object aggregateIdentifier) {
 		try {
-			A aggregate = aggregateType.newInstance();
-			replayEvents(aggregateIdentifier).forEach(aggregate::handleEvent);
+			A aggregate = replayAggregate(aggregateIdentifier);
 			if (aggregate.isDeleted()) throw new AggregateNotFoundException(aggregateIdentifier);
 			return aggregate;
 		} catch (EventStoreException | AggregateNotFoundException e) {
@@ -66,8 +181,7 @@ public class MuonEventSourceRepository<A extends AggregateRoot> implements Event
 	@Override
 	public A load(Object aggregateIdentifier, Long version) {
 		try {
-			A aggregate = (A) aggregateType.newInstance();
-			replayEvents(aggregateIdentifier).forEach(aggregate::handleEvent);
+			A aggregate = replayAggregate(aggregateIdentifier);
 			if (aggregate.getVersion() != version) throw new OptimisticLockException(aggregateIdentifier, version, aggregate.getVersion());
 			return aggregate;
 		} catch (EventStoreException | AggregateNotFoundException | OptimisticLockException e) {
@@ -90,17 +204,59 @@ public class MuonEventSourceRepository<A extends AggregateRoot> implements Event
 
 	@Override
 	public List<NewtonEvent> save(A aggregate) {
-		emitForAggregatePersistence(aggregate);
-		emitForStreamProcessing(aggregate);
 		List<NewtonEvent> events = new ArrayList<>(aggregate.getNewOperations());
-		aggregate.getNewOperations().clear();
+		try {
+			persist(aggregate, events, cause.get()).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
 		return events;
 	}
 
+  @Override
+  public CompletableFuture<List<NewtonEvent>> saveAsync(A aggregate) {
+    return saveAsync(aggregate, cause.get());
+  }
+
+  @Override
+  public CompletableFuture<List<NewtonEvent>> saveAsync(A aggregate, NewtonEvent causedBy) {
+    List<NewtonEvent> events = new ArrayList<>(aggregate.getNewOperations());
+    try {
+      return persist(aggregate, events, withMeta(causedBy)).thenApply(emitted -> events);
+    } catch (RuntimeException e) {
+      CompletableFuture<List<NewtonEvent>> failed = new CompletableFuture<>();
+      failed.completeExceptionally(e);
+      return failed;
+    }
+  }
+
+  /**
+   * Processes the new operations once, appends them to the aggregate stream, then hands them to the background
+   * emission to the bounded context stream.
+   *
+   * @return completes when the events have been emitted on the bounded context stream
+   */
+  private CompletableFuture<Void> persist(A aggregate, List<NewtonEvent> events, NewtonEventWithMeta causedBy) {
+    String id = aggregate.getId().toString();
+    List<? extends NewtonEvent> processed = processor.processForPersistence(events);
+
+    aggregateEventClient.publishDomainEvents(id, aggregateType, processed, causedBy, expectedStreamVersion(aggregate));
+    aggregate.getNewOperations().clear();
+
+    return streamEmitter.emit(id, processed, causedBy);
+  }
+
   @Override
   public List<NewtonEvent> delete(A aggregate) {
     aggregate.delete();
-    return save(aggregate);
+    List<NewtonEvent> events = save(aggregate);
+    if (aggregateCache != null) {
+      aggregateCache.invalidate(aggregate.getId().toString());
+    }
+    return events;
   }
 
   private Publisher<NewtonEvent> subscribe(Object aggregateIdentifier, EventReplayMode mode) {
@@ -170,70 +326,235 @@ public class MuonEventSourceRepository<A extends AggregateRoot> implements Event
     return subscribe(aggregateIdentifier, EventReplayMode.LIVE_ONLY);
   }
 
-  private List<NewtonEvent> replayEvents(Object id) {
-		try {
-			List<NewtonEvent> events = aggregateEventClient.loadAggregateRoot(id.toString(), aggregateType).get()
-				.stream()
-				.map(event -> {
-          Class<? extends NewtonEvent> domainClass = MuonLookupUtils.getDomainClass(event);
-          if (domainClass == null) {
-            log.error("Unable to load event {} for domain class {}", event.getEventType(), this.aggregateType);
-            throw new IllegalStateException("Unable to load aggregate with id " + id + " as event type " + event.getEventType() + " could not be found");
-          }
-          return MuonLookupUtils.decorateMeta(event.getPayload(domainClass), event);
-        })
-				.collect(Collectors.toList());
-
-			if (events.size() == 0) throw new AggregateNotFoundException(id);
-
-			return (List<NewtonEvent>) processor.processForLoad(events);
-		} catch (ExecutionException e) {
-		  if (e.getCause() instanceof RuntimeException) {
-		    throw (RuntimeException) e.getCause();
+  /**
+   * Synchronous load, every stage runs on the calling thread or the thread completing the replay.
+   */
+  private A replayAggregate(Object id) {
+    try {
+      return replayAggregate(id, Runnable::run).join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
       }
-		  throw new RuntimeException(e.getCause());
-    } catch (InterruptedException e) {
-			throw new RuntimeException(e);
-		}
+      throw e;
+    }
   }
 
-	private void emitForAggregatePersistence(A aggregate) {
-		aggregateEventClient.publishDomainEvents(
-			aggregate.getId().toString(),
-      aggregateType,
-      processor.processForPersistence(aggregate.getNewOperations()), cause.get());
-	}
+  private CompletableFuture<A> replayAggregate(Object id, Executor executor) {
+    Optional<AggregateCache.Entry> cached = aggregateCache == null ? Optional.empty() : aggregateCache.get(id.toString());
 
-	private void emitForStreamProcessing(A aggregate) {
-    processor.processForPersistence(aggregate.getNewOperations()).forEach(
-			event -> {
-        log.debug("Emitting {} event on {}", event, streamName);
+    CompletableFuture<A> fromCache = cached.isPresent() ? replayCached(id, cached.get(), executor) : CompletableFuture.completedFuture(null);
 
-        EventBuilder payload = ClientEvent
-          .ofType(event.getClass().getSimpleName())
-          .id(aggregate.getId().toString())
-          .stream(streamName)
-          .payload(event);
+    return fromCache.thenCompose(aggregate -> aggregate != null ? CompletableFuture.completedFuture(aggregate) : replaySnapshot(id, executor));
+  }
 
-        if (cause.get() != null) {
-          payload.causedBy(String.valueOf(cause.get().getMeta().getOrderId()), "CAUSED");
+  /**
+   * Restore the latest valid snapshot, if any, and replay the remainder of the aggregate stream on top of it.
+   */
+  private CompletableFuture<A> replaySnapshot(Object id, Executor executor) {
+    return CompletableFuture.supplyAsync(() -> loadSnapshot(id), executor).thenCompose(loaded -> {
+      A restored = loaded.map(snapshot -> restore(id, snapshot)).orElse(null);
+      AggregateSnapshot snapshot = restored == null ? null : loaded.get();
+      A aggregate = restored == null ? newAggregate() : restored;
+
+      return replayInto(id, aggregate, snapshot == null ? 0 : snapshot.getOrderId(), executor)
+        .thenApplyAsync(position -> {
+          if (position.events == 0 && snapshot == null) throw new AggregateNotFoundException(id);
+
+          takeSnapshotIfDue(id, aggregate, position.orderId, snapshot);
+          cacheLoaded(id, aggregate, position.orderId);
+          return aggregate;
+        }, executor);
+    });
+  }
+
+  /**
+   * Replay the events raised since the cached state was captured, including any saved through this repository, which
+   * are applied in stream order along with those appended by other writers.
+   *
+   * @return completes with null if the cached state can't be used, and the aggregate must be loaded without it.
+   */
+  private CompletableFuture<A> replayCached(Object id, AggregateCache.Entry entry, Executor executor) {
+    A aggregate = restore(id, entry.getState());
+    CompletableFuture<ReplayPosition> replayed = aggregate == null
+      ? CompletableFuture.completedFuture(null)
+      : replayInto(id, aggregate, entry.getState().getOrderId(), executor);
+
+    return replayed.thenApply(position -> {
+      if (position == null) {
+        log.debug("Cached state of {} {} could not be restored, evicting", aggregateType.getSimpleName(), id);
+        aggregateCache.invalidate(id.toString());
+        return null;
+      }
+
+      cacheLoaded(id, aggregate, position.orderId);
+      return aggregate;
+    });
+  }
+
+  /**
+   * Replay the aggregate stream after the given order id into the aggregate.
+   *
+   * If the aggregate type configures a load window, events are decoded and applied as they arrive, otherwise the
+   * stream is loaded in full and then applied on the given executor. No thread is blocked waiting for the event store.
+   */
+  private CompletableFuture<ReplayPosition> replayInto(Object id, A aggregate, long orderId, Executor executor) {
+    ReplayPosition position = new ReplayPosition(orderId);
+    long from = orderId == 0 ? 0 : orderId + 1;
+
+    if (loadWindow > 0) {
+      return aggregateEventClient.streamAggregateRoot(id.toString(), aggregateType, from, loadWindow, event -> {
+        position.advance(event);
+        NewtonEvent decoded = processor.processForLoad(decode(id, event));
+        if (decoded != null) {
+          aggregate.handleEvent(decoded);
         }
+      }).thenApply(done -> position);
+    }
 
-        ClientEvent ev = payload.build();
+    return loadEvents(id, from).thenApplyAsync(loaded -> {
+      loaded.forEach(position::advance);
+      decode(id, loaded).forEach(aggregate::handleEvent);
+      return position;
+    }, executor);
+  }
 
-        eventClient.event(ev);
-      });
-	}
+  private CompletableFuture<List<Event>> loadEvents(Object id, long from) {
+    try {
+      return aggregateEventClient.loadAggregateRoot(id.toString(), aggregateType, from);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      CompletableFuture<List<Event>> failed = new CompletableFuture<>();
+      failed.completeExceptionally(e);
+      return failed;
+    }
+  }
+
+  private A newAggregate() {
+    try {
+      return aggregateType.newInstance();
+    } catch (InstantiationException | IllegalAccessException e) {
+      throw new IllegalStateException("Unable to create aggregate: ".concat(aggregateType.getName()), e);
+    }
+  }
+
+  private void cacheLoaded(Object id, A aggregate, long orderId) {
+    //without an order id a cache hit would have to replay from the start of the stream on top of the cached state.
+    if (aggregateCache == null || orderId <= 0 || aggregate.isDeleted()) {
+      return;
+    }
+    aggregateCache.put(id.toString(), new AggregateCache.Entry(
+      AggregateSnapshot.of(aggregate, id.toString(), orderId, snapshotPolicy.getSchemaVersion())));
+  }
+
+  private Optional<AggregateSnapshot> loadSnapshot(Object id) {
+    if (snapshotStore == null || !snapshotPolicy.isEnabled()) {
+      return Optional.empty();
+    }
+    try {
+      Optional<AggregateSnapshot> snapshot = snapshotStore.load(aggregateType, id.toString());
+      if (snapshot.isPresent() && !snapshotPolicy.isValid(snapshot.get())) {
+        log.debug("Snapshot of {} {} was taken with a different aggregate schema, ignoring", aggregateType.getSimpleName(), id);
+        return Optional.empty();
+      }
+      return snapshot;
+    } catch (Exception e) {
+      log.warn("Unable to load snapshot of {} {}, will replay the full event stream: {}", aggregateType.getSimpleName(), id, e.getMessage());
+      return Optional.empty();
+    }
+  }
+
+  private A restore(Object id, AggregateSnapshot snapshot) {
+    try {
+      return snapshot.restore(aggregateType);
+    } catch (Exception e) {
+      log.warn("Unable to restore snapshot of {} {}, will replay the full event stream: {}", aggregateType.getSimpleName(), id, e.getMessage());
+      return null;
+    }
+  }
+
+  private void takeSnapshotIfDue(Object id, A aggregate, long orderId, AggregateSnapshot last) {
+    //without an order id the tail of the stream can't be located, so the snapshot would be unusable.
+    if (snapshotStore == null || orderId <= 0 || aggregate.isDeleted() || !snapshotPolicy.isDue(last, aggregate.getVersion(), System.currentTimeMillis())) {
+      return;
+    }
+    try {
+      snapshotStore.save(AggregateSnapshot.of(aggregate, id.toString(), orderId, snapshotPolicy.getSchemaVersion()));
+    } catch (Exception e) {
+      log.warn("Unable to snapshot {} {}: {}", aggregateType.getSimpleName(), id, e.getMessage());
+    }
+  }
+
+  private List<NewtonEvent> decode(Object id, List<Event> events) {
+    List<NewtonEvent> decoded = events
+      .stream()
+      .map(event -> decode(id, event))
+      .collect(Collectors.toList());
+
+    return (List<NewtonEvent>) processor.processForLoad(decoded);
+  }
+
+  private NewtonEvent decode(Object id, Event event) {
+    Class<? extends NewtonEvent> domainClass = MuonLookupUtils.getDomainClass(event);
+    if (domainClass == null) {
+      log.error("Unable to load event {} for domain class {}", event.getEventType(), this.aggregateType);
+      throw new IllegalStateException("Unable to load aggregate with id " + id + " as event type " + event.getEventType() + " could not be found");
+    }
+    return MuonLookupUtils.decorateMeta(event.getPayload(domainClass), event);
+  }
+
+  /**
+   * Tracks how far a replay has got through the aggregate stream.
+   */
+  private static class ReplayPosition {
+    private long orderId;
+    private long events;
+
+    private ReplayPosition(long orderId) {
+      this.orderId = orderId;
+    }
+
+    private void advance(Event event) {
+      if (event.getOrderId() != null) {
+        orderId = event.getOrderId();
+      }
+      events++;
+    }
+  }
+
+  /**
+   * The number of events on the aggregate stream that the new operations were raised on top of.
+   * A deletion is recorded as an operation without being applied to the aggregate, and so isn't counted in its version.
+   */
+  private long expectedStreamVersion(A aggregate) {
+    long applied = aggregate.getNewOperations().stream().filter(event -> !(event instanceof GenericAggregateDeletedEvent)).count();
+    return aggregate.getVersion() - applied;
+  }
 
 	// manage causation between events.
 	private static ThreadLocal<NewtonEventWithMeta> cause = new ThreadLocal<>();
 
+  /**
+   * Run with the event recorded as the cause of events saved on this thread, restoring any cause set outside.
+   * Stages of a future that run later, or on another thread, are not covered, see {@link #saveAsync(AggregateRoot, NewtonEvent)}.
+   */
 	public static <T> T executeCausedBy(NewtonEvent ev, Supplier<T> run) {
-	  if (NewtonEventWithMeta.class.isAssignableFrom(ev.getClass())) {
+    NewtonEventWithMeta previous = cause.get();
+	  if (ev instanceof NewtonEventWithMeta) {
       cause.set((NewtonEventWithMeta) ev);
     }
-	  T ret = run.get();
-	  cause.remove();
-	  return ret;
+    try {
+      return run.get();
+    } finally {
+      if (previous == null) {
+        cause.remove();
+      } else {
+        cause.set(previous);
+      }
+    }
+  }
+
+  private static NewtonEventWithMeta withMeta(NewtonEvent ev) {
+    return ev instanceof NewtonEventWithMeta ? (NewtonEventWithMeta) ev : null;
   }
 }
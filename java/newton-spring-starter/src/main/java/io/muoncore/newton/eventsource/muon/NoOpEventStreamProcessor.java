@@ -20,4 +20,9 @@ public class NoOpEventStreamProcessor implements EventStreamProcessor {
     public List<? extends NewtonEvent> processForLoad(List<? extends NewtonEvent> events) {
         return events;
     }
+
+    @Override
+    public NewtonEvent processForLoad(NewtonEvent event) {
+        return event;
+    }
 }
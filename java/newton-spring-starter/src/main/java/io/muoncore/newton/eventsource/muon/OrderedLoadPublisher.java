@@ -0,0 +1,114 @@
+package io.muoncore.newton.eventsource.muon;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Starts an asynchronous load for each id, keeping at most `parallelism` loads in flight, and never more than the
+ * subscriber has requested. Results are emitted in the order of the ids.
+ *
+ * The load function is expected to report failures as a result rather than completing exceptionally.
+ */
+class OrderedLoadPublisher<T> implements Publisher<T> {
+
+  private final Collection<?> ids;
+  private final int parallelism;
+  private final Function<Object, CompletableFuture<T>> load;
+
+  OrderedLoadPublisher(Collection<?> ids, int parallelism, Function<Object, CompletableFuture<T>> load) {
+    this.ids = ids;
+    this.parallelism = Math.max(1, parallelism);
+    this.load = load;
+  }
+
+  @Override
+  public void subscribe(Subscriber<? super T> subscriber) {
+    subscriber.onSubscribe(new LoadSubscription(subscriber));
+  }
+
+  private class LoadSubscription implements Subscription {
+    private final Subscriber<? super T> subscriber;
+    private final Iterator<?> remaining = ids.iterator();
+    private final Deque<CompletableFuture<T>> inFlight = new ArrayDeque<>();
+    private final AtomicLong requested = new AtomicLong();
+    private volatile boolean cancelled;
+    private boolean completed;
+    private boolean draining;
+    private boolean missed;
+
+    private LoadSubscription(Subscriber<? super T> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        cancelled = true;
+        subscriber.onError(new IllegalArgumentException("Request must be positive, was " + n));
+        return;
+      }
+      requested.accumulateAndGet(n, (current, add) -> current + add < 0 ? Long.MAX_VALUE : current + add);
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+    }
+
+    /**
+     * Only one thread drains at a time, a drain requested while another is running causes it to loop again.
+     */
+    private void drain() {
+      synchronized (this) {
+        if (draining) {
+          missed = true;
+          return;
+        }
+        draining = true;
+      }
+      while (true) {
+        emitCompleted();
+        startLoads();
+
+        if (!cancelled && !completed && inFlight.isEmpty() && !remaining.hasNext()) {
+          completed = true;
+          subscriber.onComplete();
+        }
+
+        synchronized (this) {
+          if (!missed) {
+            draining = false;
+            return;
+          }
+          missed = false;
+        }
+      }
+    }
+
+    private void emitCompleted() {
+      while (!cancelled && requested.get() > 0 && !inFlight.isEmpty() && inFlight.peek().isDone()) {
+        T result = inFlight.poll().join();
+        requested.decrementAndGet();
+        subscriber.onNext(result);
+      }
+    }
+
+    private void startLoads() {
+      while (!cancelled && remaining.hasNext() && inFlight.size() < Math.min(parallelism, requested.get())) {
+        CompletableFuture<T> loading = load.apply(remaining.next());
+        inFlight.add(loading);
+        loading.whenComplete((result, error) -> drain());
+      }
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package io.muoncore.newton.query;
+
+import io.muoncore.newton.BatchEventHandler;
+import io.muoncore.newton.NewtonEvent;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@link BatchEventHandler} methods of a view class, resolved once per class.
+ *
+ * Each event type is handled by the batch handler with the most specific element type, as for
+ * {@link io.muoncore.newton.EventDispatchTable}.
+ */
+class BatchEventDispatch {
+
+  private static final Map<Class<?>, BatchEventDispatch> TABLES = new ConcurrentHashMap<>();
+  private static final MethodType HANDLER_TYPE = MethodType.methodType(void.class, Object.class, List.class);
+
+  private final List<Handler> handlers;
+  private final Map<Class<?>, Optional<Handler>> dispatch = new ConcurrentHashMap<>();
+
+  private BatchEventDispatch(Class<?> type) {
+    this.handlers = scan(type);
+  }
+
+  static BatchEventDispatch forType(Class<?> type) {
+    return TABLES.computeIfAbsent(type, BatchEventDispatch::new);
+  }
+
+  boolean isEmpty() {
+    return handlers.isEmpty();
+  }
+
+  List<Class<?>> getEventTypes() {
+    List<Class<?>> types = new ArrayList<>();
+    handlers.forEach(handler -> types.add(handler.eventType));
+    return types;
+  }
+
+  /**
+   * The batch handler for the event, or null if it has none
+   */
+  Handler handlerFor(NewtonEvent event) {
+    return dispatch.computeIfAbsent(event.getClass(), this::resolve).orElse(null);
+  }
+
+  private Optional<Handler> resolve(Class<?> eventType) {
+    Handler selected = null;
+    for (Handler handler : handlers) {
+      if (handler.eventType.isAssignableFrom(eventType)
+        && (selected == null || selected.eventType.isAssignableFrom(handler.eventType))) {
+        selected = handler;
+      }
+    }
+    return Optional.ofNullable(selected);
+  }
+
+  private static List<Handler> scan(Class<?> type) {
+    List<Handler> handlers = new ArrayList<>();
+    for (Method method : type.getMethods()) {
+      if (!method.isAnnotationPresent(BatchEventHandler.class)) {
+        continue;
+      }
+      if (method.getParameterCount() != 1 || method.getParameterTypes()[0] != List.class) {
+        throw new IllegalStateException("@BatchEventHandler method " + type.getName() + "." + method.getName()
+          + " must take a single List of events");
+      }
+      try {
+        method.setAccessible(true);
+        MethodHandle handle = MethodHandles.lookup().unreflect(method).asType(HANDLER_TYPE);
+        handlers.add(new Handler(elementType(type, method), handle));
+      } catch (IllegalAccessException e) {
+        throw new IllegalStateException("Unable to access batch event handler " + type.getName() + "." + method.getName(), e);
+      }
+    }
+    return handlers;
+  }
+
+  private static Class<?> elementType(Class<?> type, Method method) {
+    Type parameter = method.getGenericParameterTypes()[0];
+    if (parameter instanceof ParameterizedType) {
+      Type element = ((ParameterizedType) parameter).getActualTypeArguments()[0];
+      if (element instanceof WildcardType) {
+        element = ((WildcardType) element).getUpperBounds()[0];
+      }
+      if (element instanceof Class) {
+        return (Class<?>) element;
+      }
+    }
+    throw new IllegalStateException("@BatchEventHandler method " + type.getName() + "." + method.getName()
+      + " must declare the event type of its List");
+  }
+
+  static class Handler {
+    private final Class<?> eventType;
+    private final MethodHandle handle;
+
+    private Handler(Class<?> eventType, MethodHandle handle) {
+      this.eventType = eventType;
+      this.handle = handle;
+    }
+
+    void handle(Object target, List<NewtonEvent> events) {
+      try {
+        handle.invokeExact(target, events);
+      } catch (Throwable e) {
+        throw new IllegalStateException("Unable to handle batch of " + events.size() + " events", e);
+      }
+    }
+  }
+}
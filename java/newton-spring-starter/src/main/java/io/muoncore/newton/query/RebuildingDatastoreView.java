@@ -19,6 +19,7 @@ public abstract class RebuildingDatastoreView extends BaseStreamSubscriber {
   }
 
   protected Consumer<Consumer<NewtonEvent>> run(String stream) {
-    return consumer -> streamSubscriptionManager.localNonTrackingSubscription(stream, consumer);
+    return consumer -> streamSubscriptionManager.localNonTrackingSubscription(
+      getClass().getSimpleName() + "-" + stream, stream, handledSubscriptionOptions(), consumer);
   }
 }
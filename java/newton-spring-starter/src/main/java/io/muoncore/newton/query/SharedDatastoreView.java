@@ -2,10 +2,14 @@ package io.muoncore.newton.query;
 
 import io.muoncore.newton.NewtonEvent;
 import io.muoncore.newton.StreamSubscriptionManager;
+import io.muoncore.newton.SubscriptionOptions;
 import io.muoncore.newton.streams.BaseStreamSubscriber;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.function.Consumer;
 
 /**
@@ -15,18 +19,102 @@ import java.util.function.Consumer;
  * This also handles unpacking tenancy information and applying it to the current Thread for
  * use in the mongo filters. As such, it should generally be used within the multi tenant services
  * as the base view.
+ *
+ * A view with {@link io.muoncore.newton.BatchEventHandler} methods receives its events in batches. Runs of events with
+ * the same batch handler are passed to it together, other events go to their {@link io.muoncore.newton.EventHandler}
+ * one at a time, all in stream order. Each batch only holds events of one tenancy, and is run within it.
+ *
+ * By default the position of the view is saved separately from its writes, so after a failover some events may be
+ * handled again. A view whose {@link #subscriptionOptions()} choose
+ * {@link SubscriptionOptions.SubscriptionOptionsBuilder#checkpointWithView()} saves the position itself, in
+ * {@link #onBatchComplete(EventStreamIndex)}, along with the writes of each batch. Events it has saved are then not
+ * handled again.
  */
 @Slf4j
 public abstract class SharedDatastoreView extends BaseStreamSubscriber {
 
+  private final BatchEventDispatch batchDispatch = BatchEventDispatch.forType(getClass());
+
   public SharedDatastoreView(StreamSubscriptionManager streamSubscriptionManager) {
     super(streamSubscriptionManager);
   }
 
   @Override
   protected Consumer<Consumer<NewtonEvent>> run(String stream) {
+    String subscriptionName = getClass().getSimpleName() + "-" + stream;
+    SubscriptionOptions options = handledSubscriptionOptions();
+    if (batchDispatch.isEmpty() && !options.isCheckpointWithView()) {
+      return consumer -> {
+        streamSubscriptionManager.globallyUniqueSubscription(subscriptionName, stream, options, consumer);
+      };
+    }
     return consumer -> {
-      streamSubscriptionManager.globallyUniqueSubscription(getClass().getSimpleName() + "-" + stream, stream, consumer);
+      streamSubscriptionManager.globallyUniqueBatchSubscription(subscriptionName, stream, options,
+        (events, checkpoint) -> handleBatch(events, checkpoint, consumer));
     };
   }
+
+  @Override
+  protected Collection<Class<?>> handledEventTypes() {
+    List<Class<?>> types = new ArrayList<>(super.handledEventTypes());
+    types.addAll(batchDispatch.getEventTypes());
+    return types;
+  }
+
+  /**
+   * Called once every event of a batch has been handled, before the position of the view moves past them. Writes
+   * collected during the batch, such as with a {@link io.muoncore.newton.query.mongo.BulkViewWriter}, should be
+   * flushed here.
+   */
+  protected void onBatchComplete() {
+  }
+
+  /**
+   * As {@link #onBatchComplete()}, passed the position of the view after the batch when the view saves it along with its
+   * writes, otherwise null. A view that saves its position should flush its writes with
+   * {@link io.muoncore.newton.query.mongo.BulkViewWriter#flush(EventStreamIndex)}. Such a view is also called after
+   * events it skips, with no events handled, so that its position moves past them.
+   */
+  protected void onBatchComplete(EventStreamIndex checkpoint) {
+    onBatchComplete();
+  }
+
+  /**
+   * Called when handling a batch fails, before the error ends the subscription, which then resumes from the last saved
+   * position of the view. Writes collected during the batch should be dropped here, such as with
+   * {@link io.muoncore.newton.query.mongo.BulkViewWriter#discard()}.
+   */
+  protected void onBatchFailed() {
+  }
+
+  private void handleBatch(List<NewtonEvent> events, EventStreamIndex checkpoint, Consumer<NewtonEvent> single) {
+    try {
+      dispatchBatch(events, single);
+      onBatchComplete(checkpoint);
+    } catch (RuntimeException e) {
+      onBatchFailed();
+      throw e;
+    }
+  }
+
+  private void dispatchBatch(List<NewtonEvent> events, Consumer<NewtonEvent> single) {
+    BatchEventDispatch.Handler current = null;
+    List<NewtonEvent> run = new ArrayList<>();
+    for (NewtonEvent event : events) {
+      BatchEventDispatch.Handler handler = batchDispatch.handlerFor(event);
+      if (handler != current && !run.isEmpty()) {
+        current.handle(this, run);
+        run = new ArrayList<>();
+      }
+      current = handler;
+      if (handler == null) {
+        single.accept(event);
+      } else {
+        run.add(event);
+      }
+    }
+    if (!run.isEmpty()) {
+      current.handle(this, run);
+    }
+  }
 }
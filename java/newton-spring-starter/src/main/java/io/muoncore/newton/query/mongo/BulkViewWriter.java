@@ -0,0 +1,84 @@
+package io.muoncore.newton.query.mongo;
+
+import io.muoncore.newton.query.EventStreamIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects the writes of a batch of view events into bulk operations, one per document type, sent to Mongo together
+ * when flushed.
+ *
+ * Batches run on the subscription worker threads, so writes are collected per thread. Call {@link #flush()} from
+ * {@link io.muoncore.newton.query.SharedDatastoreView#onBatchComplete()}, so the writes are made before the position of
+ * the view moves past the batch, and {@link #discard()} from
+ * {@link io.muoncore.newton.query.SharedDatastoreView#onBatchFailed()}, so the writes of a failed batch are not sent
+ * with the next one.
+ *
+ * A view that saves its own position flushes with {@link #flush(EventStreamIndex)}, which saves the position straight
+ * after the writes of the batch. The position is only ever moved forwards, so a node that has lost the lock of the view
+ * cannot move it back.
+ */
+@Slf4j
+public class BulkViewWriter {
+
+  private final MongoTemplate mongoTemplate;
+  private final ThreadLocal<Map<Class<?>, BulkOperations>> pending = ThreadLocal.withInitial(LinkedHashMap::new);
+
+  public BulkViewWriter(MongoTemplate mongoTemplate) {
+    this.mongoTemplate = mongoTemplate;
+  }
+
+  /**
+   * The ordered bulk operations for the document type, in the current batch
+   */
+  public BulkOperations bulkOps(Class<?> documentType) {
+    return pending.get().computeIfAbsent(documentType, type -> mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, type));
+  }
+
+  /**
+   * Send the operations collected by this thread to Mongo
+   */
+  public void flush() {
+    Map<Class<?>, BulkOperations> operations = pending.get();
+    try {
+      operations.values().forEach(BulkOperations::execute);
+    } finally {
+      operations.clear();
+    }
+  }
+
+  /**
+   * Drop the operations collected by this thread, without sending them, when its batch has failed
+   */
+  public void discard() {
+    pending.get().clear();
+  }
+
+  /**
+   * Send the operations collected by this thread to Mongo, then save the position of the view, if given
+   */
+  public void flush(EventStreamIndex checkpoint) {
+    flush();
+    if (checkpoint != null) {
+      save(checkpoint);
+    }
+  }
+
+  private void save(EventStreamIndex checkpoint) {
+    //only matches a position behind this one, so an upsert against a later position fails on the existing id
+    Query behind = new Query(Criteria.where("_id").is(checkpoint.getStream()).and("lastSeen").lt(checkpoint.getLastSeen()));
+    try {
+      mongoTemplate.upsert(behind, Update.update("lastSeen", checkpoint.getLastSeen()), EventStreamIndex.class);
+    } catch (DuplicateKeyException e) {
+      log.warn("Position of {} is already past {}, not saving", checkpoint.getStream(), checkpoint.getLastSeen());
+    }
+  }
+}
@@ -0,0 +1,274 @@
+package io.muoncore.newton.saga;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The sagas handling events on this node, with the version of each last written, so that the saves made while handling
+ * an event are coalesced into a single write.
+ *
+ * A saga is written once the event it is handling is done, unless it is written behind, in which case it is written
+ * after writeBehindMillis instead. Its new interests are still saved once the event is done, so that later events find
+ * it. Completed sagas are always written straight away. Up to maxSize sagas are kept in
+ * memory between events, the least recently used being written if need be and dropped beyond that.
+ *
+ * Writes only succeed if the stored saga is still at the version last loaded or written, so that an update by another
+ * writer is detected. The saga is then dropped, to be loaded again for its next event.
+ *
+ * Each saga is only used within its mailbox, see {@link SagaMailboxes}, and the writes behind and evictions are also
+ * run there.
+ */
+@Slf4j
+class SagaCache {
+
+  private final SagaRepository sagaRepository;
+  private final SagaMailboxes mailboxes;
+  //in access order, guarded by itself
+  private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+  private int maxSize;
+  private long writeBehindMillis;
+  private ScheduledExecutorService scheduler;
+
+  SagaCache(SagaRepository sagaRepository, SagaMailboxes mailboxes) {
+    this.sagaRepository = sagaRepository;
+    this.mailboxes = mailboxes;
+  }
+
+  void setMaxSize(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  void setWriteBehindMillis(long writeBehindMillis) {
+    this.writeBehindMillis = writeBehindMillis;
+  }
+
+  synchronized void start() {
+    if (writeBehindMillis > 0 && scheduler == null) {
+      scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "newton-saga-write-behind");
+        thread.setDaemon(true);
+        return thread;
+      });
+      scheduler.scheduleWithFixedDelay(this::writeBehind, writeBehindMillis, writeBehindMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  <T extends Saga> Optional<T> load(String sagaId, Class<T> type) {
+    Entry entry = entry(sagaId);
+    if (entry != null && type.isInstance(entry.saga)) {
+      return Optional.of(type.cast(entry.saga));
+    }
+    Optional<T> saga = sagaRepository.load(sagaId, type);
+    saga.ifPresent(loaded -> {
+      synchronized (entries) {
+        entries.put(sagaId, new Entry(loaded));
+      }
+    });
+    return saga;
+  }
+
+  /**
+   * Record that the saga has changed. It is written once the event is done, unless it has completed, when it is
+   * written now.
+   */
+  void save(Saga saga) {
+    Entry entry = entry(saga.getId());
+    if (entry == null || entry.saga != saga) {
+      //not loaded through the cache, so there is no version to check against
+      sagaRepository.save(saga);
+      return;
+    }
+    if (!(saga instanceof StatefulSaga) || version(saga) != entry.writtenVersion) {
+      entry.dirty = true;
+    }
+    if (saga.isComplete()) {
+      write(entry);
+    }
+  }
+
+  /**
+   * Save the interests the saga has registered, ahead of writing the saga
+   */
+  void saveNewInterests(Saga saga) {
+    sagaRepository.saveNewInterests(saga);
+  }
+
+  /**
+   * The saga has finished handling an event
+   */
+  void done(String sagaId) {
+    Entry entry = entry(sagaId);
+    if (entry == null) {
+      return;
+    }
+    if (entry.dirty && writeBehindMillis <= 0) {
+      write(entry);
+    } else if (entry.dirty) {
+      saveNewInterests(entry.saga);
+    }
+    if (!entry.dirty && (maxSize <= 0 || entry.saga.isComplete())) {
+      remove(sagaId, entry);
+    }
+    evictBeyondMaxSize();
+  }
+
+  /**
+   * The saga failed while handling an event. Changes it had saved are written, and it is dropped from memory, as it may
+   * have been left part way through a change.
+   */
+  void failed(String sagaId) {
+    Entry entry = entry(sagaId);
+    if (entry == null) {
+      return;
+    }
+    if (entry.dirty) {
+      write(entry);
+    }
+    remove(sagaId, entry);
+  }
+
+  /**
+   * Write every saga with unwritten changes. Called on shutdown, once no more events are being dispatched to the
+   * mailboxes. Each saga is written within its mailbox, after the events already queued for it, and this waits for the
+   * writes to finish.
+   */
+  void flush(long timeout, TimeUnit unit) {
+    synchronized (this) {
+      if (scheduler != null) {
+        scheduler.shutdownNow();
+      }
+    }
+    Set<String> sagaIds = mailboxes.sagaIds();
+    synchronized (entries) {
+      sagaIds.addAll(entries.keySet());
+    }
+    CountDownLatch written = new CountDownLatch(sagaIds.size());
+    sagaIds.forEach(sagaId -> mailboxes.execute(sagaId, () -> {
+      try {
+        Entry entry = entry(sagaId);
+        if (entry != null && entry.dirty) {
+          write(entry);
+        }
+      } finally {
+        written.countDown();
+      }
+    }));
+    try {
+      if (!written.await(timeout, unit)) {
+        log.warn("Timed out writing sagas on shutdown, {} have not been written", written.getCount());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  private void writeBehind() {
+    dirtySagas().forEach(sagaId -> mailboxes.execute(sagaId, () -> {
+      Entry entry = entry(sagaId);
+      if (entry != null && entry.dirty) {
+        write(entry);
+        if (!entry.dirty && (maxSize <= 0 || entry.saga.isComplete())) {
+          remove(sagaId, entry);
+        }
+      }
+    }));
+  }
+
+  private void evictBeyondMaxSize() {
+    List<String> evicted = new ArrayList<>();
+    synchronized (entries) {
+      int excess = entries.size() - Math.max(maxSize, 0);
+      for (Map.Entry<String, Entry> eldest : entries.entrySet()) {
+        if (excess-- <= 0) {
+          break;
+        }
+        if (!eldest.getValue().evicting) {
+          eldest.getValue().evicting = true;
+          evicted.add(eldest.getKey());
+        }
+      }
+    }
+    evicted.forEach(sagaId -> mailboxes.execute(sagaId, () -> {
+      Entry entry = entry(sagaId);
+      if (entry == null) {
+        return;
+      }
+      if (entry.dirty) {
+        write(entry);
+      }
+      remove(sagaId, entry);
+    }));
+  }
+
+  private void write(Entry entry) {
+    Saga saga = entry.saga;
+    try {
+      sagaRepository.save(saga, entry.writtenVersion);
+      entry.writtenVersion = version(saga);
+      entry.dirty = false;
+    } catch (OptimisticLockingFailureException e) {
+      log.error("Saga {} has been updated by another writer, discarding the changes made here: {}", saga.getId(), e.getMessage());
+      remove(saga.getId(), entry);
+    }
+  }
+
+  private List<String> dirtySagas() {
+    List<String> dirty = new ArrayList<>();
+    synchronized (entries) {
+      entries.forEach((sagaId, entry) -> {
+        if (entry.dirty) {
+          dirty.add(sagaId);
+        }
+      });
+    }
+    return dirty;
+  }
+
+  private Entry entry(String sagaId) {
+    synchronized (entries) {
+      return entries.get(sagaId);
+    }
+  }
+
+  private void remove(String sagaId, Entry entry) {
+    synchronized (entries) {
+      entries.remove(sagaId, entry);
+    }
+  }
+
+  private static long version(Saga saga) {
+    return saga instanceof StatefulSaga ? ((StatefulSaga) saga).getVersion() : 0;
+  }
+
+  private static class Entry {
+    private final Saga saga;
+    private long writtenVersion;
+    //read by the write behind thread
+    private volatile boolean dirty;
+    //guarded by the entries map
+    private boolean evicting;
+
+    private Entry(Saga saga) {
+      this.saga = saga;
+      this.writtenVersion = version(saga);
+    }
+  }
+}
@@ -8,6 +8,7 @@ import io.muoncore.newton.eventsource.muon.EventStreamProcessor;
 import io.muoncore.newton.query.EventStreamIndexStore;
 import io.muoncore.newton.saga.mongo.MongoSagaRepository;
 import io.muoncore.protocol.event.client.EventClient;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Scope;
@@ -22,8 +23,8 @@ public class SagaConfiguration {
   }
 
   @Bean
-  public SagaRepository repository(MongoTemplate template) {
-    return new MongoSagaRepository(template);
+  public SagaRepository repository(MongoTemplate template, @Value("${newton.sagas.interestIndex:false}") boolean interestIndex) {
+    return new MongoSagaRepository(template, interestIndex);
   }
 
   @Bean
@@ -32,13 +33,15 @@ public class SagaConfiguration {
   }
 
   @Bean
-  public SagaStreamManager sagaStreamManager(StreamSubscriptionManager streamSubscriptionManager, SagaRepository sagaRepository, CommandBus commandBus, SagaInterestMatcher sagaInterestMatcher, SagaFactory sagaFactory, SagaLoader sagaLoader) {
-    return new SagaStreamManager(streamSubscriptionManager, sagaRepository, commandBus, sagaInterestMatcher, sagaFactory, sagaLoader);
+  public SagaStreamManager sagaStreamManager(StreamSubscriptionManager streamSubscriptionManager, SagaRepository sagaRepository, CommandBus commandBus, SagaInterestMatcher sagaInterestMatcher, SagaFactory sagaFactory, SagaLoader sagaLoader,
+                                             @Value("${newton.sagas.workers:16}") int workers) {
+    return new SagaStreamManager(streamSubscriptionManager, sagaRepository, commandBus, sagaInterestMatcher, sagaFactory, sagaLoader, workers);
   }
 
   @Bean
-  public StreamSubscriptionManager subscriptionManager(EventClient eventClient, EventStreamIndexStore eventStreamIndexStore, LockService lockService, EventStreamProcessor eventStreamProcessor) {
-    return new MuonClusterAwareTrackingSubscriptionManager(eventClient, eventStreamIndexStore, lockService, eventStreamProcessor);
+  public StreamSubscriptionManager subscriptionManager(EventClient eventClient, EventStreamIndexStore eventStreamIndexStore, LockService lockService, EventStreamProcessor eventStreamProcessor,
+                                                       @Value("${newton.subscriptions.workers:16}") int workers) {
+    return new MuonClusterAwareTrackingSubscriptionManager(eventClient, eventStreamIndexStore, lockService, eventStreamProcessor, workers);
   }
 
   @Bean
@@ -13,6 +13,7 @@ import lombok.extern.slf4j.Slf4j;
 import io.muoncore.newton.command.CommandIntent;
 import io.muoncore.newton.saga.events.SagaEndEvent;
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
@@ -25,9 +26,13 @@ import java.util.concurrent.*;
 @Slf4j
 public class SagaFactory implements ApplicationContextAware {
 
+  public static final int DEFAULT_COMMANDS_IN_FLIGHT = 8;
+
   private ApplicationContext applicationContext;
   private SagaRepository sagaRepository;
   private CommandBus commandBus;
+  private boolean asyncCommands;
+  private int commandsInFlight = DEFAULT_COMMANDS_IN_FLIGHT;
 
   private EventBus bus = new EventBus();
 
@@ -36,6 +41,23 @@ public class SagaFactory implements ApplicationContextAware {
     this.sagaRepository = sagaRepository;
   }
 
+  /**
+   * Dispatch the commands raised by a saga through {@link CommandBus#dispatchAsync}, so that they run concurrently
+   * rather than one after the other.
+   */
+  @Value("${newton.sagas.asyncCommands:false}")
+  public void setAsyncCommands(boolean asyncCommands) {
+    this.asyncCommands = asyncCommands;
+  }
+
+  /**
+   * The most commands from a single saga running at once when they are dispatched asynchronously
+   */
+  @Value("${newton.sagas.commandsInFlight:" + DEFAULT_COMMANDS_IN_FLIGHT + "}")
+  public void setCommandsInFlight(int commandsInFlight) {
+    this.commandsInFlight = commandsInFlight;
+  }
+
   public void autowire(Saga saga) {
     applicationContext.getAutowireCapableBeanFactory().autowireBeanProperties(saga, AutowireCapableBeanFactory.AUTOWIRE_BY_TYPE, false);
   }
@@ -44,26 +66,45 @@ public class SagaFactory implements ApplicationContextAware {
     bus.post(event);
   }
 
-  @SuppressWarnings("unchecked")
   public <T extends Saga> SagaMonitor<T> create(Class<T> sagaType, NewtonEvent payload) {
     log.debug("Creating new saga of type " + sagaType + " with payload " + payload);
-    T saga = (T) loadFromSpringContext(sagaType);
-    final T thesaga = saga;
+    return start(sagaType, newSaga(sagaType), payload);
+  }
+
+  /**
+   * A new instance of the saga type, with its id, not yet started
+   */
+  @SuppressWarnings("unchecked")
+  <T extends Saga> T newSaga(Class<T> sagaType) {
+    return (T) loadFromSpringContext(sagaType);
+  }
+
+  /**
+   * Start a new saga with the event, saving it and dispatching the commands it raises
+   */
+  <T extends Saga> SagaMonitor<T> start(Class<T> sagaType, T saga, NewtonEvent payload) {
+    return start(sagaType, saga, payload, () -> {});
+  }
 
+  /**
+   * As start, running saved once the new saga and its interests have been saved, before its commands are dispatched
+   */
+  @SuppressWarnings("unchecked")
+  <T extends Saga> SagaMonitor<T> start(Class<T> sagaType, T saga, NewtonEvent payload, Runnable saved) {
     return MuonEventSourceRepository.executeCausedBy(payload, () -> {
-      thesaga.startWith(payload);
+      saga.startWith(payload);
 
       sagaRepository.saveNewSaga(saga, payload);
+      saved.run();
 
       EventedSagaMonitor monitor = new EventedSagaMonitor(saga.getId(), sagaType);
 
-      processCommands(saga);
+      processCommands(saga, payload);
 
       sagaRepository.save(saga);
 
       return monitor;
     });
-
   }
 
   public <T extends Saga> SagaMonitor<T> monitor(String sagaId, Class<T> type) {
@@ -76,23 +117,140 @@ public class SagaFactory implements ApplicationContextAware {
   }
 
   void processCommands(Saga saga) {
+    processCommands(saga, null);
+  }
+
+  /**
+   * Dispatch the commands the saga has raised, passing any failures back to it. Returns once the outcome of every
+   * command is known, including those raised in response to a failure, so that the saga can then be saved once.
+   * Dependent commands, such as the {@link SagaEndCommand}, are only dispatched once the outcome of every other command
+   * is known.
+   *
+   * @param causedBy the event the saga was handling, recorded as the cause of commands dispatched asynchronously
+   */
+  void processCommands(Saga saga, NewtonEvent causedBy) {
+    if (asyncCommands) {
+      processCommandsAsync(saga, causedBy, new Semaphore(Math.max(commandsInFlight, 1)));
+      return;
+    }
+    List<CommandIntent> held = new ArrayList<>();
+    dispatchInTurn(saga, held);
+    //the outcome of every other command is known
+    while (!held.isEmpty()) {
+      dispatch(saga, held.remove(0), held);
+    }
+  }
+
+  /**
+   * Dispatch the commands the saga has raised one at a time, passing each failure back to it before the next. Dependent
+   * commands are added to held instead.
+   */
+  private void dispatchInTurn(Saga saga, List<CommandIntent> held) {
     List<CommandIntent> newOperations = new ArrayList<>(saga.getNewOperations());
     saga.getNewOperations().clear();
     for (CommandIntent intent : newOperations) {
-      MuonFuture<CommandResult> dispatch = commandBus.dispatch(intent);
-      try {
-        CommandResult commandResult = dispatch.get();
-        commandResult.getFailure().ifPresent(event -> {
-          MuonEventSourceRepository.executeCausedBy(event, () -> {
-            saga.handle(event);
-            processCommands(saga);
-            return null;
-          });
+      if (isDependent(intent)) {
+        held.add(intent);
+      } else {
+        dispatch(saga, intent, held);
+      }
+    }
+  }
+
+  private void dispatch(Saga saga, CommandIntent intent, List<CommandIntent> held) {
+    MuonFuture<CommandResult> dispatch = commandBus.dispatch(intent);
+    try {
+      CommandResult commandResult = dispatch.get();
+      commandResult.getFailure().ifPresent(event -> {
+        MuonEventSourceRepository.executeCausedBy(event, () -> {
+          saga.handle(event);
+          dispatchInTurn(saga, held);
+          return null;
         });
-      } catch (InterruptedException | ExecutionException e) {
-        log.warn("Error extracting the command result for a saga", e);
+      });
+    } catch (InterruptedException | ExecutionException e) {
+      log.warn("Error extracting the command result for a saga", e);
+    }
+  }
+
+  /**
+   * Dispatches the commands in rounds. Each round dispatches the commands raised so far, then hands their failures to
+   * the saga in the order the commands were raised, and the commands it raises in response make up the next round.
+   * Dependent commands are held back until a round has nothing else to dispatch.
+   */
+  private void processCommandsAsync(Saga saga, NewtonEvent causedBy, Semaphore inFlight) {
+    List<CommandIntent> raised = newOperations(saga, causedBy);
+    List<CommandIntent> held = new ArrayList<>();
+    while (!raised.isEmpty() || !held.isEmpty()) {
+      List<CommandIntent> round = new ArrayList<>();
+      for (CommandIntent intent : raised) {
+        (isDependent(intent) ? held : round).add(intent);
+      }
+      if (round.isEmpty()) {
+        //the outcome of every other command is known
+        round = held;
+        held = new ArrayList<>();
+      }
+      List<CompletableFuture<CommandResult>> results = dispatchAsync(round, inFlight);
+      List<CommandIntent> next = new ArrayList<>();
+      for (CompletableFuture<CommandResult> result : results) {
+        try {
+          result.join().getFailure().ifPresent(event -> {
+            MuonEventSourceRepository.executeCausedBy(event, () -> {
+              saga.handle(event);
+              next.addAll(newOperations(saga, event));
+              return null;
+            });
+          });
+        } catch (CompletionException | CancellationException e) {
+          log.warn("Error extracting the command result for a saga", e);
+        }
+      }
+      raised = next;
+    }
+  }
+
+  /**
+   * Takes the commands the saga has raised, each recording the event that caused it
+   */
+  private static List<CommandIntent> newOperations(Saga saga, NewtonEvent causedBy) {
+    List<CommandIntent> newOperations = new ArrayList<>(saga.getNewOperations().size());
+    for (CommandIntent intent : saga.getNewOperations()) {
+      newOperations.add(causedBy(intent, causedBy));
+    }
+    saga.getNewOperations().clear();
+    return newOperations;
+  }
+
+  private static boolean isDependent(CommandIntent intent) {
+    return intent.isDependent() || SagaEndCommand.class.getName().equals(intent.getType());
+  }
+
+  private List<CompletableFuture<CommandResult>> dispatchAsync(List<CommandIntent> intents, Semaphore inFlight) {
+    List<CompletableFuture<CommandResult>> results = new ArrayList<>(intents.size());
+    for (CommandIntent intent : intents) {
+      inFlight.acquireUninterruptibly();
+      CompletableFuture<CommandResult> result;
+      try {
+        result = commandBus.dispatchAsync(intent);
+      } catch (RuntimeException e) {
+        inFlight.release();
+        throw e;
       }
+      result.whenComplete((commandResult, error) -> inFlight.release());
+      results.add(result);
+    }
+    return results;
+  }
+
+  /**
+   * The command runs on another thread, so takes its cause with it rather than finding it on this one
+   */
+  private static CommandIntent causedBy(CommandIntent intent, NewtonEvent causedBy) {
+    if (causedBy == null || intent.getCausingEvent() != null) {
+      return intent;
     }
+    return new CommandIntent(intent.getType(), intent.getPayload(), intent.getId(), intent.getAdditionalProperties(), causedBy, intent.isDependent());
   }
 
 
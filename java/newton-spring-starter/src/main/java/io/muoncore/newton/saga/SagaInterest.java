@@ -3,7 +3,11 @@ package io.muoncore.newton.saga;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.ToString;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
 
+@Document
+@CompoundIndex(name = "event_key_value", def = "{'className': 1, 'key': 1, 'value': 1}")
 @Data
 @AllArgsConstructor
 @ToString
@@ -0,0 +1,73 @@
+package io.muoncore.newton.saga;
+
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An in memory index of saga interests by event class, key and value, so that the interests matching an event are
+ * found without a query, at a cost proportional to the number of matches.
+ *
+ * It only sees the interests saved through it, so suits sagas that are all run and saved by a single node.
+ */
+public class SagaInterestIndex {
+
+  private final Map<InterestKey, Map<Object, SagaInterest>> interests = new ConcurrentHashMap<>();
+  //a saga registers its interests again each time it is saved, so they are held by id
+  private final Map<String, Map<Object, SagaInterest>> interestsBySaga = new ConcurrentHashMap<>();
+
+  public void add(SagaInterest interest) {
+    interestsBySaga.compute(interest.getSagaId(), (sagaId, sagaInterests) -> {
+      Map<Object, SagaInterest> updated = sagaInterests == null ? new HashMap<>() : sagaInterests;
+      updated.put(interest.getId(), interest);
+      interests.compute(InterestKey.of(interest), (key, matching) -> {
+        Map<Object, SagaInterest> added = matching == null ? new ConcurrentHashMap<>() : matching;
+        added.put(interest.getId(), interest);
+        return added;
+      });
+      return updated;
+    });
+  }
+
+  /**
+   * Remove every interest of the saga, once it is complete
+   */
+  public void remove(String sagaId) {
+    interestsBySaga.computeIfPresent(sagaId, (id, sagaInterests) -> {
+      sagaInterests.values().forEach(interest -> interests.computeIfPresent(InterestKey.of(interest), (key, matching) -> {
+        matching.remove(interest.getId());
+        return matching.isEmpty() ? null : matching;
+      }));
+      return null;
+    });
+  }
+
+  /**
+   * The interests in the event class that match the given event properties, see {@link SagaInterestMatcher#properties}
+   */
+  public List<SagaInterest> find(String className, Map<String, String> properties) {
+    List<SagaInterest> found = new ArrayList<>();
+    properties.forEach((key, value) -> {
+      Map<Object, SagaInterest> matching = interests.get(new InterestKey(className, key, value));
+      if (matching != null) {
+        found.addAll(matching.values());
+      }
+    });
+    return found;
+  }
+
+  @Value
+  private static class InterestKey {
+    private String className;
+    private String key;
+    private String value;
+
+    static InterestKey of(SagaInterest interest) {
+      return new InterestKey(interest.getClassName(), interest.getKey(), interest.getValue());
+    }
+  }
+}
@@ -5,40 +5,85 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 
 import java.beans.PropertyDescriptor;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Matches events against saga interests by their properties, including those inherited from superclasses.
+ *
+ * The getters of each event class are resolved once, and then read through method handles.
+ */
 @Slf4j
 public class SagaInterestMatcher {
 
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private final Map<Class<?>, Map<String, MethodHandle>> accessors = new ConcurrentHashMap<>();
+
     public boolean matches(NewtonEvent event, SagaInterest interests) {
-        final Method[] methods = event.getClass().getDeclaredMethods();
-
-        boolean matches = false;
-
-        for (Method method : methods) {
-            if (method.getName().startsWith("get")) {
-                PropertyDescriptor ed = BeanUtils.findPropertyForMethod(method);
-                if (ed == null) {
-                  continue;
-                }
-                if (ed.getName().equals(interests.getKey())) {
-                    try {
-                        Object ret = method.invoke(event);
-                        if (ret == null) break;
-                        String val = ret.toString();
-                        if (interests.getValue().equals(val)) {
-                            matches = true;
-                            break;
-                        }
-                    } catch (IllegalAccessException e) {
-                        e.printStackTrace();
-                    } catch (InvocationTargetException e) {
-                        e.printStackTrace();
-                    }
-                }
+        MethodHandle getter = accessorsFor(event.getClass()).get(interests.getKey());
+        if (getter == null) {
+            return false;
+        }
+        Object ret = read(getter, event, interests.getKey());
+        if (ret == null) {
+            return false;
+        }
+        String val = ret instanceof String ? (String) ret : ret.toString();
+        return val.equals(interests.getValue());
+    }
+
+    /**
+     * The values of the event properties that interests can match on, by property name. An interest matches the event
+     * when its value equals the value of its key here.
+     */
+    public Map<String, String> properties(NewtonEvent event) {
+        Map<String, MethodHandle> getters = accessorsFor(event.getClass());
+        Map<String, String> properties = new HashMap<>(getters.size() * 2);
+
+        getters.forEach((name, getter) -> {
+            Object ret = read(getter, event, name);
+            if (ret != null) {
+                properties.put(name, ret.toString());
+            }
+        });
+        return properties;
+    }
+
+    private Map<String, MethodHandle> accessorsFor(Class<?> eventType) {
+        return accessors.computeIfAbsent(eventType, SagaInterestMatcher::findAccessors);
+    }
+
+    private static Object read(MethodHandle getter, NewtonEvent event, String property) {
+        try {
+            return (Object) getter.invokeExact((Object) event);
+        } catch (Throwable e) {
+            log.warn("Unable to read property {} of event {}: {}", property, event.getClass().getName(), e.getMessage());
+            return null;
+        }
+    }
+
+    private static Map<String, MethodHandle> findAccessors(Class<?> eventType) {
+        Map<String, MethodHandle> getters = new HashMap<>();
+
+        for (PropertyDescriptor property : BeanUtils.getPropertyDescriptors(eventType)) {
+            Method method = property.getReadMethod();
+            if (method == null || !method.getName().startsWith("get") || method.getDeclaringClass() == Object.class) {
+                continue;
+            }
+            try {
+                method.setAccessible(true);
+                getters.put(property.getName(), MethodHandles.lookup().unreflect(method).asType(GETTER_TYPE));
+            } catch (IllegalAccessException | RuntimeException e) {
+                log.warn("Unable to access property {} of event {}, it will not be matched: {}", property.getName(), eventType.getName(), e.getMessage());
             }
         }
-        return matches;
+        return Collections.unmodifiableMap(getters);
     }
 }
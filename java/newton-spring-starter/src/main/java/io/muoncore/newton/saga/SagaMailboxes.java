@@ -0,0 +1,97 @@
+package io.muoncore.newton.saga;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * A mailbox of work for each saga instance, run on a shared pool of threads.
+ *
+ * The tasks for a saga run one at a time, in the order submitted, so each sees the saga as saved by the one before.
+ * Different sagas run in parallel, up to the size of the pool. A mailbox only exists while it has work queued, and is
+ * removed once it is empty. A busy mailbox gives up its thread after a few tasks, so that it cannot hold up other sagas.
+ */
+@Slf4j
+class SagaMailboxes {
+
+  static final int TASKS_PER_TURN = 10;
+
+  private final Map<String, Mailbox> mailboxes = new ConcurrentHashMap<>();
+  private final Executor executor;
+
+  SagaMailboxes(Executor executor) {
+    this.executor = executor;
+  }
+
+  void execute(String sagaId, Runnable task) {
+    Mailbox[] created = new Mailbox[1];
+    mailboxes.compute(sagaId, (id, mailbox) -> {
+      if (mailbox == null) {
+        mailbox = created[0] = new Mailbox(id);
+      }
+      mailbox.tasks.add(task);
+      return mailbox;
+    });
+    if (created[0] != null) {
+      executor.execute(created[0]);
+    }
+  }
+
+  /**
+   * The sagas with work queued or running
+   */
+  Set<String> sagaIds() {
+    return new HashSet<>(mailboxes.keySet());
+  }
+
+  /**
+   * The number of sagas with work queued or running
+   */
+  int size() {
+    return mailboxes.size();
+  }
+
+  private class Mailbox implements Runnable {
+    private final String sagaId;
+    //only accessed within a compute on the mailbox map
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+    private Mailbox(String sagaId) {
+      this.sagaId = sagaId;
+    }
+
+    @Override
+    public void run() {
+      for (int i = 0; i < TASKS_PER_TURN; i++) {
+        Runnable task = next();
+        if (task == null) {
+          return;
+        }
+        try {
+          task.run();
+        } catch (Exception e) {
+          log.error("Error processing saga " + sagaId, e);
+        }
+      }
+      executor.execute(this);
+    }
+
+    /**
+     * The next task, or null once the mailbox is empty, in which case it has been removed
+     */
+    private Runnable next() {
+      Runnable[] next = new Runnable[1];
+      mailboxes.computeIfPresent(sagaId, (id, mailbox) -> {
+        next[0] = mailbox.tasks.poll();
+        return next[0] == null ? null : mailbox;
+      });
+      return next[0];
+    }
+  }
+}
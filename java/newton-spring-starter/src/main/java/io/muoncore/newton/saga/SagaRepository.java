@@ -3,13 +3,40 @@ package io.muoncore.newton.saga;
 import io.muoncore.newton.NewtonEvent;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 public interface SagaRepository {
     <T extends Saga> Optional<T> load(String sagaIdentifier, Class<T> type);
     void save(Saga saga);
+
+    /**
+     * Save the saga if the stored copy is still at the given version, as when it was loaded or last saved.
+     *
+     * @throws org.springframework.dao.OptimisticLockingFailureException if the saga has since been saved by another writer
+     */
+    default void save(Saga saga, long storedVersion) {
+        save(saga);
+    }
     void saveNewSaga(Saga saga, NewtonEvent event);
 
+    /**
+     * Save the interests the saga has registered that are not yet saved, ahead of the saga itself, so that the events
+     * it waits for find it. A repository that only saves interests along with the saga need not implement this.
+     */
+    default void saveNewInterests(Saga saga) {
+    }
+
     List<SagaInterest> getSagasInterestedIn(Class<? extends NewtonEvent> eventClass);
+
+    /**
+     * The interests in the event class that match the given event properties, see {@link SagaInterestMatcher#properties(NewtonEvent)}
+     */
+    default List<SagaInterest> getSagasInterestedIn(Class<? extends NewtonEvent> eventClass, Map<String, String> properties) {
+        return getSagasInterestedIn(eventClass).stream()
+          .filter(interest -> interest.getValue() != null && interest.getValue().equals(properties.get(interest.getKey())))
+          .collect(Collectors.toList());
+    }
     List<SagaCreated> getSagasCreatedByEventId(Object id);
 }
@@ -8,19 +8,29 @@ import io.muoncore.newton.eventsource.muon.MuonEventSourceRepository;
 import io.muoncore.newton.saga.events.SagaLifecycleEvent;
 import io.muoncore.newton.utils.muon.MuonLookupUtils;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.*;
-import java.util.concurrent.Executor;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 public class SagaStreamManager {
 
   public final static String SAGA_LIFECYCLE_STREAM = "saga-lifecycle";
+  public static final int DEFAULT_WORKERS = 16;
+  static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
 
   private SagaRepository sagaRepository;
   private StreamSubscriptionManager streamSubscriptionManager;
@@ -30,7 +40,17 @@ public class SagaStreamManager {
   private SagaFactory sagaFactory;
   private SagaLoader sagaLoader;
   //avoid potential deadlock by doing all work on a different thread, not the event dispatch thread.
-  private Executor worker = Executors.newCachedThreadPool();
+  //events are matched to sagas one at a time, in stream order, and each saga then handles them in its own mailbox
+  private ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "newton-saga-dispatch");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private ExecutorService sagaWorkers;
+  private SagaMailboxes mailboxes;
+  private SagaCache sagaCache;
+  //sagas started or handling events in their mailboxes, until their new interests are saved, only accessed on the dispatch thread
+  private final List<CompletableFuture<Void>> savingInterests = new ArrayList<>();
 
   private SagaStartCache sagaStartCache = new SagaStartCache();
 
@@ -38,16 +58,57 @@ public class SagaStreamManager {
     StreamSubscriptionManager streamSubscriptionManager,
     SagaRepository sagaRepository,
     CommandBus commandBus, SagaInterestMatcher sagaInterestMatcher, SagaFactory sagaFactory, SagaLoader sagaLoader) {
+    this(streamSubscriptionManager, sagaRepository, commandBus, sagaInterestMatcher, sagaFactory, sagaLoader, DEFAULT_WORKERS);
+  }
+
+  /**
+   * @param workers the most sagas handling events at once
+   */
+  public SagaStreamManager(
+    StreamSubscriptionManager streamSubscriptionManager,
+    SagaRepository sagaRepository,
+    CommandBus commandBus, SagaInterestMatcher sagaInterestMatcher, SagaFactory sagaFactory, SagaLoader sagaLoader, int workers) {
     this.streamSubscriptionManager = streamSubscriptionManager;
     this.sagaRepository = sagaRepository;
     this.commandBus = commandBus;
     this.sagaInterestMatcher = sagaInterestMatcher;
     this.sagaFactory = sagaFactory;
     this.sagaLoader = sagaLoader;
+    this.sagaWorkers = sagaWorkers(workers);
+    this.mailboxes = new SagaMailboxes(sagaWorkers);
+    this.sagaCache = new SagaCache(sagaRepository, mailboxes);
+  }
+
+  /**
+   * The number of sagas kept in memory between events, 0 to load each saga for every event
+   */
+  @Value("${newton.sagas.cacheSize:0}")
+  public void setCacheSize(int cacheSize) {
+    sagaCache.setMaxSize(cacheSize);
+  }
+
+  /**
+   * How long the changes to a saga kept in memory may wait to be written, 0 to write them once each event is handled
+   */
+  @Value("${newton.sagas.writeBehindMillis:0}")
+  public void setWriteBehindMillis(long writeBehindMillis) {
+    sagaCache.setWriteBehindMillis(writeBehindMillis);
+  }
+
+  private static ExecutorService sagaWorkers(int workers) {
+    AtomicInteger count = new AtomicInteger();
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+      Thread thread = new Thread(runnable, "newton-saga-" + count.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
   }
 
   @EventListener
   public void onApplicationEvent(ApplicationReadyEvent onReadyEvent) {
+    sagaCache.start();
     listenToLifecycleEvents();
 
     worker.execute(() -> {
@@ -89,9 +150,13 @@ public class SagaStreamManager {
       if (!subscribedStreams.contains(stream)) {
         subscribedStreams.add(stream);
         streamSubscriptionManager.globallyUniqueSubscription("saga-manager-" + stream, stream, event -> {
-          worker.execute(() -> {
-            processEvent(event);
-          });
+          try {
+            worker.execute(() -> {
+              processEvent(event);
+            });
+          } catch (RejectedExecutionException e) {
+            holdBack(event);
+          }
         });
       }
     }
@@ -123,25 +188,44 @@ public class SagaStreamManager {
   }
 
   private void extractSagasForEventAndHandle(NewtonEvent event) {
-    List<SagaInterest> interests = sagaRepository.getSagasInterestedIn(event.getClass());
+    Map<String, String> properties = sagaInterestMatcher.properties(event);
+    if (properties.isEmpty()) {
+      return;
+    }
+    awaitInterests();
+    //only the interests matching a property of the event are loaded, not every interest in the event type
+    List<SagaInterest> interests = sagaRepository.getSagasInterestedIn(event.getClass(), properties);
 
     interests.forEach(interest -> {
       try {
-        if (!sagaInterestMatcher.matches(event, interest)) {
-          return;
-        }
-        Optional<? extends Saga> saga = sagaRepository.load(interest.getSagaId(), sagaLoader.loadSagaClass(interest));
-        saga.ifPresent(saga1 -> {
-          sagaFactory.autowire(saga1);
-          worker.execute(() -> {
-            MuonEventSourceRepository.executeCausedBy(event, () -> {
-              saga1.handle(event);
-              sagaRepository.save(saga1);
-              sagaFactory.processCommands(saga1);
-              sagaRepository.save(saga1);
-              return null;
+        Class<? extends Saga> sagaClass = sagaLoader.loadSagaClass(interest);
+        CompletableFuture<Void> interestsSaved = new CompletableFuture<>();
+        savingInterests.add(interestsSaved);
+        //load within the mailbox, so that the saga is seen as saved by any event before this one
+        mailboxes.execute(interest.getSagaId(), () -> {
+          try {
+            Optional<? extends Saga> saga = sagaCache.load(interest.getSagaId(), sagaClass);
+            saga.ifPresent(saga1 -> {
+              sagaFactory.autowire(saga1);
+              MuonEventSourceRepository.executeCausedBy(event, () -> {
+                saga1.handle(event);
+                sagaCache.save(saga1);
+                //found by later events, which wait for this rather than for the commands
+                sagaCache.saveNewInterests(saga1);
+                interestsSaved.complete(null);
+                sagaFactory.processCommands(saga1, event);
+                sagaCache.save(saga1);
+                return null;
+              });
             });
-          });
+            //the saves above are written together here
+            sagaCache.done(interest.getSagaId());
+          } catch (RuntimeException e) {
+            sagaCache.failed(interest.getSagaId());
+            throw e;
+          } finally {
+            interestsSaved.complete(null);
+          }
         });
 
       } catch (ClassNotFoundException e) {
@@ -157,6 +241,70 @@ public class SagaStreamManager {
       log.debug("Will starts Sagas {}", sagas);
     }
 
-    sagas.forEach(sagaClass -> sagaFactory.create(sagaClass, event));
+    //only the new instance is made here, the saga is started in its mailbox, in parallel with other sagas
+    savingInterests.removeIf(CompletableFuture::isDone);
+    sagas.forEach(sagaClass -> start(sagaClass, event));
+  }
+
+  private <T extends Saga> void start(Class<T> sagaClass, NewtonEvent event) {
+    T saga = sagaFactory.newSaga(sagaClass);
+    CompletableFuture<Void> started = new CompletableFuture<>();
+    savingInterests.add(started);
+    mailboxes.execute(saga.getId(), () -> {
+      try {
+        //later events wait for the saga to be saved, not for its commands
+        sagaFactory.start(sagaClass, saga, event, () -> started.complete(null));
+      } finally {
+        started.complete(null);
+      }
+    });
+  }
+
+  /**
+   * Wait for the sagas started or handling earlier events to save their new interests, so that they are found for
+   * later events. Their commands may still be running.
+   */
+  private void awaitInterests() {
+    if (!savingInterests.isEmpty()) {
+      CompletableFuture.allOf(savingInterests.toArray(new CompletableFuture[0])).join();
+      savingInterests.clear();
+    }
+  }
+
+  /**
+   * Once shut down, events are not taken from the subscriptions, so that their positions are not saved. The subscription
+   * thread is held until the subscription manager shuts down and interrupts it, and the events are handled after the
+   * next start.
+   */
+  private void holdBack(NewtonEvent event) {
+    log.debug("Saga manager has shut down, holding back {}", event);
+    try {
+      new CountDownLatch(1).await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    throw new RejectedExecutionException("The saga manager has shut down");
+  }
+
+  /**
+   * Stops taking events from the subscriptions, lets the events already taken be handled, writes any saga changes held
+   * in memory, then stops the saga threads. Called as the application shuts down.
+   */
+  public void shutdown() {
+    worker.shutdown();
+    awaitTermination(worker);
+    sagaCache.flush(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    sagaWorkers.shutdown();
+    awaitTermination(sagaWorkers);
+  }
+
+  private static void awaitTermination(ExecutorService executor) {
+    try {
+      if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        log.warn("Saga threads did not finish within {}s of shutdown", SHUTDOWN_TIMEOUT_SECONDS);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
   }
 }
@@ -22,10 +22,10 @@ public abstract class StatefulSaga implements Saga {
     private boolean complete = false;
 
     @Transient
-    private transient DynamicInvokeEventAdaptor startEventAdaptor = new DynamicInvokeEventAdaptor(this, StartSagaWith.class);
+    private transient EventDispatchTable startEventHandlers = EventDispatchTable.forType(getClass(), StartSagaWith.class);
 
     @Transient
-    private transient DynamicInvokeEventAdaptor eventAdaptor = new DynamicInvokeEventAdaptor(this, EventHandler.class);
+    private transient EventDispatchTable eventHandlers = EventDispatchTable.forType(getClass(), EventHandler.class);
 
     @Transient
     @Getter
@@ -50,13 +50,13 @@ public abstract class StatefulSaga implements Saga {
     protected void end() {
         complete = true;
         raiseCommand(CommandIntent.builder(SagaEndCommand.class.getName())
-                .id(getId()).build()
+                .id(getId()).dependent().build()
         );
     }
 
     @Override
     public void startWith(NewtonEvent event) {
-      boolean eventHandled = startEventAdaptor.apply(event);
+      boolean eventHandled = startEventHandlers.dispatch(this, event);
 
       if (!eventHandled) {
         throw new IllegalStateException("Undefined @SagaStartWith event handler method for event: ".concat(event.getClass().getName()));
@@ -66,7 +66,7 @@ public abstract class StatefulSaga implements Saga {
 
     @Override
     public void handle(NewtonEvent event) {
-        boolean eventHandled = eventAdaptor.apply(event);
+        boolean eventHandled = eventHandlers.dispatch(this, event);
 
         if (!eventHandled) {
             throw new IllegalStateException("Undefined @EventHandler method for event: ".concat(event.getClass().getName()));
@@ -1,12 +1,18 @@
 package io.muoncore.newton.saga.mongo;
 
+import com.mongodb.BasicDBObject;
 import com.mongodb.BulkWriteResult;
+import com.mongodb.DBObject;
+import com.mongodb.WriteResult;
 import io.muoncore.newton.NewtonEvent;
 import io.muoncore.newton.saga.Saga;
 import io.muoncore.newton.saga.SagaCreated;
 import io.muoncore.newton.saga.SagaInterest;
+import io.muoncore.newton.saga.SagaInterestIndex;
 import io.muoncore.newton.saga.SagaRepository;
+import io.muoncore.newton.saga.StatefulSaga;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.mongodb.core.BulkOperations;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
@@ -14,31 +20,88 @@ import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.util.Assert;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.stream.Collectors;
 
 @Slf4j
 public class MongoSagaRepository implements SagaRepository {
 
+	private static final String SAGAS = "sagas";
+
 	private MongoTemplate mongoTemplate;
+	private SagaInterestIndex interestIndex;
+	private volatile boolean interestIndexLoaded;
+	//the interests already written, held only while the saga that registered them is, so they are not written again
+	private final Set<SagaInterest> writtenInterests = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
 
 	public MongoSagaRepository(MongoTemplate mongoTemplate) {
+		this(mongoTemplate, false);
+	}
+
+	/**
+	 * @param indexInterestsInMemory keep every saga interest in memory, for sagas that are all saved by this node
+	 */
+	public MongoSagaRepository(MongoTemplate mongoTemplate, boolean indexInterestsInMemory) {
 		this.mongoTemplate = mongoTemplate;
+		this.interestIndex = indexInterestsInMemory ? new SagaInterestIndex() : null;
 	}
 
   @Override
   public <T extends Saga> Optional<T> load(String sagaIdentifier, Class<T> type) {
 		return Optional.ofNullable(
-				mongoTemplate.findById(sagaIdentifier, type, "sagas"));
+				mongoTemplate.findById(sagaIdentifier, type, SAGAS));
 	}
 
 	@Override
 	public void save(Saga saga) {
+		saveInterests(saga);
+		mongoTemplate.save(saga, SAGAS);
+	}
+
+	@Override
+	public void save(Saga saga, long storedVersion) {
+		if (!(saga instanceof StatefulSaga)) {
+			save(saga);
+			return;
+		}
+		DBObject document = new BasicDBObject();
+		mongoTemplate.getConverter().write(saga, document);
+
+		//replaces the stored saga only while it is at the expected version
+		DBObject stored = new BasicDBObject("_id", saga.getId()).append("version", storedVersion);
+		WriteResult result = mongoTemplate.getCollection(SAGAS).update(stored, document);
+		if (result.getN() == 0) {
+			throw new OptimisticLockingFailureException("Saga " + saga.getId() + " is no longer at version " + storedVersion);
+		}
+		saveInterests(saga);
+	}
+
+	private void saveInterests(Saga saga) {
 		if (saga.isComplete()) {
 			clearInterests(saga);
 		}
-		saga.getNewSagaInterests().forEach(sagaInterest -> registerEventExpectation((SagaInterest) sagaInterest));
-		mongoTemplate.save(saga, "sagas");
+		saveNewInterests(saga);
+	}
+
+	@Override
+	public void saveNewInterests(Saga saga) {
+		List<SagaInterest> interests = saga.getNewSagaInterests().stream()
+			.filter(interest -> !writtenInterests.contains(interest))
+			.collect(Collectors.toList());
+		if (interests.isEmpty()) {
+			return;
+		}
+		log.debug("Persisting {} saga interests for saga {}", interests.size(), saga.getId());
+		mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, SagaInterest.class).insert(interests).execute();
+		if (interestIndex != null) {
+			interests.forEach(interestIndex::add);
+		}
+		writtenInterests.addAll(interests);
 	}
 
   @Override
@@ -70,11 +133,17 @@ public class MongoSagaRepository implements SagaRepository {
 
 		BulkWriteResult execute = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, SagaInterest.class).remove(ops).execute();
 		log.debug("Saga is complete, removed {} interests", execute.getRemovedCount());
+		if (interestIndex != null) {
+			interestIndex.remove(saga.getId());
+		}
 	}
 
 	public void registerEventExpectation(SagaInterest sagaInterest) {
 		log.debug("Persisting saga interest " + sagaInterest);
 		mongoTemplate.save(sagaInterest);
+		if (interestIndex != null) {
+			interestIndex.add(sagaInterest);
+		}
 	}
 
 	@Override
@@ -86,6 +155,35 @@ public class MongoSagaRepository implements SagaRepository {
 		return mongoTemplate.find(query, SagaInterest.class);
 	}
 
+	@Override
+	public List<SagaInterest> getSagasInterestedIn(Class<? extends NewtonEvent> eventClass, Map<String, String> properties) {
+		if (properties.isEmpty()) {
+			return Collections.emptyList();
+		}
+		if (interestIndex != null) {
+			return loadedInterestIndex().find(eventClass.getName(), properties);
+		}
+		//each clause is an exact match on the className/key/value index
+		Criteria[] matching = properties.entrySet().stream()
+			.map(property -> Criteria.where("className").is(eventClass.getName()).and("key").is(property.getKey()).and("value").is(property.getValue()))
+			.toArray(Criteria[]::new);
+		return mongoTemplate.find(new Query(new Criteria().orOperator(matching)), SagaInterest.class);
+	}
+
+	private SagaInterestIndex loadedInterestIndex() {
+		if (!interestIndexLoaded) {
+			synchronized (interestIndex) {
+				if (!interestIndexLoaded) {
+					List<SagaInterest> interests = mongoTemplate.findAll(SagaInterest.class);
+					interests.forEach(interestIndex::add);
+					log.info("Loaded {} saga interests into memory", interests.size());
+					interestIndexLoaded = true;
+				}
+			}
+		}
+		return interestIndex;
+	}
+
   @Override
   public List<SagaCreated> getSagasCreatedByEventId(Object id) {
 
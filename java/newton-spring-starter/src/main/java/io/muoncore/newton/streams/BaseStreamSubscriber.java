@@ -58,6 +58,31 @@ public abstract class BaseStreamSubscriber {
   }
 
   protected String[] eventStreams() { return new String[0]; };
+
+  /**
+   * How events are delivered to this subscriber. By default, every event is handled in stream order.
+   */
+  protected SubscriptionOptions subscriptionOptions() { return SubscriptionOptions.defaults(); }
+
+  /**
+   * The options to subscribe with. Unless {@link #subscriptionOptions()} chooses the event types, only events this
+   * subscriber has a handler for are delivered, so others are skipped without being decoded.
+   */
+  protected final SubscriptionOptions handledSubscriptionOptions() {
+    SubscriptionOptions options = subscriptionOptions();
+    if (!options.getEventTypes().isEmpty()) {
+      return options;
+    }
+    return options.withEventTypes(handledEventTypes());
+  }
+
+  /**
+   * The event types this subscriber has handlers for
+   */
+  protected Collection<Class<?>> handledEventTypes() {
+    return eventAdaptor.getEventTypes();
+  }
+
   protected Collection<Class<? extends AggregateRoot>> aggregateRoots() { return Collections.emptySet(); }
   protected abstract Consumer<Consumer<NewtonEvent>> run(String stream);
 
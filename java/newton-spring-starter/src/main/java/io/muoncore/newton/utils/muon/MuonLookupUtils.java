@@ -75,8 +75,12 @@ public class MuonLookupUtils {
 	}
 
 	public static Class<? extends NewtonEvent> getDomainClass(io.muoncore.protocol.event.Event event) {
+		return getDomainClass(event.getEventType());
+	}
+
+	public static Class<? extends NewtonEvent> getDomainClass(String eventType) {
 		waitForMappingsToBeInitialized();
-		return eventTypeMappings.get(event.getEventType());
+		return eventTypeMappings.get(eventType);
 	}
 
 	public static Collection<Class<? extends Saga>> listAllSagas() {
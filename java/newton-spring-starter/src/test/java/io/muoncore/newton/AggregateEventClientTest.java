@@ -0,0 +1,111 @@
+package io.muoncore.newton;
+
+import io.muoncore.protocol.event.Event;
+import io.muoncore.protocol.event.client.EventClient;
+import io.muoncore.protocol.event.client.EventReplayMode;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class AggregateEventClientTest {
+
+  @Test
+  public void streamsEventsWithinBoundedWindow() throws Exception {
+    WindowedStream stream = new WindowedStream(1000);
+    AggregateEventClient client = new AggregateEventClient(eventClient(stream));
+    AtomicInteger received = new AtomicInteger();
+
+    client.streamAggregateRoot("1", Object.class, 0, 10, event -> received.incrementAndGet()).get();
+
+    assertEquals(1000, received.get());
+    assertTrue(stream.maxOutstanding <= 10);
+  }
+
+  @Test
+  public void cancelsStreamWhenConsumerFails() throws Exception {
+    WindowedStream stream = new WindowedStream(100);
+    AggregateEventClient client = new AggregateEventClient(eventClient(stream));
+
+    CompletableFuture<Void> result = client.streamAggregateRoot("1", Object.class, 0, 10, event -> {
+      throw new IllegalStateException("Broken!");
+    });
+
+    try {
+      result.get();
+      fail("expected failure");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+    assertTrue(stream.cancelled);
+    assertEquals(1, stream.sent);
+  }
+
+  private EventClient eventClient(WindowedStream stream) {
+    EventClient eventClient = mock(EventClient.class);
+    doAnswer(invocation -> {
+      stream.subscribe((Subscriber<Event>) invocation.getArguments()[2]);
+      return null;
+    }).when(eventClient).replay(anyString(), eq(EventReplayMode.REPLAY_ONLY), any(Subscriber.class));
+    return eventClient;
+  }
+
+  /**
+   * Emits events synchronously, only as they are requested.
+   */
+  static class WindowedStream implements Subscription {
+    private final int size;
+    private Subscriber<Event> subscriber;
+    private long outstanding;
+    private long maxOutstanding;
+    private int sent;
+    private boolean cancelled;
+    private boolean emitting;
+
+    WindowedStream(int size) {
+      this.size = size;
+    }
+
+    void subscribe(Subscriber<Event> subscriber) {
+      this.subscriber = subscriber;
+      subscriber.onSubscribe(this);
+    }
+
+    @Override
+    public void request(long n) {
+      outstanding += n;
+      maxOutstanding = Math.max(maxOutstanding, outstanding);
+      if (emitting) {
+        return;
+      }
+      emitting = true;
+      while (outstanding > 0 && sent < size && !cancelled) {
+        outstanding--;
+        sent++;
+        subscriber.onNext(new Event("1", "TestEvent", "stream", null, null, null, null, (long) sent, 0L, Collections.emptyMap(), null));
+      }
+      emitting = false;
+      if (sent == size && !cancelled) {
+        subscriber.onComplete();
+      }
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+    }
+  }
+}
@@ -4,6 +4,7 @@ import lombok.Data;
 import lombok.EqualsAndHashCode;
 import org.junit.Test;
 
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -31,6 +32,40 @@ public class DynamicInvokeEventAdaptorTest {
         assertTrue(handler.event instanceof EventWithParent);
     }
 
+    @Test
+    public void selectsMostSpecificHandler() throws Exception {
+        SpecificHandler handler = new SpecificHandler();
+        new DynamicInvokeEventAdaptor(handler, EventHandler.class).accept(new EventWithParent());
+        assertTrue(handler.specific);
+    }
+
+    @Test
+    public void returnsFalseForUnhandledEvent() throws Exception {
+        Handler handler = new Handler();
+        assertFalse(new DynamicInvokeEventAdaptor(handler, EventHandler.class).apply(new ParentEvent()));
+        assertFalse(new DynamicInvokeEventAdaptor(handler, EventHandler.class).apply(new ParentEvent()));
+    }
+
+    @Test
+    public void ignoresHandlersWithoutASingleParameter() throws Exception {
+        HandlerWithBadMethods handler = new HandlerWithBadMethods();
+        new DynamicInvokeEventAdaptor(handler, EventHandler.class).accept(new Event1());
+        assertTrue(handler.event instanceof Event1);
+    }
+
+    public static class HandlerWithBadMethods extends Handler {
+        @EventHandler
+        public void noEvent() {}
+        @EventHandler
+        public void twoEvents(Event1 ev, ParentEvent other) {}
+    }
+
+    public static class SpecificHandler extends ParentHandler {
+        boolean specific;
+        @EventHandler
+        public void on(EventWithParent ev) {this.specific = true;}
+    }
+
     public static class HandlerWithParent extends ParentHandler {
 
     }
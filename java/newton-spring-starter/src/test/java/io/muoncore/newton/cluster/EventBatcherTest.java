@@ -0,0 +1,153 @@
+package io.muoncore.newton.cluster;
+
+import io.muoncore.protocol.event.Event;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EventBatcherTest {
+
+  private PartitionedExecutor workers = new PartitionedExecutor("test-worker", 2);
+  private ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+  private List<List<Long>> batches = Collections.synchronizedList(new ArrayList<>());
+  private List<RuntimeException> failures = Collections.synchronizedList(new ArrayList<>());
+
+  @After
+  public void shutdown() {
+    workers.shutdown();
+    scheduler.shutdownNow();
+  }
+
+  @Test
+  public void fullBatchesAreHandledBeforeTheirEventsComplete() throws Exception {
+    AtomicInteger completed = new AtomicInteger();
+    List<Integer> completedWhenHandled = Collections.synchronizedList(new ArrayList<>());
+    EventBatcher batcher = new EventBatcher(workers, scheduler, 3, 60000, (events, last) -> {
+      completedWhenHandled.add(completed.get());
+      record(events, last);
+    }, failures::add);
+
+    CountDownLatch done = new CountDownLatch(6);
+    for (long i = 1; i <= 6; i++) {
+      Event event = event(i);
+      workers.execute("key", () -> batcher.add("key", event, () -> {
+        completed.incrementAndGet();
+        done.countDown();
+      }));
+    }
+
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList(Arrays.asList(1L, 2L, 3L), Arrays.asList(4L, 5L, 6L)), batches);
+    assertEquals(Arrays.asList(0, 3), completedWhenHandled);
+  }
+
+  @Test
+  public void partBatchIsHandledOnceItHasLingered() throws Exception {
+    EventBatcher batcher = new EventBatcher(workers, scheduler, 100, 20, this::record, failures::add);
+
+    CountDownLatch done = new CountDownLatch(2);
+    for (long i = 1; i <= 2; i++) {
+      Event event = event(i);
+      workers.execute("key", () -> batcher.add("key", event, done::countDown));
+    }
+
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertEquals(Collections.singletonList(Arrays.asList(1L, 2L)), batches);
+  }
+
+  @Test
+  public void handledBatchesAreNotKeptForTheirKeys() throws Exception {
+    EventBatcher batcher = new EventBatcher(workers, scheduler, 2, 20, this::record, failures::add);
+
+    CountDownLatch done = new CountDownLatch(6);
+    for (long i = 1; i <= 5; i++) {
+      Event event = event(i);
+      String key = "key-" + i;
+      workers.execute(key, () -> batcher.add(key, event, done::countDown));
+    }
+    Event last = event(6);
+    workers.execute("key-1", () -> batcher.add("key-1", last, done::countDown));
+
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList(1L, 6L), batches.stream().filter(batch -> batch.size() == 2).findFirst().get());
+    assertEquals(0, batcher.getPendingBatches());
+  }
+
+  @Test
+  public void skippedEventsMoveTheBatchPosition() throws Exception {
+    List<Long> positions = Collections.synchronizedList(new ArrayList<>());
+    EventBatcher batcher = new EventBatcher(workers, scheduler, 3, 60000, (events, last) -> {
+      record(events, last);
+      positions.add(last.getOrderId());
+    }, failures::add);
+
+    CountDownLatch done = new CountDownLatch(6);
+    for (long i = 1; i <= 6; i++) {
+      Event event = event(i);
+      boolean skipped = i != 1;
+      workers.execute("key", () -> {
+        if (skipped) {
+          batcher.skip("key", event, done::countDown);
+        } else {
+          batcher.add("key", event, done::countDown);
+        }
+      });
+    }
+
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList(Collections.singletonList(1L), Collections.emptyList()), batches);
+    assertEquals(Arrays.asList(3L, 6L), positions);
+  }
+
+  @Test
+  public void failedBatchIsNotCompletedAndLaterEventsAreDropped() throws Exception {
+    RuntimeException error = new IllegalStateException("view failed");
+    CountDownLatch failed = new CountDownLatch(1);
+    EventBatcher batcher = new EventBatcher(workers, scheduler, 2, 60000, (events, last) -> {
+      throw error;
+    }, e -> {
+      failures.add(e);
+      failed.countDown();
+    });
+
+    AtomicInteger completed = new AtomicInteger();
+    for (long i = 1; i <= 2; i++) {
+      Event event = event(i);
+      workers.execute("key", () -> batcher.add("key", event, completed::incrementAndGet));
+    }
+    assertTrue(failed.await(5, TimeUnit.SECONDS));
+
+    CountDownLatch after = new CountDownLatch(1);
+    Event later = event(3);
+    workers.execute("key", () -> {
+      batcher.add("key", later, completed::incrementAndGet);
+      after.countDown();
+    });
+
+    assertTrue(after.await(5, TimeUnit.SECONDS));
+    assertEquals(0, completed.get());
+    assertEquals(Collections.singletonList(error), failures);
+    assertEquals(0, batcher.getPendingBatches());
+  }
+
+  private void record(List<Event> events, Event last) {
+    batches.add(events.stream().map(Event::getOrderId).collect(Collectors.toList()));
+  }
+
+  private Event event(long orderId) {
+    return new Event("id", "TestEvent", "stream", null, null, null, null, orderId, 0L, null, null);
+  }
+}
@@ -0,0 +1,193 @@
+package io.muoncore.newton.cluster;
+
+import io.muoncore.protocol.event.Event;
+import io.muoncore.protocol.event.client.EventReplayMode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LocalStreamLogTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void reopenedLogReadsFromAnOrderId() throws Exception {
+    Path directory = folder.getRoot().toPath();
+    LocalStreamLog log = new LocalStreamLog(directory, 4096, 0);
+    for (long orderId = 1; orderId <= 10; orderId++) {
+      log.append(event(orderId));
+    }
+    log.append(event(5));
+    log.close();
+
+    LocalStreamLog reopened = new LocalStreamLog(directory, 4096, 0);
+    assertEquals(10, reopened.getTail());
+    assertEquals(range(7, 10), read(reopened.reader(6)));
+    assertEquals("value-3", reopened.reader(2).next().getPayload(Map.class).get("value"));
+  }
+
+  @Test
+  public void damagedRecordIsDiscardedOnReopen() throws Exception {
+    Path directory = folder.getRoot().toPath();
+    LocalStreamLog log = new LocalStreamLog(directory, 4096, 0);
+    for (long orderId = 1; orderId <= 5; orderId++) {
+      log.append(event(orderId));
+    }
+    log.close();
+
+    Path segment = Files.list(directory).filter(file -> file.toString().endsWith(".segment")).findFirst().get();
+    int recordLength;
+    try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+      recordLength = file.readInt() + 8;
+      //corrupt the body of the fourth record
+      file.seek(recordLength * 3 + 20);
+      file.write('x');
+    }
+
+    LocalStreamLog reopened = new LocalStreamLog(directory, 4096, 0);
+    assertEquals(3, reopened.getTail());
+    assertEquals(range(1, 3), read(reopened.reader(0)));
+
+    reopened.append(event(4));
+    assertEquals(range(1, 4), read(reopened.reader(0)));
+  }
+
+  @Test
+  public void rollsSegmentsAndRemovesTheOldest() {
+    Path directory = folder.getRoot().toPath();
+    LocalStreamLog log = new LocalStreamLog(directory, 512, 2);
+    for (long orderId = 1; orderId <= 50; orderId++) {
+      log.append(event(orderId));
+    }
+
+    long start = log.getStart();
+    assertEquals(range(start, 50), read(log.reader(0)));
+    log.close();
+
+    LocalStreamLog reopened = new LocalStreamLog(directory, 512, 2);
+    assertEquals(start, reopened.getStart());
+    assertEquals(50, reopened.getTail());
+  }
+
+  @Test
+  public void removedSegmentIsKeptUntilItsReadersAreDone() throws Exception {
+    Path directory = folder.getRoot().toPath();
+    LocalStreamLog log = new LocalStreamLog(directory, 512, 2);
+    log.append(event(1));
+    Path first = segments(directory).get(0);
+
+    LocalStreamLog.Reader reader = log.reader(0);
+    assertEquals(1L, (long) reader.next().getOrderId());
+    for (long orderId = 2; orderId <= 50; orderId++) {
+      log.append(event(orderId));
+    }
+    assertTrue(log.getStart() > 1);
+    assertTrue(Files.exists(first));
+
+    List<Long> read = read(reader);
+    assertEquals(50L, (long) read.get(read.size() - 1));
+    reader.close();
+    assertFalse(Files.exists(first));
+    log.close();
+  }
+
+  @Test
+  public void streamsHaveDistinctDirectories() {
+    assertNotEquals(LocalStreamLog.directoryName("a/b"), LocalStreamLog.directoryName("a_b"));
+    assertNotEquals(LocalStreamLog.directoryName("a b"), LocalStreamLog.directoryName("a+b"));
+    assertEquals("%2E%2E", LocalStreamLog.directoryName(".."));
+  }
+
+  @Test
+  public void replayReadsTheLogThenNewerEventsFromTheEventStore() {
+    LocalStreamLog log = new LocalStreamLog(folder.getRoot().toPath(), 4096, 0);
+    for (long orderId = 1; orderId <= 5; orderId++) {
+      log.append(event(orderId));
+    }
+    List<Long> requestedFrom = new ArrayList<>();
+    LocalLogReplay.EventStore eventStore = (mode, args, subscriber) -> {
+      long from = ((Number) args.get("from")).longValue();
+      requestedFrom.add(from);
+      subscriber.onSubscribe(new Subscription() {
+        private long next = from;
+
+        @Override
+        public void request(long n) {
+          for (long i = 0; i < n && next <= 8; i++) {
+            subscriber.onNext(event(next++));
+          }
+        }
+
+        @Override
+        public void cancel() {
+        }
+      });
+    };
+
+    List<Long> received = new ArrayList<>();
+    new LocalLogReplay("stream", log, eventStore, new Subscriber<Event>() {
+      @Override
+      public void onSubscribe(Subscription subscription) {
+        subscription.request(100);
+      }
+
+      @Override
+      public void onNext(Event event) {
+        received.add(event.getOrderId());
+      }
+
+      @Override
+      public void onError(Throwable throwable) {
+        throw new AssertionError(throwable);
+      }
+
+      @Override
+      public void onComplete() {
+      }
+    }).start();
+
+    assertEquals(range(1, 8), received);
+    assertEquals(Collections.singletonList(6L), requestedFrom);
+    assertEquals(8, log.getTail());
+  }
+
+  private List<Path> segments(Path directory) throws Exception {
+    return Files.list(directory).filter(file -> file.toString().endsWith(".segment")).sorted().collect(Collectors.toList());
+  }
+
+  private List<Long> read(LocalStreamLog.Reader reader) {
+    List<Long> orderIds = new ArrayList<>();
+    Event event;
+    while ((event = reader.next()) != null) {
+      orderIds.add(event.getOrderId());
+    }
+    return orderIds;
+  }
+
+  private List<Long> range(long from, long to) {
+    return LongStream.rangeClosed(from, to).boxed().collect(Collectors.toList());
+  }
+
+  private static Event event(long orderId) {
+    return new Event("id-" + orderId, "TestEvent", "stream", null, null, null, null, orderId, 0L,
+      Collections.singletonMap("value", "value-" + orderId), null);
+  }
+}
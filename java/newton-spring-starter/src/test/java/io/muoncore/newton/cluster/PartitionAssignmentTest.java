@@ -0,0 +1,89 @@
+package io.muoncore.newton.cluster;
+
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PartitionAssignmentTest {
+
+  @Test
+  public void nodeTakesNoMoreThanItsFairShare() {
+    PartitionAssignment assignment = new PartitionAssignment("view", 8);
+
+    for (int partition = 0; partition < 3; partition++) {
+      assertTrue(assignment.acquire(partition, 3));
+    }
+    assertFalse(assignment.acquire(3, 3));
+
+    assignment.released(0);
+    assertTrue(assignment.acquire(3, 3));
+    assertEquals(3, assignment.getHeld());
+  }
+
+  @Test
+  public void surplusPartitionsAreStoppedWhenMembersJoin() {
+    PartitionAssignment assignment = new PartitionAssignment("view", 8);
+    AtomicInteger stopped = new AtomicInteger();
+
+    for (int partition = 0; partition < 8; partition++) {
+      assertTrue(assignment.acquire(partition, 1));
+      assignment.started(partition, stopped::incrementAndGet);
+    }
+
+    assignment.rebalance(2);
+
+    assertEquals(4, stopped.get());
+    assertEquals(4, assignment.getHeld());
+  }
+
+  @Test
+  public void partitionNoOtherNodeTakesIsRunBeyondTheFairShare() {
+    PartitionAssignment assignment = new PartitionAssignment("view", 4, 1000);
+    AtomicInteger stopped = new AtomicInteger();
+    for (int partition = 0; partition < 2; partition++) {
+      assertTrue(assignment.acquire(partition, 2, 0));
+      assignment.started(partition, stopped::incrementAndGet);
+    }
+
+    //declined while the lock keeps coming back to this node, then claimed
+    assertFalse(assignment.acquire(2, 2, 0));
+    assertFalse(assignment.acquire(2, 2, 500));
+    assertTrue(assignment.acquire(2, 2, 1000));
+    assignment.started(2, stopped::incrementAndGet);
+
+    assignment.rebalance(2);
+    assertEquals(0, stopped.get());
+    assertEquals(3, assignment.getHeld());
+
+    assignment.rebalance(3);
+    assertEquals(1, stopped.get());
+    assertEquals(2, assignment.getHeld());
+  }
+
+  @Test
+  public void partitionHeldElsewhereInBetweenDeclinesIsNotClaimed() {
+    PartitionAssignment assignment = new PartitionAssignment("view", 2, 1000);
+    assertTrue(assignment.acquire(0, 2, 0));
+
+    assertFalse(assignment.acquire(1, 2, 0));
+    assertFalse(assignment.acquire(1, 2, 5000));
+    assertFalse(assignment.acquire(1, 2, 5500));
+    assertTrue(assignment.acquire(1, 2, 6000));
+  }
+
+  @Test
+  public void eventsForAnAggregateAlwaysMapToOnePartition() {
+    for (int i = 0; i < 100; i++) {
+      String id = UUID.randomUUID().toString();
+      int partition = PartitionAssignment.partitionOf(id, 8);
+      assertTrue(partition >= 0 && partition < 8);
+      assertEquals(partition, PartitionAssignment.partitionOf(id, 8));
+    }
+    assertEquals(0, PartitionAssignment.partitionOf(null, 8));
+  }
+}
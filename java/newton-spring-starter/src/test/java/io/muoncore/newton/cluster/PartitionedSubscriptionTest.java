@@ -0,0 +1,177 @@
+package io.muoncore.newton.cluster;
+
+import io.muoncore.newton.SubscriptionOptions;
+import io.muoncore.newton.query.EventStreamIndex;
+import io.muoncore.newton.query.EventStreamIndexStore;
+import io.muoncore.protocol.event.Event;
+import org.junit.After;
+import org.junit.Test;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PartitionedSubscriptionTest {
+
+  private PartitionedExecutor workers = new PartitionedExecutor("test-worker", 4);
+
+  @After
+  public void shutdown() {
+    workers.shutdown();
+  }
+
+  @Test
+  public void tasksWithTheSameKeyRunInOrderAndSurviveFailures() throws Exception {
+    List<Integer> seen = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch done = new CountDownLatch(1);
+
+    for (int i = 0; i < 100; i++) {
+      int value = i;
+      workers.execute("subscription", () -> {
+        if (value == 50) {
+          throw new IllegalStateException("handler failure");
+        }
+        seen.add(value);
+      });
+    }
+    workers.execute("subscription", done::countDown);
+
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertEquals(99, seen.size());
+    for (int i = 1; i < seen.size(); i++) {
+      assertTrue(seen.get(i - 1) < seen.get(i));
+    }
+  }
+
+  @Test
+  public void subscriberOnlyRequestsMoreOnceEventsAreProcessed() throws Exception {
+    AtomicLong requested = new AtomicLong();
+    CountDownLatch release = new CountDownLatch(1);
+
+    MuonClusterAwareTrackingSubscriptionManager.EventSubscriber subscriber = subscriber(requested, 10, 100, event -> {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+
+    for (int i = 0; i < 100; i++) {
+      subscriber.onNext(event(i));
+    }
+    assertEquals(100, requested.get());
+    assertEquals(0, subscriber.getOutstandingDemand());
+
+    release.countDown();
+    awaitProcessed(subscriber, 100);
+    assertTrue(requested.get() > 100);
+  }
+
+  @Test
+  public void windowShrinksWhenHandlersFallBehind() throws Exception {
+    AtomicLong requested = new AtomicLong();
+    CountDownLatch delivered = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+
+    //a third of the events block one worker, and stay queued. Handlers wait until every event is delivered, so the
+    //window is only adjusted once all are queued
+    MuonClusterAwareTrackingSubscriptionManager.EventSubscriber subscriber = new MuonClusterAwareTrackingSubscriptionManager.EventSubscriber(
+      workers, event -> event.getOrderId() % 3 == 0 ? 0 : 1, event -> true, SubscriptionOptions.builder().demand(10, 100).build(), null, null, event -> {
+        try {
+          delivered.await();
+          if (event.getOrderId() % 3 == 0) {
+            release.await();
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }, error -> {});
+    subscriber.onSubscribe(subscription(requested));
+
+    for (int i = 1; i <= 100; i++) {
+      subscriber.onNext(event(i));
+    }
+    delivered.countDown();
+    awaitProcessed(subscriber, 67);
+
+    assertEquals(50, subscriber.getWindow());
+    release.countDown();
+  }
+
+  @Test
+  public void filteredEventsAreSkippedButAdvanceTheCheckpoint() throws Exception {
+    List<Long> saved = Collections.synchronizedList(new ArrayList<>());
+    ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    SubscriptionCheckpoint checkpoint = new SubscriptionCheckpoint("sub", 0, new EventStreamIndexStore() {
+      @Override
+      public Optional<EventStreamIndex> findOneById(String id) {
+        return Optional.empty();
+      }
+
+      @Override
+      public void save(EventStreamIndex eventStreamIndex) {
+        saved.add(eventStreamIndex.getLastSeen());
+      }
+    }, 10, 60000, scheduler, new AtomicLong());
+
+    List<Long> handled = Collections.synchronizedList(new ArrayList<>());
+    MuonClusterAwareTrackingSubscriptionManager.EventSubscriber subscriber = new MuonClusterAwareTrackingSubscriptionManager.EventSubscriber(
+      workers, event -> "subscription", event -> event.getOrderId() % 10 == 0, SubscriptionOptions.defaults(), checkpoint, null,
+      event -> handled.add(event.getOrderId()), error -> {});
+    subscriber.onSubscribe(subscription(new AtomicLong()));
+
+    for (int i = 1; i <= 20; i++) {
+      subscriber.onNext(event(i));
+    }
+    awaitProcessed(subscriber, 20);
+    checkpoint.close();
+    scheduler.shutdownNow();
+
+    assertEquals(Arrays.asList(10L, 20L), handled);
+    assertEquals(20L, (long) saved.get(saved.size() - 1));
+  }
+
+  private MuonClusterAwareTrackingSubscriptionManager.EventSubscriber subscriber(AtomicLong requested, int min, int max, Consumer<Event> onData) {
+    MuonClusterAwareTrackingSubscriptionManager.EventSubscriber subscriber = new MuonClusterAwareTrackingSubscriptionManager.EventSubscriber(
+      workers, event -> "subscription", event -> true, SubscriptionOptions.builder().demand(min, max).build(), null, null, onData, error -> {});
+    subscriber.onSubscribe(subscription(requested));
+    return subscriber;
+  }
+
+  private Subscription subscription(AtomicLong requested) {
+    return new Subscription() {
+      @Override
+      public void request(long n) {
+        requested.addAndGet(n);
+      }
+
+      @Override
+      public void cancel() {
+      }
+    };
+  }
+
+  private void awaitProcessed(MuonClusterAwareTrackingSubscriptionManager.EventSubscriber subscriber, long count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (subscriber.getProcessed() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(count, subscriber.getProcessed());
+  }
+
+  private Event event(long orderId) {
+    return new Event("id", "TestEvent", "stream", null, null, null, null, orderId, 0L, null, null);
+  }
+}
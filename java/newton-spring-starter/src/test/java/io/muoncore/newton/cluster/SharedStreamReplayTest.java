@@ -0,0 +1,196 @@
+package io.muoncore.newton.cluster;
+
+import io.muoncore.protocol.event.ClientEvent;
+import io.muoncore.protocol.event.Event;
+import io.muoncore.protocol.event.client.EventClient;
+import io.muoncore.protocol.event.client.EventReplayMode;
+import io.muoncore.protocol.event.client.EventResult;
+import org.junit.After;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class SharedStreamReplayTest {
+
+  private ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+  private FakeEventClient eventClient = new FakeEventClient();
+  private SharedStreamReplay shared = new SharedStreamReplay(eventClient, 5, 10, scheduler);
+
+  @After
+  public void shutdown() {
+    scheduler.shutdownNow();
+  }
+
+  @Test
+  public void subscribersShareOneLiveSubscription() {
+    eventClient.store(1, 2, 3);
+
+    RecordingSubscriber first = new RecordingSubscriber(Long.MAX_VALUE);
+    RecordingSubscriber second = new RecordingSubscriber(Long.MAX_VALUE);
+    shared.replay("stream", EventReplayMode.REPLAY_THEN_LIVE, null, first);
+    shared.replay("stream", EventReplayMode.REPLAY_THEN_LIVE, from(3), second);
+
+    eventClient.publish(4, 5);
+
+    assertEquals(Collections.singletonList(EventReplayMode.LIVE_ONLY), eventClient.liveSubscriptions);
+    assertEquals(range(1, 5), first.received);
+    assertEquals(range(3, 5), second.received);
+  }
+
+  @Test
+  public void slowSubscriberReplaysWhatItMissedAndRejoins() {
+    eventClient.store(1);
+
+    RecordingSubscriber slow = new RecordingSubscriber(1);
+    shared.replay("stream", EventReplayMode.REPLAY_THEN_LIVE, null, slow);
+
+    //overflows the buffer of five while the subscriber has no demand
+    eventClient.publish(2, 3, 4, 5, 6, 7, 8, 9);
+    slow.request(100);
+    eventClient.publish(10);
+
+    assertEquals(range(1, 10), slow.received);
+    assertEquals(Collections.singletonList(EventReplayMode.LIVE_ONLY), eventClient.liveSubscriptions);
+  }
+
+  private Map<String, Object> from(long orderId) {
+    Map<String, Object> args = new HashMap<>();
+    args.put("from", orderId);
+    return args;
+  }
+
+  private List<Long> range(long from, long to) {
+    return LongStream.rangeClosed(from, to).boxed().collect(Collectors.toList());
+  }
+
+  private static Event event(long orderId) {
+    return new Event("id", "TestEvent", "stream", null, null, null, null, orderId, 0L, null, null);
+  }
+
+  private static class RecordingSubscriber implements Subscriber<Event> {
+    private final long initialDemand;
+    private final List<Long> received = new ArrayList<>();
+    private Subscription subscription;
+
+    private RecordingSubscriber(long initialDemand) {
+      this.initialDemand = initialDemand;
+    }
+
+    private void request(long n) {
+      subscription.request(n);
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+      this.subscription = subscription;
+      subscription.request(initialDemand);
+    }
+
+    @Override
+    public void onNext(Event event) {
+      received.add(event.getOrderId());
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      throw new AssertionError(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+      throw new AssertionError("Unexpected completion");
+    }
+  }
+
+  /**
+   * Serves replays synchronously from an in memory stream
+   */
+  private static class FakeEventClient implements EventClient {
+    private final List<Event> stored = new ArrayList<>();
+    private final List<EventReplayMode> liveSubscriptions = new ArrayList<>();
+    private Subscriber<Event> live;
+
+    private void store(long... orderIds) {
+      for (long orderId : orderIds) {
+        stored.add(SharedStreamReplayTest.event(orderId));
+      }
+    }
+
+    private void publish(long... orderIds) {
+      for (long orderId : orderIds) {
+        Event event = SharedStreamReplayTest.event(orderId);
+        stored.add(event);
+        live.onNext(event);
+      }
+    }
+
+    @Override
+    public EventResult event(ClientEvent event) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void replay(String stream, EventReplayMode mode, Subscriber<Event> subscriber) {
+      replay(stream, mode, new HashMap(), subscriber);
+    }
+
+    @Override
+    public void replay(String stream, EventReplayMode mode, Map args, Subscriber<Event> subscriber) {
+      if (mode == EventReplayMode.LIVE_ONLY) {
+        liveSubscriptions.add(mode);
+        live = subscriber;
+        subscriber.onSubscribe(new Subscription() {
+          @Override
+          public void request(long n) {
+          }
+
+          @Override
+          public void cancel() {
+          }
+        });
+        return;
+      }
+      long from = ((Number) args.get("from")).longValue();
+      List<Event> replay = stored.stream().filter(event -> event.getOrderId() >= from).collect(Collectors.toList());
+      subscriber.onSubscribe(new Subscription() {
+        private int next;
+        private long demand;
+        private boolean emitting;
+
+        @Override
+        public void request(long n) {
+          demand += n;
+          if (emitting) {
+            return;
+          }
+          emitting = true;
+          while (demand > 0 && next < replay.size()) {
+            demand--;
+            subscriber.onNext(replay.get(next++));
+          }
+          emitting = false;
+          if (next == replay.size()) {
+            next++;
+            subscriber.onComplete();
+          }
+        }
+
+        @Override
+        public void cancel() {
+        }
+      });
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package io.muoncore.newton.cluster;
+
+import io.muoncore.newton.query.EventStreamIndex;
+import io.muoncore.newton.query.EventStreamIndexStore;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SubscriptionCheckpointTest {
+
+  private List<Long> saved = Collections.synchronizedList(new ArrayList<>());
+  private ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+  private AtomicLong writes = new AtomicLong();
+
+  private EventStreamIndexStore store = new EventStreamIndexStore() {
+    @Override
+    public Optional<EventStreamIndex> findOneById(String id) {
+      return Optional.empty();
+    }
+
+    @Override
+    public void save(EventStreamIndex eventStreamIndex) {
+      saved.add(eventStreamIndex.getLastSeen());
+    }
+  };
+
+  @After
+  public void shutdown() {
+    scheduler.shutdownNow();
+  }
+
+  @Test
+  public void onlyCommitsPositionsWhereAllEarlierEventsAreProcessed() {
+    SubscriptionCheckpoint checkpoint = new SubscriptionCheckpoint("sub", 0, store, 2, 60000, scheduler, writes);
+
+    SubscriptionCheckpoint.Position first = checkpoint.received(1L);
+    SubscriptionCheckpoint.Position second = checkpoint.received(2L);
+    SubscriptionCheckpoint.Position third = checkpoint.received(5L);
+
+    checkpoint.processed(second);
+    checkpoint.processed(third);
+    assertTrue(saved.isEmpty());
+    assertEquals(3, checkpoint.getLag());
+
+    checkpoint.processed(first);
+    assertEquals(Collections.singletonList(5L), saved);
+    assertEquals(0, checkpoint.getLag());
+    assertEquals(1, writes.get());
+  }
+
+  @Test
+  public void closeFlushesAndStopsFurtherWrites() {
+    SubscriptionCheckpoint checkpoint = new SubscriptionCheckpoint("sub", 10, store, 100, 60000, scheduler, writes);
+
+    checkpoint.processed(checkpoint.received(11L));
+    SubscriptionCheckpoint.Position late = checkpoint.received(12L);
+    assertTrue(saved.isEmpty());
+
+    checkpoint.close();
+    checkpoint.processed(late);
+    checkpoint.flush();
+
+    assertEquals(Collections.singletonList(11L), saved);
+  }
+
+  @Test
+  public void liveSubscriptionRecordsItsFirstEvent() {
+    SubscriptionCheckpoint checkpoint = new SubscriptionCheckpoint("sub", 0, store, 100, 60000, scheduler, writes);
+    checkpoint.startFromFirstEvent();
+
+    checkpoint.flush();
+    assertTrue(saved.isEmpty());
+
+    checkpoint.received(500L);
+    assertEquals(Collections.singletonList(499L), saved);
+  }
+
+  @Test
+  public void positionSavedByTheSubscriberIsOnlyTracked() {
+    SubscriptionCheckpoint checkpoint = new SubscriptionCheckpoint("sub", 0, null, 1, 60000, scheduler, writes);
+
+    checkpoint.processed(checkpoint.received(1L));
+    checkpoint.close();
+
+    assertEquals(0, checkpoint.getLag());
+    assertEquals(0, writes.get());
+  }
+}
@@ -0,0 +1,100 @@
+package io.muoncore.newton.cluster;
+
+import io.muoncore.newton.SubscriptionMetrics;
+import io.muoncore.newton.SubscriptionOptions;
+import io.muoncore.newton.eventsource.muon.NoOpEventStreamProcessor;
+import io.muoncore.newton.query.EventStreamIndexStore;
+import io.muoncore.protocol.event.client.EventClient;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class SubscriptionStatsTest {
+
+  @Test
+  public void lagIsMeasuredAgainstTheHeadOfTheStream() {
+    AtomicLong streamHead = new AtomicLong();
+    SubscriptionStats behind = new SubscriptionStats("behind", "stream", streamHead, () -> 0);
+    SubscriptionStats ahead = new SubscriptionStats("ahead", "stream", streamHead, () -> 0);
+
+    behind.received(10);
+    ahead.received(25);
+    assertEquals(15, behind.getLag());
+    assertEquals(0, ahead.getLag());
+
+    SubscriptionStats live = new SubscriptionStats("live", "stream", streamHead, () -> 40);
+    live.received(30);
+    assertEquals(10, live.getLag());
+  }
+
+  @Test
+  public void handlerLatenciesAreBucketedByPowersOfTwo() {
+    SubscriptionStats stats = new SubscriptionStats("sub", "stream", new AtomicLong(), () -> 0);
+    for (int i = 0; i < 98; i++) {
+      stats.processed(TimeUnit.MICROSECONDS.toNanos(3));
+    }
+    stats.processed(TimeUnit.MICROSECONDS.toNanos(900));
+    stats.processed(TimeUnit.MICROSECONDS.toNanos(5000));
+
+    assertEquals(100, stats.getProcessedEvents());
+    assertEquals(98, stats.getHandlerLatencyHistogram()[2]);
+    assertEquals(4, stats.getHandlerLatencyP50Micros());
+    assertEquals(1024, stats.getHandlerLatencyP99Micros());
+    assertEquals(5000, stats.getHandlerLatencyMaxMicros());
+
+    stats.sample();
+    assertEquals(100, stats.getEventsPerSecond());
+    stats.sample();
+    assertEquals(0, stats.getEventsPerSecond());
+  }
+
+  @Test
+  public void publishedAsAnMXBean() throws Exception {
+    SubscriptionStats stats = new SubscriptionStats("jmx-test", "stream", new AtomicLong(), () -> 0);
+    stats.setLockHeld(true);
+    stats.received(7);
+
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName("io.muoncore.newton:type=Subscription,name=" + ObjectName.quote("jmx-test"));
+    server.registerMBean(stats, name);
+    try {
+      assertEquals(7L, server.getAttribute(name, "CurrentOrderId"));
+      assertTrue((Boolean) server.getAttribute(name, "LockHeld"));
+    } finally {
+      server.unregisterMBean(name);
+    }
+  }
+
+  @Test
+  public void localSubscriptionsToTheSameStreamHaveTheirOwnMetrics() throws Exception {
+    MuonClusterAwareTrackingSubscriptionManager manager = new MuonClusterAwareTrackingSubscriptionManager(
+      mock(EventClient.class), mock(EventStreamIndexStore.class), new LocalOnlyLockService(), new NoOpEventStreamProcessor());
+    manager.setJmxEnabled(false);
+    try {
+      manager.localNonTrackingSubscription("ViewA-stream", "stream", SubscriptionOptions.defaults(), event -> {});
+      manager.localNonTrackingSubscription("ViewA-stream", "stream", SubscriptionOptions.defaults(), event -> {});
+      manager.localNonTrackingSubscription("stream", SubscriptionOptions.defaults(), event -> {});
+
+      long deadline = System.currentTimeMillis() + 5000;
+      while (manager.getSubscriptionMetrics().size() < 3 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      Map<String, SubscriptionMetrics> metrics = manager.getSubscriptionMetrics();
+      assertEquals(new HashSet<>(Arrays.asList("ViewA-stream", "ViewA-stream-2", "stream")), metrics.keySet());
+      metrics.values().forEach(subscription -> assertEquals(0, subscription.getReconnects()));
+    } finally {
+      manager.shutdown();
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package io.muoncore.newton.command;
+
+import io.muoncore.newton.NewtonEvent;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SimpleCommandBusTest {
+
+  private CommandFactory commandFactory = mock(CommandFactory.class);
+  private SimpleCommandBus bus = new SimpleCommandBus(commandFactory);
+
+  @Test
+  public void commandCreationFailureFailsTheFuture() {
+    when(commandFactory.create(any(), any(), any(), anyMap(), any())).thenThrow(new CommandCreateException("Broken!"));
+
+    CompletableFuture<CommandResult> result = bus.dispatchAsync(CommandIntent.builder(TestAsyncCommand.class.getName()).build());
+
+    try {
+      result.join();
+      fail("Expected the dispatch to fail");
+    } catch (CompletionException e) {
+      assertTrue(e.getCause() instanceof CommandCreateException);
+    }
+  }
+
+  @Test
+  public void asyncCommandsAreExecutedWithoutBlocking() {
+    when(commandFactory.create(any(), any(), any(), anyMap(), any())).thenReturn(new TestAsyncCommand());
+
+    CommandResult result = bus.dispatchAsync(CommandIntent.builder(TestAsyncCommand.class.getName()).build()).join();
+
+    assertEquals(Collections.emptyList(), result.getSuccess().get());
+  }
+
+  @Test
+  public void asyncCommandsArePassedTheirCausingEvent() {
+    TestAsyncCommand command = new TestAsyncCommand();
+    when(commandFactory.create(any(), any(), any(), anyMap(), any())).thenReturn(command);
+    NewtonEvent cause = () -> "cause";
+
+    bus.dispatchAsync(CommandIntent.builder(TestAsyncCommand.class.getName()).causedBy(cause).build()).join();
+
+    assertSame(cause, command.causedBy);
+  }
+
+  public static class TestAsyncCommand implements AsyncCommand {
+    private NewtonEvent causedBy;
+
+    @Override
+    public CompletableFuture<List<NewtonEvent>> executeAsync(NewtonEvent causedBy) {
+      this.causedBy = causedBy;
+      return executeAsync();
+    }
+
+    @Override
+    public CompletableFuture<List<NewtonEvent>> executeAsync() {
+      return CompletableFuture.completedFuture(Collections.emptyList());
+    }
+  }
+}
@@ -0,0 +1,217 @@
+package io.muoncore.newton.command;
+
+import io.muoncore.api.ImmediateReturnFuture;
+import io.muoncore.api.MuonFuture;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StripedCommandBusTest {
+
+  private AtomicInteger running = new AtomicInteger();
+  private AtomicInteger maxRunning = new AtomicInteger();
+  private StripedCommandBus bus = new StripedCommandBus(new SlowCommandBus(), 4, 100);
+  private StripedCommandBus crossing;
+
+  @After
+  public void shutdown() {
+    bus.shutdown();
+  }
+
+  @Test
+  public void commandsForTheSameIdRunSerially() {
+    List<CompletableFuture<CommandResult>> results = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      results.add(bus.dispatchAsync(CommandIntent.builder("cmd").id("hot-aggregate").build()));
+    }
+    results.forEach(CompletableFuture::join);
+
+    assertEquals(1, maxRunning.get());
+    assertEquals(0, bus.getQueueDepth());
+  }
+
+  @Test
+  public void commandsForDifferentIdsRunInParallel() {
+    List<CompletableFuture<CommandResult>> results = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      results.add(bus.dispatchAsync(CommandIntent.builder("cmd").id("aggregate-" + i).build()));
+    }
+    results.forEach(CompletableFuture::join);
+
+    assertEquals(true, maxRunning.get() > 1);
+  }
+
+  @Test
+  public void lanesDispatchingToEachOtherDoNotDeadlock() throws Exception {
+    crossing = new StripedCommandBus(new CrossDispatchingCommandBus(), 4, 100);
+    try {
+      List<CompletableFuture<CommandResult>> results = new ArrayList<>();
+      for (int i = 0; i < 20; i++) {
+        results.add(crossing.dispatchAsync(CommandIntent.builder("outer").id("aggregate-" + i).request("aggregate-" + (i + 1)).build()));
+        results.add(crossing.dispatchAsync(CommandIntent.builder("outer").id("aggregate-" + (i + 1)).request("aggregate-" + i).build()));
+      }
+      for (CompletableFuture<CommandResult> result : results) {
+        result.get(5, TimeUnit.SECONDS);
+      }
+    } finally {
+      crossing.shutdown();
+    }
+  }
+
+  @Test
+  public void commandsDispatchedFromAnotherLaneQueueBehindThoseAlreadyWaiting() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+    crossing = new StripedCommandBus(new OrderRecordingCommandBus(order, started, release), 2, 100);
+    try {
+      //with two lanes, "a" and "b" hash to lanes 1 and 0
+      CompletableFuture<CommandResult> blocking = crossing.dispatchAsync(CommandIntent.builder("block").id("a").build());
+      assertTrue(started.await(5, TimeUnit.SECONDS));
+      CompletableFuture<CommandResult> first = crossing.dispatchAsync(CommandIntent.builder("first").id("a").build());
+      CompletableFuture<CommandResult> outer = crossing.dispatchAsync(CommandIntent.builder("outer").id("b").request("a").build());
+
+      long deadline = System.currentTimeMillis() + 5000;
+      while (crossing.getQueueDepth(1) < 2 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(1);
+      }
+      release.countDown();
+
+      outer.get(5, TimeUnit.SECONDS);
+      blocking.get(5, TimeUnit.SECONDS);
+      first.get(5, TimeUnit.SECONDS);
+      assertEquals(Arrays.asList("block", "outer", "first", "second"), order);
+    } finally {
+      crossing.shutdown();
+    }
+  }
+
+  @Test
+  public void queuedCommandsFailOnShutdown() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    StripedCommandBus blocked = new StripedCommandBus(new BlockingCommandBus(started, release), 1, 100);
+
+    CompletableFuture<CommandResult> running = blocked.dispatchAsync(CommandIntent.builder("cmd").id("aggregate").build());
+    started.await(5, TimeUnit.SECONDS);
+    CompletableFuture<CommandResult> queued = blocked.dispatchAsync(CommandIntent.builder("cmd").id("aggregate").build());
+    blocked.shutdown();
+    release.countDown();
+
+    try {
+      queued.get(5, TimeUnit.SECONDS);
+      fail("Expected the queued command to be rejected");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof RejectedExecutionException);
+    }
+    running.get(5, TimeUnit.SECONDS);
+  }
+
+  class CrossDispatchingCommandBus implements CommandBus {
+    @Override
+    public MuonFuture<CommandResult> dispatch(CommandIntent commandIntent) {
+      if (commandIntent.getType().equals("outer")) {
+        crossing.dispatch(CommandIntent.builder("inner").id(commandIntent.getPayload()).build());
+      }
+      return new ImmediateReturnFuture<>(new CommandResult(Collections.emptyList(), null));
+    }
+
+    @Override
+    public CompletableFuture<CommandResult> dispatchAsync(CommandIntent commandIntent) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  class OrderRecordingCommandBus implements CommandBus {
+    private final List<String> order;
+    private final CountDownLatch started;
+    private final CountDownLatch release;
+
+    OrderRecordingCommandBus(List<String> order, CountDownLatch started, CountDownLatch release) {
+      this.order = order;
+      this.started = started;
+      this.release = release;
+    }
+
+    @Override
+    public MuonFuture<CommandResult> dispatch(CommandIntent commandIntent) {
+      order.add(commandIntent.getType());
+      if (commandIntent.getType().equals("block")) {
+        started.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      if (commandIntent.getType().equals("outer")) {
+        crossing.dispatch(CommandIntent.builder("second").id(commandIntent.getPayload()).build());
+      }
+      return new ImmediateReturnFuture<>(new CommandResult(Collections.emptyList(), null));
+    }
+
+    @Override
+    public CompletableFuture<CommandResult> dispatchAsync(CommandIntent commandIntent) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  class BlockingCommandBus implements CommandBus {
+    private final CountDownLatch started;
+    private final CountDownLatch release;
+
+    BlockingCommandBus(CountDownLatch started, CountDownLatch release) {
+      this.started = started;
+      this.release = release;
+    }
+
+    @Override
+    public MuonFuture<CommandResult> dispatch(CommandIntent commandIntent) {
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return new ImmediateReturnFuture<>(new CommandResult(Collections.emptyList(), null));
+    }
+
+    @Override
+    public CompletableFuture<CommandResult> dispatchAsync(CommandIntent commandIntent) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  class SlowCommandBus implements CommandBus {
+    @Override
+    public MuonFuture<CommandResult> dispatch(CommandIntent commandIntent) {
+      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      try {
+        Thread.sleep(5);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      running.decrementAndGet();
+      return new ImmediateReturnFuture<>(new CommandResult(Collections.emptyList(), null));
+    }
+
+    @Override
+    public CompletableFuture<CommandResult> dispatchAsync(CommandIntent commandIntent) {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -0,0 +1,39 @@
+package io.muoncore.newton.eventsource;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AggregateCacheTest {
+
+  @Test
+  public void evictsLeastRecentlyUsed() {
+    AggregateCache cache = new AggregateCache(2);
+    cache.put("a", entry(1));
+    cache.put("b", entry(1));
+    cache.get("a");
+    cache.put("c", entry(1));
+
+    assertTrue(cache.get("a").isPresent());
+    assertFalse(cache.get("b").isPresent());
+    assertEquals(1, cache.getEvictions());
+    assertEquals(1, cache.getMisses());
+    assertEquals(2, cache.getHits());
+  }
+
+  @Test
+  public void invalidateRemovesEntry() {
+    AggregateCache cache = new AggregateCache(2);
+    cache.put("a", entry(1));
+    cache.invalidate("a");
+
+    assertEquals(0, cache.size());
+  }
+
+  private AggregateCache.Entry entry(long version) {
+    AggregateSnapshot state = new AggregateSnapshot("id", "type", "id", "0", version, 1, 0, "{}");
+    return new AggregateCache.Entry(state);
+  }
+}
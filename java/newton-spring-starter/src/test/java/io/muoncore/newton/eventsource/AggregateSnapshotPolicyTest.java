@@ -0,0 +1,78 @@
+package io.muoncore.newton.eventsource;
+
+import io.muoncore.newton.AggregateRoot;
+import io.muoncore.newton.EventHandler;
+import io.muoncore.newton.NewtonEvent;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AggregateSnapshotPolicyTest {
+
+  @Test
+  public void disabledWithoutConfiguration() {
+    assertFalse(AggregateSnapshotPolicy.forType(UnconfiguredAggregate.class).isEnabled());
+  }
+
+  @Test
+  public void dueAfterConfiguredEventCount() {
+    AggregateSnapshotPolicy policy = AggregateSnapshotPolicy.forType(SnapshotAggregate.class);
+
+    assertTrue(policy.isEnabled());
+    assertFalse(policy.isDue(null, 1, 0));
+    assertTrue(policy.isDue(null, 2, 0));
+
+    AggregateSnapshot last = new AggregateSnapshot("id", SnapshotAggregate.class.getName(), "id", policy.getSchemaVersion(), 2, 10, 0, "{}");
+    assertFalse(policy.isDue(last, 3, 0));
+    assertTrue(policy.isDue(last, 4, 0));
+  }
+
+  @Test
+  public void schemaVersionChangesWithFields() {
+    assertNotEquals(
+      AggregateSnapshotPolicy.forType(SnapshotAggregate.class).getSchemaVersion(),
+      AggregateSnapshotPolicy.forType(UnconfiguredAggregate.class).getSchemaVersion());
+  }
+
+  @Test
+  public void snapshotRestoresState() {
+    SnapshotAggregate aggregate = new SnapshotAggregate();
+    aggregate.handleEvent(new SnapshotEvent("hello"));
+
+    InMemoryAggregateSnapshotStore store = new InMemoryAggregateSnapshotStore();
+    store.save(AggregateSnapshot.of(aggregate, "hello", 5, "1"));
+
+    SnapshotAggregate restored = store.load(SnapshotAggregate.class, "hello").get().restore(SnapshotAggregate.class);
+
+    assertEquals("hello", restored.getId());
+    assertEquals(1, restored.getVersion());
+
+    restored.handleEvent(new SnapshotEvent("world"));
+    assertEquals(2, restored.getVersion());
+  }
+
+  @AggregateConfiguration(context = "test", snapshotEvery = 2)
+  public static class SnapshotAggregate extends AggregateRoot<String> {
+    @Getter
+    private String id;
+
+    @EventHandler
+    public void on(SnapshotEvent event) {
+      this.id = event.getId();
+    }
+  }
+
+  public static class UnconfiguredAggregate extends AggregateRoot<String> {
+    @Getter
+    private String id;
+    private String name;
+  }
+
+  @Getter
+  @AllArgsConstructor
+  public static class SnapshotEvent implements NewtonEvent<String> {
+    private String id;
+  }
+}
@@ -0,0 +1,45 @@
+package io.muoncore.newton.eventsource;
+
+import io.muoncore.newton.eventsource.muon.TestAggregate;
+import io.muoncore.newton.eventsource.muon.TestAggregateCreated;
+import io.muoncore.protocol.event.Event;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class InMemoryAggregateEventClientTest {
+
+  private InMemoryAggregateEventClient client = new InMemoryAggregateEventClient();
+
+  @Test
+  public void appendsBatchInOrder() throws Exception {
+    client.publishDomainEvents("1", TestAggregate.class, Arrays.asList(
+      new TestAggregateCreated("1"), new TestAggregateCreated("2")), null, 0L);
+
+    List<Event> events = client.loadAggregateRoot("1", TestAggregate.class).get();
+
+    assertEquals(2, events.size());
+    assertEquals("TestAggregateCreated", events.get(0).getEventType());
+    assertTrue(events.get(0).getOrderId() < events.get(1).getOrderId());
+    assertEquals("2", events.get(1).getPayload(TestAggregateCreated.class).getId());
+  }
+
+  @Test
+  public void rejectsWholeBatchOnVersionMismatch() throws Exception {
+    client.publishDomainEvents("1", TestAggregate.class, Collections.singletonList(new TestAggregateCreated("1")), null, 0L);
+
+    try {
+      client.publishDomainEvents("1", TestAggregate.class, Arrays.asList(
+        new TestAggregateCreated("2"), new TestAggregateCreated("3")), null, 0L);
+      fail("Expected the batch to be rejected");
+    } catch (OptimisticLockException e) {
+      assertEquals(1, client.loadAggregateRoot("1", TestAggregate.class).get().size());
+    }
+  }
+}
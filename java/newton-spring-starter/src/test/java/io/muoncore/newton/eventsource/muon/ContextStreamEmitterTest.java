@@ -0,0 +1,74 @@
+package io.muoncore.newton.eventsource.muon;
+
+import io.muoncore.protocol.event.ClientEvent;
+import io.muoncore.protocol.event.client.EventClient;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ContextStreamEmitterTest {
+
+  @Test
+  public void completesOnceAllEventsAreEmitted() throws Exception {
+    AtomicInteger sent = new AtomicInteger();
+    EventClient client = mock(EventClient.class);
+    when(client.event(any(ClientEvent.class))).thenAnswer(invocation -> {
+      sent.incrementAndGet();
+      return null;
+    });
+
+    ContextStreamEmitter emitter = new ContextStreamEmitter(client, "test/stream");
+    CompletableFuture<Void> first = emitter.emit("1", Arrays.asList(new TestAggregateCreated("1"), new TestAggregateCreated("1")), null);
+    CompletableFuture<Void> second = emitter.emit("1", Collections.singletonList(new TestAggregateCreated("1")), null);
+
+    second.get();
+    assertTrue(first.isDone());
+    assertEquals(3, sent.get());
+  }
+
+  @Test
+  public void failedEmissionCompletesExceptionallyAndReleasesPermit() throws Exception {
+    EventClient client = mock(EventClient.class);
+    when(client.event(any(ClientEvent.class))).thenThrow(new IllegalStateException("Broken!"));
+
+    ContextStreamEmitter emitter = new ContextStreamEmitter(client, "test/stream");
+    emitter.setMaxInFlight(1);
+
+    CompletableFuture<Void> first = emitter.emit("1", Collections.singletonList(new TestAggregateCreated("1")), null);
+    CompletableFuture<Void> second = emitter.emit("2", Collections.singletonList(new TestAggregateCreated("2")), null);
+
+    assertTrue(first.handle((ok, error) -> error != null).get());
+    assertTrue(second.handle((ok, error) -> error != null).get());
+  }
+
+  @Test
+  public void failedEventsAreRetriedWithoutResendingThoseAlreadyEmitted() throws Exception {
+    AtomicInteger calls = new AtomicInteger();
+    AtomicInteger sent = new AtomicInteger();
+    EventClient client = mock(EventClient.class);
+    when(client.event(any(ClientEvent.class))).thenAnswer(invocation -> {
+      if (calls.incrementAndGet() == 2) {
+        throw new IllegalStateException("Broken!");
+      }
+      sent.incrementAndGet();
+      return null;
+    });
+
+    ContextStreamEmitter emitter = new ContextStreamEmitter(client, "test/stream");
+    emitter.setExecutor(Runnable::run);
+
+    emitter.emit("1", Arrays.asList(new TestAggregateCreated("1"), new TestAggregateCreated("1")), null).get();
+
+    assertEquals(3, calls.get());
+    assertEquals(2, sent.get());
+  }
+}
@@ -0,0 +1,82 @@
+package io.muoncore.newton.eventsource.muon;
+
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OrderedLoadPublisherTest {
+
+  private Map<Object, CompletableFuture<String>> loads = new HashMap<>();
+  private List<String> received = new ArrayList<>();
+  private Subscription subscription;
+  private boolean complete;
+
+  @Test
+  public void emitsInInputOrderWhenLoadsCompleteOutOfOrder() {
+    subscribe(new OrderedLoadPublisher<>(Arrays.asList("a", "b", "c"), 3, this::load));
+    subscription.request(3);
+
+    loads.get("c").complete("c");
+    loads.get("b").complete("b");
+    assertTrue(received.isEmpty());
+
+    loads.get("a").complete("a");
+    assertEquals(Arrays.asList("a", "b", "c"), received);
+    assertTrue(complete);
+  }
+
+  @Test
+  public void startsNoMoreThanParallelismOrDemand() {
+    subscribe(new OrderedLoadPublisher<>(Arrays.asList("a", "b", "c", "d"), 2, this::load));
+
+    subscription.request(1);
+    assertEquals(1, loads.size());
+
+    subscription.request(10);
+    assertEquals(2, loads.size());
+
+    loads.get("a").complete("a");
+    assertEquals(3, loads.size());
+    assertEquals(Arrays.asList("a"), received);
+    assertTrue(!complete);
+  }
+
+  private CompletableFuture<String> load(Object id) {
+    CompletableFuture<String> future = new CompletableFuture<>();
+    loads.put(id, future);
+    return future;
+  }
+
+  private void subscribe(OrderedLoadPublisher<String> publisher) {
+    publisher.subscribe(new Subscriber<String>() {
+      @Override
+      public void onSubscribe(Subscription s) {
+        subscription = s;
+      }
+
+      @Override
+      public void onNext(String s) {
+        received.add(s);
+      }
+
+      @Override
+      public void onError(Throwable t) {
+      }
+
+      @Override
+      public void onComplete() {
+        complete = true;
+      }
+    });
+  }
+}
@@ -0,0 +1,205 @@
+package io.muoncore.newton.query;
+
+import io.muoncore.newton.BatchEventHandler;
+import io.muoncore.newton.EventHandler;
+import io.muoncore.newton.NewtonEvent;
+import io.muoncore.newton.StreamSubscriptionManager;
+import io.muoncore.newton.SubscriptionOptions;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class SharedDatastoreViewTest {
+
+  @Test
+  public void runsOfEventsAreHandledTogetherInStreamOrder() {
+    FakeSubscriptionManager manager = new FakeSubscriptionManager();
+    BatchView view = new BatchView(manager);
+    view.run("stream").accept(event -> view.handled.add("single " + event));
+
+    manager.onBatch.accept(Arrays.asList(new Created("a"), new Created("b"), new Renamed("c"), new Created("d")));
+
+    assertEquals(Arrays.asList("created [a, b]", "single c", "created [d]", "complete"), view.handled);
+    assertEquals(new HashSet<>(Arrays.asList(Created.class, Renamed.class)), manager.options.getEventTypes());
+  }
+
+  @Test
+  public void failedBatchIsNotCompleted() {
+    FakeSubscriptionManager manager = new FakeSubscriptionManager();
+    BatchView view = new BatchView(manager);
+    view.run("stream").accept(event -> view.handled.add("single " + event));
+
+    try {
+      manager.onBatch.accept(Arrays.asList(new Created("a"), new Created("fail")));
+      fail("expected failure");
+    } catch (IllegalStateException expected) {
+    }
+
+    assertEquals(Collections.singletonList("failed"), view.handled);
+  }
+
+  @Test
+  public void viewIsPassedThePositionToSaveWithItsWrites() {
+    FakeSubscriptionManager manager = new FakeSubscriptionManager();
+    CheckpointedView view = new CheckpointedView(manager);
+    view.run("stream").accept(event -> view.handled.add("single " + event));
+
+    EventStreamIndex checkpoint = new EventStreamIndex("CheckpointedView-stream", 12);
+    manager.onCheckpointedBatch.accept(Arrays.asList(new Renamed("a"), new Renamed("b")), checkpoint);
+
+    assertEquals(Arrays.asList("single a", "single b"), view.handled);
+    assertEquals(checkpoint, view.saved);
+  }
+
+  public static class Created implements NewtonEvent<String> {
+    private final String id;
+
+    Created(String id) {
+      this.id = id;
+    }
+
+    @Override
+    public String getId() {
+      return id;
+    }
+
+    @Override
+    public String toString() {
+      return id;
+    }
+  }
+
+  public static class Renamed implements NewtonEvent<String> {
+    private final String id;
+
+    Renamed(String id) {
+      this.id = id;
+    }
+
+    @Override
+    public String getId() {
+      return id;
+    }
+
+    @Override
+    public String toString() {
+      return id;
+    }
+  }
+
+  public static class BatchView extends SharedDatastoreView {
+    private final List<String> handled = new ArrayList<>();
+
+    BatchView(StreamSubscriptionManager streamSubscriptionManager) {
+      super(streamSubscriptionManager);
+    }
+
+    @BatchEventHandler
+    public void on(List<Created> events) {
+      if (events.stream().anyMatch(event -> "fail".equals(event.getId()))) {
+        throw new IllegalStateException("view failed");
+      }
+      handled.add("created " + events);
+    }
+
+    @EventHandler
+    public void on(Renamed event) {
+    }
+
+    @Override
+    protected String[] eventStreams() {
+      return new String[]{"stream"};
+    }
+
+    @Override
+    protected void onBatchComplete() {
+      handled.add("complete");
+    }
+
+    @Override
+    protected void onBatchFailed() {
+      handled.add("failed");
+    }
+  }
+
+  public static class CheckpointedView extends SharedDatastoreView {
+    private final List<String> handled = new ArrayList<>();
+    private EventStreamIndex saved;
+
+    CheckpointedView(StreamSubscriptionManager streamSubscriptionManager) {
+      super(streamSubscriptionManager);
+    }
+
+    @EventHandler
+    public void on(Renamed event) {
+    }
+
+    @Override
+    protected String[] eventStreams() {
+      return new String[]{"stream"};
+    }
+
+    @Override
+    protected SubscriptionOptions subscriptionOptions() {
+      return SubscriptionOptions.builder().checkpointWithView().build();
+    }
+
+    @Override
+    protected void onBatchComplete(EventStreamIndex checkpoint) {
+      saved = checkpoint;
+    }
+  }
+
+  private static class FakeSubscriptionManager implements StreamSubscriptionManager {
+    private SubscriptionOptions options;
+    private Consumer<List<NewtonEvent>> onBatch;
+    private BiConsumer<List<NewtonEvent>, EventStreamIndex> onCheckpointedBatch;
+
+    @Override
+    public void globallyUniqueBatchSubscription(String subscriptionName, String stream, SubscriptionOptions options, Consumer<List<NewtonEvent>> onBatch) {
+      this.options = options;
+      this.onBatch = onBatch;
+    }
+
+    @Override
+    public void globallyUniqueBatchSubscription(String subscriptionName, String stream, SubscriptionOptions options, BiConsumer<List<NewtonEvent>, EventStreamIndex> onBatch) {
+      this.options = options;
+      this.onCheckpointedBatch = onBatch;
+      StreamSubscriptionManager.super.globallyUniqueBatchSubscription(subscriptionName, stream, options, onBatch);
+    }
+
+    @Override
+    public void globallyUniqueSubscription(String subscriptionName, String stream, SubscriptionOptions options, Consumer<NewtonEvent> onData) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void globallyUniqueSubscriptionFromNow(String subscriptionName, String stream, SubscriptionOptions options, Consumer<NewtonEvent> onData) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void localHotSubscription(String subscriptionName, String stream, SubscriptionOptions options, Consumer<NewtonEvent> onData) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void localTrackingSubscription(String subscriptionName, String streamName, SubscriptionOptions options, Consumer<NewtonEvent> onData) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void localNonTrackingSubscription(String streamName, SubscriptionOptions options, Consumer<NewtonEvent> onData) {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -0,0 +1,197 @@
+package io.muoncore.newton.saga;
+
+import io.muoncore.newton.NewtonEvent;
+import org.junit.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SagaCacheTest {
+
+  private FakeSagaRepository repository = new FakeSagaRepository();
+  private SagaCache cache = new SagaCache(repository, new SagaMailboxes(Runnable::run));
+
+  @Test
+  public void savesWhileHandlingAnEventAreWrittenOnce() {
+    StatefulSagaTest.TestSaga saga = repository.store();
+
+    StatefulSagaTest.TestSaga loaded = cache.load(saga.getId(), StatefulSagaTest.TestSaga.class).get();
+    loaded.handle(new StatefulSagaTest.MyEvent());
+    cache.save(loaded);
+    cache.save(loaded);
+    cache.done(saga.getId());
+
+    assertSame(saga, loaded);
+    assertEquals(Collections.singletonList(0L), repository.writes);
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void sagasAreKeptInMemoryAndWrittenBehind() {
+    cache.setMaxSize(10);
+    cache.setWriteBehindMillis(60000);
+    String sagaId = repository.store().getId();
+
+    StatefulSagaTest.TestSaga saga = cache.load(sagaId, StatefulSagaTest.TestSaga.class).get();
+    saga.handle(new StatefulSagaTest.MyEvent());
+    cache.save(saga);
+    cache.done(sagaId);
+    saga.handle(new StatefulSagaTest.MyEvent());
+    cache.save(saga);
+    cache.done(sagaId);
+
+    assertSame(saga, cache.load(sagaId, StatefulSagaTest.TestSaga.class).get());
+    assertEquals(1, repository.loads);
+    assertTrue(repository.writes.isEmpty());
+
+    cache.flush(1, TimeUnit.SECONDS);
+    assertEquals(Collections.singletonList(0L), repository.writes);
+  }
+
+  @Test
+  public void newInterestsAreSavedOnceTheEventIsDoneWhenWrittenBehind() {
+    cache.setMaxSize(10);
+    cache.setWriteBehindMillis(60000);
+    String sagaId = repository.store().getId();
+
+    StatefulSagaTest.TestSaga saga = cache.load(sagaId, StatefulSagaTest.TestSaga.class).get();
+    saga.handle(new StatefulSagaTest.MyEvent());
+    cache.save(saga);
+    cache.done(sagaId);
+
+    assertEquals(Collections.singletonList(sagaId), repository.interestSaves);
+    assertTrue(repository.writes.isEmpty());
+  }
+
+  @Test
+  public void flushWritesSagasWithinTheirMailboxesAfterTheirQueuedEvents() throws Exception {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    SagaMailboxes mailboxes = new SagaMailboxes(executor);
+    SagaCache cache = new SagaCache(repository, mailboxes);
+    cache.setMaxSize(10);
+    cache.setWriteBehindMillis(60000);
+    String sagaId = repository.store().getId();
+
+    CountDownLatch release = new CountDownLatch(1);
+    mailboxes.execute(sagaId, () -> {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+      StatefulSagaTest.TestSaga saga = cache.load(sagaId, StatefulSagaTest.TestSaga.class).get();
+      saga.handle(new StatefulSagaTest.MyEvent());
+      cache.save(saga);
+      cache.done(sagaId);
+    });
+    Executors.newSingleThreadScheduledExecutor().schedule(release::countDown, 100, TimeUnit.MILLISECONDS);
+
+    cache.flush(5, TimeUnit.SECONDS);
+    assertEquals(Collections.singletonList(0L), repository.writes);
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void leastRecentlyUsedSagasAreWrittenAndEvicted() {
+    cache.setMaxSize(1);
+    cache.setWriteBehindMillis(60000);
+    String firstId = repository.store().getId();
+    String secondId = repository.store().getId();
+
+    StatefulSagaTest.TestSaga first = cache.load(firstId, StatefulSagaTest.TestSaga.class).get();
+    first.handle(new StatefulSagaTest.MyEvent());
+    cache.save(first);
+    cache.done(firstId);
+
+    cache.load(secondId, StatefulSagaTest.TestSaga.class);
+    cache.done(secondId);
+
+    assertEquals(Collections.singletonList(0L), repository.writes);
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void sagaUpdatedByAnotherWriterIsDropped() {
+    cache.setMaxSize(10);
+    StatefulSagaTest.TestSaga saga = repository.store();
+    repository.conflict = true;
+
+    StatefulSagaTest.TestSaga loaded = cache.load(saga.getId(), StatefulSagaTest.TestSaga.class).get();
+    loaded.handle(new StatefulSagaTest.MyEvent());
+    cache.save(loaded);
+    cache.done(saga.getId());
+
+    assertEquals(0, cache.size());
+    assertTrue(repository.writes.isEmpty());
+
+    repository.stored.put(saga.getId(), new StatefulSagaTest.TestSaga());
+    assertNotSame(saga, cache.load(saga.getId(), StatefulSagaTest.TestSaga.class).get());
+  }
+
+  private static class FakeSagaRepository implements SagaRepository {
+    private Map<String, Saga> stored = new HashMap<>();
+    private List<Long> writes = new ArrayList<>();
+    private List<String> interestSaves = new ArrayList<>();
+    private int loads;
+    private boolean conflict;
+
+    StatefulSagaTest.TestSaga store() {
+      StatefulSagaTest.TestSaga saga = new StatefulSagaTest.TestSaga();
+      stored.put(saga.getId(), saga);
+      return saga;
+    }
+
+    @Override
+    public <T extends Saga> Optional<T> load(String sagaIdentifier, Class<T> type) {
+      loads++;
+      return Optional.ofNullable(type.cast(stored.get(sagaIdentifier)));
+    }
+
+    @Override
+    public void save(Saga saga) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void save(Saga saga, long storedVersion) {
+      if (conflict) {
+        throw new OptimisticLockingFailureException("conflict");
+      }
+      writes.add(storedVersion);
+    }
+
+    @Override
+    public void saveNewSaga(Saga saga, NewtonEvent event) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void saveNewInterests(Saga saga) {
+      interestSaves.add(saga.getId());
+    }
+
+    @Override
+    public List<SagaInterest> getSagasInterestedIn(Class<? extends NewtonEvent> eventClass) {
+      return Collections.emptyList();
+    }
+
+    @Override
+    public List<SagaCreated> getSagasCreatedByEventId(Object id) {
+      return Collections.emptyList();
+    }
+  }
+}
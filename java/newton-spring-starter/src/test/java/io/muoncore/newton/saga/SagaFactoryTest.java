@@ -1,6 +1,11 @@
 package io.muoncore.newton.saga;
 
 import io.muoncore.newton.MuonTestConfiguration;
+import io.muoncore.newton.NewtonEvent;
+import io.muoncore.newton.command.CommandBus;
+import io.muoncore.newton.command.CommandFailedEvent;
+import io.muoncore.newton.command.CommandIntent;
+import io.muoncore.newton.command.CommandResult;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 import org.junit.runner.RunWith;
@@ -8,11 +13,24 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 //@Category(UnitIntegrationTest.class)
 //@ActiveProfiles({"test"})
@@ -21,6 +39,170 @@ import static org.junit.Assert.assertTrue;
 //@Configuration
 public class SagaFactoryTest {
 
+  private final Map<String, CompletableFuture<CommandResult>> results = new ConcurrentHashMap<>();
+  private final List<CommandIntent> dispatched = Collections.synchronizedList(new ArrayList<>());
+
+  @Test
+  public void asyncCommandsAreDispatchedTogetherUpToTheLimit() throws Exception {
+    SagaFactory factory = asyncFactory(2);
+    RecordingSaga saga = new RecordingSaga("one", "two", "three");
+
+    Thread processing = new Thread(() -> factory.processCommands(saga, new StartEvent()));
+    processing.start();
+
+    awaitDispatched(2);
+    Thread.sleep(100);
+    assertEquals(2, dispatched.size());
+
+    results.get("two").complete(success());
+    awaitDispatched(3);
+
+    results.get("one").complete(success());
+    results.get("three").complete(success());
+    processing.join(5000);
+
+    assertFalse(processing.isAlive());
+    assertTrue(saga.handled.isEmpty());
+  }
+
+  @Test
+  public void asyncCommandFailuresAreHandledInTheOrderRaised() throws Exception {
+    SagaFactory factory = asyncFactory(8);
+    RecordingSaga saga = new RecordingSaga("one", "two", "three");
+
+    Thread processing = new Thread(() -> factory.processCommands(saga, new StartEvent()));
+    processing.start();
+    awaitDispatched(3);
+
+    results.get("three").complete(failure("three"));
+    results.get("two").complete(success());
+    results.get("one").complete(failure("one"));
+    processing.join(5000);
+
+    assertFalse(processing.isAlive());
+    assertEquals(Arrays.asList("one", "three"), saga.handled);
+  }
+
+  @Test
+  public void asyncCommandsCarryTheEventThatCausedThem() throws Exception {
+    SagaFactory factory = asyncFactory(8);
+    RecordingSaga saga = new RecordingSaga("one");
+    StartEvent cause = new StartEvent();
+
+    results.put("one", CompletableFuture.completedFuture(success()));
+    factory.processCommands(saga, cause);
+
+    assertSame(cause, dispatched.get(0).getCausingEvent());
+  }
+
+  @Test
+  public void dependentCommandsWaitForTheOutcomeOfTheOthers() throws Exception {
+    SagaFactory factory = asyncFactory(8);
+    RecordingSaga saga = new RecordingSaga("one", "two") {
+      @Override
+      public void handle(NewtonEvent event) {
+        super.handle(event);
+        getNewOperations().add(CommandIntent.builder("retry").build());
+      }
+    };
+    saga.getNewOperations().add(0, CommandIntent.builder("end").dependent().build());
+
+    Thread processing = new Thread(() -> factory.processCommands(saga, new StartEvent()));
+    processing.start();
+    awaitDispatched(2);
+
+    results.get("one").complete(failure("one"));
+    results.get("two").complete(success());
+    awaitDispatched(3);
+    Thread.sleep(100);
+    assertEquals(3, dispatched.size());
+
+    results.get("retry").complete(success());
+    awaitDispatched(4);
+    results.get("end").complete(success());
+    processing.join(5000);
+
+    assertFalse(processing.isAlive());
+    List<String> types = new ArrayList<>();
+    dispatched.forEach(intent -> types.add(intent.getType()));
+    assertEquals(Arrays.asList("one", "two", "retry", "end"), types);
+  }
+
+  private SagaFactory asyncFactory(int commandsInFlight) {
+    CommandBus commandBus = mock(CommandBus.class);
+    when(commandBus.dispatchAsync(any())).thenAnswer(invocation -> {
+      CommandIntent intent = (CommandIntent) invocation.getArguments()[0];
+      dispatched.add(intent);
+      return results.computeIfAbsent(intent.getType(), type -> new CompletableFuture<>());
+    });
+    SagaFactory factory = new SagaFactory(mock(SagaRepository.class), commandBus);
+    factory.setAsyncCommands(true);
+    factory.setCommandsInFlight(commandsInFlight);
+    return factory;
+  }
+
+  private void awaitDispatched(int count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (dispatched.size() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(count, dispatched.size());
+  }
+
+  private static CommandResult success() {
+    return new CommandResult(Collections.emptyList(), null);
+  }
+
+  private static CommandResult failure(String command) {
+    return new CommandResult(Collections.emptyList(), new CommandFailedEvent(command, "failed", null));
+  }
+
+  static class StartEvent implements NewtonEvent {
+    public Object getId() {
+      return "start";
+    }
+  }
+
+  static class RecordingSaga implements Saga {
+    private final List<CommandIntent> newOperations = new ArrayList<>();
+    private final List<String> handled = new ArrayList<>();
+
+    RecordingSaga(String... commands) {
+      for (String command : commands) {
+        newOperations.add(CommandIntent.builder(command).build());
+      }
+    }
+
+    @Override
+    public String getId() {
+      return "recording-saga";
+    }
+
+    @Override
+    public boolean isComplete() {
+      return false;
+    }
+
+    @Override
+    public void handle(NewtonEvent event) {
+      handled.add(((CommandFailedEvent) event).getCommandName());
+    }
+
+    @Override
+    public void startWith(NewtonEvent event) {
+    }
+
+    @Override
+    public List<CommandIntent> getNewOperations() {
+      return newOperations;
+    }
+
+    @Override
+    public List<SagaInterest> getNewSagaInterests() {
+      return Collections.emptyList();
+    }
+  }
+
 //	@Autowired
 //	private SagaFactory sagaFactory;
 //
@@ -0,0 +1,49 @@
+package io.muoncore.newton.saga;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SagaInterestIndexTest {
+
+  private SagaInterestIndex index = new SagaInterestIndex();
+
+  @Test
+  public void findsOnlyInterestsMatchingTheEventProperties() {
+    index.add(interest("1", "saga-1", "orderId", "123"));
+    index.add(interest("2", "saga-2", "orderId", "456"));
+    index.add(interest("3", "saga-3", "customerId", "123"));
+
+    Map<String, String> properties = new HashMap<>();
+    properties.put("orderId", "123");
+    properties.put("total", "10");
+
+    List<SagaInterest> found = index.find("OrderPlaced", properties);
+
+    assertEquals(1, found.size());
+    assertEquals("saga-1", found.get(0).getSagaId());
+    assertTrue(index.find("OrderShipped", properties).isEmpty());
+  }
+
+  @Test
+  public void interestsSavedAgainAreOnlyIndexedOnceAndRemovedWithTheirSaga() {
+    index.add(interest("1", "saga-1", "orderId", "123"));
+    index.add(interest("1", "saga-1", "orderId", "123"));
+
+    Map<String, String> properties = Collections.singletonMap("orderId", "123");
+    assertEquals(1, index.find("OrderPlaced", properties).size());
+
+    index.remove("saga-1");
+    assertTrue(index.find("OrderPlaced", properties).isEmpty());
+  }
+
+  private SagaInterest interest(String id, String sagaId, String key, String value) {
+    return new SagaInterest(TestSaga.class.getName(), "OrderPlaced", id, sagaId, key, value);
+  }
+}
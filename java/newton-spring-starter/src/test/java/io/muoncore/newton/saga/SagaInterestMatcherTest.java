@@ -5,6 +5,11 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import org.junit.Test;
 
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class SagaInterestMatcherTest {
@@ -22,10 +27,37 @@ public class SagaInterestMatcherTest {
 
     }
 
+    @Test
+    public void extractsThePropertiesInterestsCanMatch() throws Exception {
+        SagaInterestMatcher matcher = new SagaInterestMatcher();
+
+        Map<String, String> expected = new HashMap<>();
+        expected.put("myId", "hello world");
+        expected.put("id", "hello-world");
+
+        assertEquals(expected, matcher.properties(new TestEvent("hello world")));
+    }
+
+    @Test
+    public void matchesInheritedProperties() throws Exception {
+        SagaInterestMatcher matcher = new SagaInterestMatcher();
+
+        assertTrue(matcher.matches(new SubclassEvent("hello world"), new SagaInterest(
+                TestSaga.class.getName(), SubclassEvent.class.getCanonicalName(), "saga-id", "some-id", "myId", "hello world")));
+        assertFalse(matcher.matches(new SubclassEvent("hello world"), new SagaInterest(
+                TestSaga.class.getName(), SubclassEvent.class.getCanonicalName(), "saga-id", "some-id", "myId", "goodbye")));
+    }
+
     @Data
     @AllArgsConstructor
     static class TestEvent implements NewtonEvent {
         private String myId;
         private final String id = "hello-world";
     }
+
+    static class SubclassEvent extends TestEvent {
+        SubclassEvent(String myId) {
+            super(myId);
+        }
+    }
 }
@@ -0,0 +1,86 @@
+package io.muoncore.newton.saga;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SagaMailboxesTest {
+
+  private ExecutorService executor = Executors.newFixedThreadPool(4);
+  private SagaMailboxes mailboxes = new SagaMailboxes(executor);
+
+  @After
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void tasksForASagaRunOneAtATimeInOrder() throws Exception {
+    List<Integer> seen = Collections.synchronizedList(new ArrayList<>());
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger overlapping = new AtomicInteger();
+    CountDownLatch done = new CountDownLatch(100);
+
+    for (int i = 0; i < 100; i++) {
+      int value = i;
+      mailboxes.execute("saga", () -> {
+        if (running.incrementAndGet() > 1) {
+          overlapping.incrementAndGet();
+        }
+        seen.add(value);
+        running.decrementAndGet();
+        done.countDown();
+      });
+    }
+
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    awaitIdle();
+    assertEquals(0, overlapping.get());
+    for (int i = 0; i < seen.size(); i++) {
+      assertEquals(i, (int) seen.get(i));
+    }
+  }
+
+  @Test
+  public void sagasRunInParallelAndIdleMailboxesAreRemoved() throws Exception {
+    CountDownLatch otherSagaRan = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(2);
+
+    mailboxes.execute("blocked", () -> {
+      try {
+        otherSagaRan.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      done.countDown();
+    });
+    mailboxes.execute("other", () -> {
+      otherSagaRan.countDown();
+      done.countDown();
+    });
+
+    assertTrue(otherSagaRan.await(5, TimeUnit.SECONDS));
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+
+    awaitIdle();
+    assertEquals(0, mailboxes.size());
+  }
+
+  private void awaitIdle() throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (mailboxes.size() > 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+  }
+}
@@ -8,10 +8,15 @@ import lombok.Getter;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.*;
 
@@ -33,7 +38,7 @@ public class SagaStreamManagerTest {
 
     @Before
     public void setUp() {
-        when(sagaInterestMatcher.matches(any(), any())).thenReturn(true);
+        when(sagaInterestMatcher.properties(any())).thenReturn(Collections.singletonMap("hello", "world"));
         commandBus = mock(CommandBus.class);
     }
 
@@ -67,7 +72,7 @@ public class SagaStreamManagerTest {
 
         String sagaId = "12345";
 
-        when(sagaRepository.getSagasInterestedIn(eq(SagaEvent.class))).thenReturn(Arrays.asList(new SagaInterest(
+        when(sagaRepository.getSagasInterestedIn(eq(SagaEvent.class), eq(Collections.singletonMap("hello", "world")))).thenReturn(Arrays.asList(new SagaInterest(
                 TestSaga.class.getName(),
                 SagaWithEventHandler.class.getName(), "££££123", sagaId, "hello", "world")));
 
@@ -94,8 +99,6 @@ public class SagaStreamManagerTest {
     @Test
     public void associationsAreUsedToFilterStream() throws Exception {
 
-        when(sagaInterestMatcher.matches(any(), any())).thenReturn(false);
-
         SagaWithCommands saga = new SagaWithCommands();
 
         SagaStreamManager manager = streamManager();
@@ -104,8 +107,8 @@ public class SagaStreamManagerTest {
 
         String sagaId = "1234";
 
-        when(sagaRepository.getSagasInterestedIn(eq(SagaEvent.class))).thenReturn(Arrays.asList(new SagaInterest(
-                TestSaga.class.getName(), SagaWithEventHandler.class.getCanonicalName(), sagaId, "4321", "hello", "orld")));
+        //no interest matches the properties of the event
+        when(sagaRepository.getSagasInterestedIn(eq(SagaEvent.class), any())).thenReturn(Collections.emptyList());
 
         Class<? extends Saga> type = SagaWithCommands.class;
 
@@ -120,6 +123,99 @@ public class SagaStreamManagerTest {
         verify(commandBus, times(0)).dispatch(any(CommandIntent.class));
     }
 
+    @Test
+    public void sagasAreStartedInTheirMailboxesBeforeLaterInterestsAreLookedUp() throws Exception {
+        StartedSaga saga = new StartedSaga();
+        when(sagaFactory.newSaga(StartedSaga.class)).thenReturn(saga);
+        when(sagaRepository.getSagasInterestedIn(eq(SagaEvent.class), any())).thenReturn(Collections.emptyList());
+        List<String> startedOn = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> {
+            startedOn.add(Thread.currentThread().getName());
+            invocation.getArgumentAt(3, Runnable.class).run();
+            return null;
+        }).when(sagaFactory).start(eq(StartedSaga.class), eq(saga), any(), any());
+
+        SagaStreamManager manager = streamManager();
+        ArgumentCaptor<Consumer<NewtonEvent>> eventStreamCaptor = (ArgumentCaptor)ArgumentCaptor.forClass(Consumer.class);
+        manager.processSaga(StartedSaga.class);
+        verify(subscriptionManager).globallyUniqueSubscription(eq("saga-manager-startstream"), eq("startstream"), eventStreamCaptor.capture());
+
+        eventStreamCaptor.getValue().accept(new SagaEvent());
+
+        verify(sagaRepository, timeout(5000)).getSagasInterestedIn(eq(SagaEvent.class), any());
+        InOrder inOrder = inOrder(sagaFactory, sagaRepository);
+        inOrder.verify(sagaFactory).start(eq(StartedSaga.class), eq(saga), any(), any());
+        inOrder.verify(sagaRepository).getSagasInterestedIn(eq(SagaEvent.class), any());
+        assertTrue(startedOn.get(0).startsWith("newton-saga-"));
+    }
+
+    @Test
+    public void laterInterestsAreLookedUpOnceTheSagaIsSavedWithoutWaitingForItsCommands() throws Exception {
+        StartedSaga saga = new StartedSaga();
+        when(sagaFactory.newSaga(StartedSaga.class)).thenReturn(saga);
+        CountDownLatch lookedUp = new CountDownLatch(1);
+        when(sagaRepository.getSagasInterestedIn(eq(SagaEvent.class), any())).thenAnswer(invocation -> {
+            lookedUp.countDown();
+            return Collections.emptyList();
+        });
+        AtomicBoolean lookedUpWhileDispatching = new AtomicBoolean();
+        doAnswer(invocation -> {
+            invocation.getArgumentAt(3, Runnable.class).run();
+            //the commands of the saga are dispatched here
+            lookedUpWhileDispatching.set(lookedUp.await(5, TimeUnit.SECONDS));
+            return null;
+        }).when(sagaFactory).start(eq(StartedSaga.class), eq(saga), any(), any());
+
+        SagaStreamManager manager = streamManager();
+        ArgumentCaptor<Consumer<NewtonEvent>> eventStreamCaptor = (ArgumentCaptor)ArgumentCaptor.forClass(Consumer.class);
+        manager.processSaga(StartedSaga.class);
+        verify(subscriptionManager).globallyUniqueSubscription(eq("saga-manager-startstream"), eq("startstream"), eventStreamCaptor.capture());
+
+        eventStreamCaptor.getValue().accept(new SagaEvent());
+
+        verify(sagaFactory, timeout(5000)).start(eq(StartedSaga.class), eq(saga), any(), any());
+        assertTrue(lookedUp.await(5, TimeUnit.SECONDS));
+        manager.shutdown();
+        assertTrue(lookedUpWhileDispatching.get());
+    }
+
+    @Test
+    public void laterInterestsAreLookedUpOnceAHandlingSagaHasSavedItsNewInterests() throws Exception {
+        SagaWithEventHandler saga = mock(SagaWithEventHandler.class);
+        String sagaId = "12345";
+        CountDownLatch lookedUpAgain = new CountDownLatch(1);
+        when(sagaRepository.getSagasInterestedIn(eq(SagaEvent.class), any())).thenReturn(Arrays.asList(new SagaInterest(
+                TestSaga.class.getName(),
+                SagaWithEventHandler.class.getName(), "££££123", sagaId, "hello", "world"))).thenAnswer(invocation -> {
+            lookedUpAgain.countDown();
+            return Collections.emptyList();
+        });
+        when(sagaLoader.loadSagaClass(any())).thenReturn((Class) SagaWithEventHandler.class);
+        when(sagaRepository.load(eq(sagaId), eq(SagaWithEventHandler.class))).thenReturn(Optional.of(saga));
+        AtomicBoolean lookedUpWhileDispatching = new AtomicBoolean();
+        doAnswer(invocation -> {
+            //the commands of the saga are dispatched here
+            lookedUpWhileDispatching.set(lookedUpAgain.await(5, TimeUnit.SECONDS));
+            return null;
+        }).when(sagaFactory).processCommands(eq(saga), any());
+
+        SagaStreamManager manager = streamManager();
+        ArgumentCaptor<Consumer<NewtonEvent>> eventStreamCaptor = (ArgumentCaptor)ArgumentCaptor.forClass(Consumer.class);
+        manager.processSaga(SagaWithConfig.class);
+        verify(subscriptionManager).globallyUniqueSubscription(eq("saga-manager-stream"), eq("stream"), eventStreamCaptor.capture());
+
+        eventStreamCaptor.getValue().accept(new SagaEvent());
+        eventStreamCaptor.getValue().accept(new SagaEvent());
+
+        assertTrue(lookedUpAgain.await(5, TimeUnit.SECONDS));
+        manager.shutdown();
+        assertTrue(lookedUpWhileDispatching.get());
+        InOrder inOrder = inOrder(saga, sagaRepository);
+        inOrder.verify(saga).handle(any());
+        inOrder.verify(sagaRepository).saveNewInterests(saga);
+        inOrder.verify(sagaRepository).getSagasInterestedIn(eq(SagaEvent.class), any());
+    }
+
     private SagaStreamManager streamManager() {
         return new SagaStreamManager(subscriptionManager, sagaRepository, commandBus, sagaInterestMatcher, sagaFactory, sagaLoader);
     }
@@ -130,6 +226,13 @@ public class SagaStreamManagerTest {
 
     }
 
+    @SagaStreamConfig(streams = {"startstream"}, aggregateRoots = {})
+    static class StartedSaga extends StatefulSaga {
+        @StartSagaWith
+        public void start(SagaEvent event) {
+        }
+    }
+
     static class NoAnnotationSaga extends StatefulSaga {
 
     }